@@ -1,60 +1,131 @@
 package broker;
 
-import message.internal.FailMessage;
+import clock.Clocks;
+import listener.BrokerListener;
+import message.MessageExpiry;
+import message.internal.BrokeredMessage;
+import message.internal.LinkFaultsMessage;
+import message.internal.PartitionMessage;
 import message.internal.ProcessMessage;
-import message.ProcessToProcessMessage;
 import message.internal.ReadyMessage;
-import message.internal.ResurrectMessage;
-import org.apache.activemq.ActiveMQConnectionFactory;
-import org.apache.activemq.broker.BrokerService;
-import org.apache.activemq.command.ActiveMQObjectMessage;
 import org.apache.log4j.Logger;
+import transport.BrokerEndpoint;
+import transport.Interceptor;
+import transport.RoutableMessage;
+import transport.Transport;
+import transport.Transports;
 
-import javax.jms.*;
-import java.io.Serializable;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Base class for brokers using ActiveMQ.
+ * Base class for brokers.
  * <p/>
  * All messages in the system are relayed through this broker, so that it can simulate message delays / process failures.
- * This is achieved by consuming messages on the {@link ActiveMqBroker#FROM_PROCESS_QUEUE}. Then, they can either
- * be dropped (to simulate a process failure), or delayed and then sent onto the correct
- * {@link ActiveMqBroker#TO_PROCESS_QUEUE}, i.e. the queue that belongs to the destination process. Please note that
- * this entire simulation assumes no link failures.
+ * This is achieved by consuming all messages sent to the broker over a {@link Transport} (by default the ActiveMQ
+ * one, see {@link transport.ActiveMqTransport}). Then, they can either be dropped (to simulate a process failure),
+ * or delayed and then sent onto the destination process. Links can fail too: messages over a cut link (see
+ * {@link FailureInjector#cutLink(int, int)}) are dropped, and lossy links (see
+ * {@link FailureInjector#setLinkFaults(int, int, double, double, int)}) drop, duplicate and reorder messages at random.
  * <p/>
  * Processes are numbered 1 to N. The destination of each message is either one of these process IDs, or {@link ActiveMqBroker#BROADCAST_DESTINATION},
  * which means "broadcast". Messages are broadcast to all processes except for the sender.
  * <p/>
  * Before anything starts happening, a {@link ReadyMessage} must be received from all processes. After that, a {@link ReadyMessage}
  * is sent back to all the processes, at which point the simulation can start.
+ * <p/>
+ * Messages are routed on their headers alone (see {@link RoutableMessage}), their bodies are never deserialized.
+ * <p/>
+ * By default, a broadcast is scheduled and sent to each destination separately. With the broadcast channel enabled
+ * (see {@link #setBroadcastChannelEnabled(boolean)}), the broker still draws a delay for (and checks the failure of)
+ * each destination, but hands the message over to the transport only once, together with all the delays.
+ * <p/>
+ * By default, each message is delayed independently, so two messages on the same link can be reordered. With FIFO
+ * links enabled (see {@link #setFifoLinksEnabled(boolean)}), a message is never delivered before an earlier one on the
+ * same link.
+ * <p/>
+ * Messages waiting for their delay to elapse are accounted for per destination and in total (see {@link #getQueueDepth()}
+ * and {@link #getAverageTimeInQueue()}). By default, their number is unbounded. With limits set (see
+ * {@link #setInFlightLimits(int, int, BackpressurePolicy)}), the broker pushes back on processes that send faster than
+ * messages can be delivered, instead of running out of memory. Broadcasts over the broadcast channel are delayed by
+ * the transport and are not accounted for.
+ * <p/>
+ * By default, heartbeats travel in a priority lane (see {@link #setHeartbeatLaneEnabled(boolean)}): they have their own
+ * delay lines, run by their own thread, so that they are never sent late because the sending threads are busy with
+ * a burst of application messages.
+ * <p/>
+ * By default, links have unlimited bandwidth. With bandwidth limits set on links or processes (see
+ * {@link #setLinkBandwidth(int, int, long, long)} and {@link #setProcessBandwidth(int, int, long)}), messages queue
+ * up behind each other according to their serialized size, so that saturated links delay messages more. Each copy of
+ * a broadcast counts separately.
+ * <p/>
+ * Messages whose type has a time-to-live (see {@link MessageExpiry}) are dropped once expired, both when received and
+ * when due, so that the broker doesn't spend its time on stale messages.
+ * <p/>
+ * With transports that carry messages between processes directly (see {@link transport.NioTransport}), the broker
+ * only coordinates readiness and receives failures, and it can serve as the processes' {@link Interceptor}, so that
+ * the same failures, link faults (except for duplication), bandwidth limits and delays are applied by the senders.
+ * FIFO links (and the heartbeat lane) are then honored by never making a message due before the previous one on its
+ * link. Duplication and in-flight limits can't be applied by the senders, a warning is logged if they are set.
+ * <p/>
+ * This class is thread-safe: transports with sharded ingress deliver messages from different processes concurrently.
  */
-public abstract class ActiveMqBroker implements MessageListener, Broker {
+public abstract class ActiveMqBroker implements BrokerListener, Broker, Interceptor {
     private static final Logger LOG = Logger.getLogger(ActiveMqBroker.class);
 
-    public static final String BROKER_URL = "tcp://localhost:61617";
-    public static final String FROM_PROCESS_QUEUE = "from.process";
-    public static final String TO_PROCESS_QUEUE = "to.process.";
     public static final int BROADCAST_DESTINATION = -1;
     private static final int SENDING_THREADS = 10;
 
+    /**
+     * Mixed into the seed of a broker to seed its fault generator, so that faults and delays aren't drawn from the same
+     * sequence of random numbers.
+     */
+    private static final long FAULT_SEED_SALT = 0x5DEECE66DL;
+
     public static final int DELAY = 100;
 
-    private BrokerService broker;
+    /**
+     * Executors for scheduled delivery to destination processes, after a delay, according to the default {@link clock.Clock}.
+     * Runs the ticks of the {@link #delayLine}.
+     */
+    private final ScheduledExecutorService executor = Clocks.getDefault().newScheduledExecutor(SENDING_THREADS);
+
+    /**
+     * Executor for scheduled delivery of heartbeats in the heartbeat lane. Runs the ticks of the {@link #heartbeatDelayLine}.
+     */
+    private final ScheduledExecutorService heartbeatExecutor = Clocks.getDefault().newScheduledExecutor(1);
+
+    /**
+     * Endpoint through which messages are sent to processes.
+     */
+    private final BrokerEndpoint endpoint;
+
+    /**
+     * Messages waiting for their delay to elapse, delivered in batches by the {@link #executor}.
+     */
+    private final DelayLine delayLine;
 
     /**
-     * Executors for scheduled delivery to destination processes, after a delay.
+     * Messages waiting for their delay to elapse with FIFO links enabled, delivered in order per link by the {@link #executor}.
      */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(SENDING_THREADS);
+    private final FifoDelayLine fifoDelayLine;
 
     /**
-     * Message producers, one per process, indexed by processId - 1
+     * Heartbeats waiting for their delay to elapse in the heartbeat lane, delivered by the {@link #heartbeatExecutor}.
      */
-    private MessageProducer[] messageProducers;
+    private final DelayLine heartbeatDelayLine;
+
+    /**
+     * Heartbeats waiting for their delay to elapse in the heartbeat lane with FIFO links enabled.
+     */
+    private final FifoDelayLine heartbeatFifoDelayLine;
+
+    /**
+     * Accounting (and bounding) of messages in either delay line.
+     */
+    private final InFlightQueue inFlight;
 
     /**
      * The total number of processes in the ensemble
@@ -72,74 +143,282 @@ public abstract class ActiveMqBroker implements MessageListener, Broker {
     private final Set<Integer> failed = new ConcurrentSkipListSet<Integer>();
 
     /**
-     * Construct a new broker.
+     * Links that have failed.
+     */
+    private final LinkMatrix links;
+
+    /**
+     * Faults of lossy links.
+     */
+    private final LinkFaults linkFaults;
+
+    /**
+     * Bandwidth limits of links and processes.
+     */
+    private final Bandwidth bandwidth;
+
+    /**
+     * Whether broadcasts go over the transport's broadcast channel.
+     */
+    private volatile boolean broadcastChannelEnabled = false;
+
+    /**
+     * Whether messages are delivered in order per link.
+     */
+    private volatile boolean fifoLinksEnabled = false;
+
+    /**
+     * Whether heartbeats are delayed in their own lane.
+     */
+    private volatile boolean heartbeatLaneEnabled = true;
+
+    /**
+     * When the last intercepted message (heartbeat in its own lane) of each link is due, indexed by
+     * (source - 1) * N + (destination - 1). Only used with FIFO links, guarded by itself.
+     */
+    private final long[] interceptedDue;
+    private final long[] interceptedHeartbeatDue;
+
+    private final AtomicBoolean interceptorWarned = new AtomicBoolean(false);
+
+    /**
+     * Construct a new broker using the default transport.
      *
      * @param totalNumberOfProcesses total number of processes in the ensemble.
      */
     public ActiveMqBroker(int totalNumberOfProcesses) {
+        this(totalNumberOfProcesses, Transports.getDefault());
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param totalNumberOfProcesses total number of processes in the ensemble.
+     * @param transport              over which the broker communicates with processes.
+     */
+    public ActiveMqBroker(int totalNumberOfProcesses, Transport transport) {
+        this(totalNumberOfProcesses, transport, System.currentTimeMillis());
+    }
+
+    /**
+     * Construct a new broker with reproducible faults.
+     *
+     * @param totalNumberOfProcesses total number of processes in the ensemble.
+     * @param transport              over which the broker communicates with processes.
+     * @param seed                   from which the seed of the random fault generator is derived.
+     */
+    public ActiveMqBroker(int totalNumberOfProcesses, Transport transport, long seed) {
         this.totalNumberOfProcesses = totalNumberOfProcesses;
-        createActiveMqBroker();
-        setupMessageQueueConsumer();
-        setupMessageProducers();
+        this.links = new LinkMatrix(totalNumberOfProcesses);
+        this.interceptedDue = new long[totalNumberOfProcesses * totalNumberOfProcesses];
+        this.interceptedHeartbeatDue = new long[totalNumberOfProcesses * totalNumberOfProcesses];
+        this.linkFaults = new LinkFaults(totalNumberOfProcesses, seed ^ FAULT_SEED_SALT);
+        this.inFlight = new InFlightQueue(totalNumberOfProcesses, Clocks.getDefault());
+        this.bandwidth = new Bandwidth(totalNumberOfProcesses, Clocks.getDefault());
+        DelayLine.Sender sender = new DelayLine.Sender() {
+            @Override
+            public void send(RoutableMessage message, int destination) {
+                InFlightQueue.InFlightMessage inFlightMessage = (InFlightQueue.InFlightMessage) message;
+                if (inFlight.release(inFlightMessage, destination) && !hasExpired(inFlightMessage)) {
+                    unicastNow(inFlightMessage.getMessage(), destination);
+                }
+            }
+        };
+        this.delayLine = new DelayLine(Clocks.getDefault(), executor, sender);
+        this.fifoDelayLine = new FifoDelayLine(totalNumberOfProcesses, Clocks.getDefault(), executor, sender);
+        this.heartbeatDelayLine = new DelayLine(Clocks.getDefault(), heartbeatExecutor, sender);
+        this.heartbeatFifoDelayLine = new FifoDelayLine(totalNumberOfProcesses, Clocks.getDefault(), heartbeatExecutor, sender);
+        this.endpoint = transport.bindBroker(totalNumberOfProcesses, this);
     }
 
+    /**
+     * Enable or disable broadcasting over the transport's broadcast channel (see {@link BrokerEndpoint#broadcast(RoutableMessage, long[])}).
+     * <p/>
+     * The channel delays messages itself, so the broker can't hold them in flight. Broadcasts are therefore sent to each
+     * destination separately while FIFO links are enabled or in-flight limits are set (see
+     * {@link #setInFlightLimits(int, int, BackpressurePolicy)}).
+     *
+     * @param broadcastChannelEnabled true to enable.
+     */
+    public void setBroadcastChannelEnabled(boolean broadcastChannelEnabled) {
+        this.broadcastChannelEnabled = broadcastChannelEnabled;
+    }
+
+    /**
+     * Enable or disable FIFO links, i.e. delivery of messages in the order they have been sent per (source, destination)
+     * link. A message that would overtake an earlier one on its link is delayed until the earlier one is delivered.
+     * Broadcasts are then sent to each destination separately, even if the broadcast channel is enabled.
+     * <p/>
+     * Should be set before processes start sending messages, messages already delayed are not reordered.
+     *
+     * @param fifoLinksEnabled true to enable.
+     */
+    public void setFifoLinksEnabled(boolean fifoLinksEnabled) {
+        this.fifoLinksEnabled = fifoLinksEnabled;
+    }
+
+    /**
+     * Enable or disable the heartbeat lane, i.e. delaying heartbeats separately from other messages, in their own
+     * delay lines run by their own thread. With FIFO links enabled, heartbeats are then delivered in order with respect
+     * to other heartbeats only.
+     *
+     * @param heartbeatLaneEnabled true to enable.
+     */
+    public void setHeartbeatLaneEnabled(boolean heartbeatLaneEnabled) {
+        this.heartbeatLaneEnabled = heartbeatLaneEnabled;
+    }
+
+    /**
+     * Bound the number of messages in flight, i.e. waiting for their delay to elapse. Broadcasts are then sent to each
+     * destination separately, even if the broadcast channel is enabled.
+     *
+     * @param destinationLimit maximum number of messages in flight to a single destination.
+     * @param globalLimit      maximum number of messages in flight in total.
+     * @param policy           applied to messages that would exceed a limit.
+     */
+    public void setInFlightLimits(int destinationLimit, int globalLimit, BackpressurePolicy policy) {
+        inFlight.setLimits(destinationLimit, globalLimit, policy);
+    }
+
+    /**
+     * Get the number of messages in flight.
+     *
+     * @return queue depth.
+     */
+    public int getQueueDepth() {
+        return inFlight.getDepth();
+    }
+
+    /**
+     * Get the number of messages in flight to a process.
+     *
+     * @param destination ID of the destination process.
+     * @return queue depth.
+     */
+    public int getQueueDepth(int destination) {
+        return inFlight.getDepth(destination);
+    }
+
+    /**
+     * Get the average time the messages sent so far have been in flight, i.e. their delay plus the time it took
+     * to send them once due.
+     *
+     * @return time in ms.
+     */
+    public double getAverageTimeInQueue() {
+        return inFlight.getAverageTimeInQueue();
+    }
+
+    /**
+     * Get the maximum time a message sent so far has been in flight.
+     *
+     * @return time in ms.
+     */
+    public long getMaxTimeInQueue() {
+        return inFlight.getMaxTimeInQueue();
+    }
+
+    /**
+     * Get the number of messages dropped because a limit on messages in flight had been reached.
+     *
+     * @return number of messages.
+     */
+    public long getNumberOfDroppedMessages() {
+        return inFlight.getDropped();
+    }
+
+    /**
+     * Get the number of heartbeats shed while in flight because a limit had been reached.
+     *
+     * @return number of messages.
+     */
+    public long getNumberOfShedMessages() {
+        return inFlight.getShed();
+    }
+
+    /**
+     * Seed the random generator deciding which messages over lossy links are lost, duplicated and reordered,
+     * for reproducible faults.
+     *
+     * @param seed of the random fault generator.
+     */
+    public void setFaultSeed(long seed) {
+        linkFaults.setSeed(seed);
+    }
+
+    /**
+     * Limit the bandwidth of links. Messages then queue up on saturated links, on top of their delay.
+     *
+     * @param source         ID of the source process, or {@link message.internal.LinkMessage#ALL}.
+     * @param destination    ID of the destination process, or {@link message.internal.LinkMessage#ALL}.
+     * @param bytesPerSecond bandwidth of the links, 0 for unlimited.
+     * @param burst          number of bytes the links can take at once after being idle.
+     */
+    public void setLinkBandwidth(int source, int destination, long bytesPerSecond, long burst) {
+        bandwidth.setLinkLimit(source, destination, bytesPerSecond, burst);
+    }
+
+    /**
+     * Limit the bandwidth of processes, in each direction. Messages then queue up at saturated processes, on top of
+     * their delay.
+     *
+     * @param processId      ID of the process, or {@link message.internal.LinkMessage#ALL}.
+     * @param bytesPerSecond bandwidth of the processes' outgoing and incoming traffic, 0 for unlimited.
+     * @param burst          number of bytes the processes can send (and receive) at once after being idle.
+     */
+    public void setProcessBandwidth(int processId, long bytesPerSecond, long burst) {
+        bandwidth.setProcessLimit(processId, bytesPerSecond, burst);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * With FIFO links enabled, a message is never due before (or in the same millisecond as) the previous one on its
+     * link, and never sent at once, so that the transport's scheduler sends them in order.
+     */
     @Override
-    public void shutdown() {
-        try {
-            broker.stop();
-        } catch (Exception e) {
-            LOG.error("Failed stopping broker", e);
+    public long intercept(RoutableMessage message, int destination) {
+        int source = message.getSource();
+        if (!allReady() || hasFailed(destination) || hasFailed(source) || links.isCut(source, destination)
+                || linkFaults.isLost(source, destination) || hasExpired(message)) {
+            return -1;
         }
+        warnIfNotInterceptable(source, destination);
+        long delay = getDelay(source, destination) + linkFaults.getReorderDelay(source, destination) + getQueueingDelay(message, destination);
+        return fifoLinksEnabled ? getFifoDelay(message, source, destination, delay) : delay;
     }
 
-    private void createActiveMqBroker() {
-        try {
-            broker = new BrokerService();
-            broker.setPersistent(false);
-            broker.setUseJmx(false);
-            broker.addConnector(BROKER_URL);
-            broker.setUseShutdownHook(true);
-            broker.start();
-        } catch (Exception e) {
-            LOG.fatal("Failed to start ActiveMQ broker.", e);
+    private long getFifoDelay(RoutableMessage message, int source, int destination, long delay) {
+        if (source < 1 || source > totalNumberOfProcesses || destination < 1 || destination > totalNumberOfProcesses) {
+            return delay;
+        }
+        boolean heartbeatLane = heartbeatLaneEnabled && message.getKind() == RoutableMessage.Kind.HEARTBEAT;
+        long[] lastDue = heartbeatLane ? interceptedHeartbeatDue : interceptedDue;
+        int link = (source - 1) * totalNumberOfProcesses + (destination - 1);
+        synchronized (lastDue) {
+            long now = Clocks.getDefault().currentTimeMillis();
+            long due = Math.max(now + Math.max(delay, 1), lastDue[link] + 1);
+            lastDue[link] = due;
+            return due - now;
         }
     }
 
-    private void setupMessageQueueConsumer() {
-        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
-        Connection connection;
-        try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Destination fromProcessQueue = session.createQueue(FROM_PROCESS_QUEUE);
-            MessageConsumer consumer = session.createConsumer(fromProcessQueue);
-            consumer.setMessageListener(this);
-        } catch (JMSException e) {
-            LOG.fatal("Failed to create message queue consumer.", e);
+    //senders can only delay or drop a message, once.
+    private void warnIfNotInterceptable(int source, int destination) {
+        if ((inFlight.isLimited() || linkFaults.isDuplicating(source, destination)) && interceptorWarned.compareAndSet(false, true)) {
+            LOG.warn("In-flight limits and duplication can't be applied by senders, ignoring them!");
         }
     }
 
-    private void setupMessageProducers() {
-        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
-        Connection connection;
-        try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-            messageProducers = new MessageProducer[totalNumberOfProcesses];
-            for (int i = 1; i <= totalNumberOfProcesses; i++) {
-                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                Destination toProcessQueue = session.createQueue(TO_PROCESS_QUEUE + i);
-                MessageProducer producer = session.createProducer(toProcessQueue);
-                producer.setDeliveryMode(Session.AUTO_ACKNOWLEDGE);
-                messageProducers[i - 1] = producer;
-            }
-        } catch (JMSException e) {
-            LOG.fatal("Failed to create message producers.", e);
-        }
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        heartbeatExecutor.shutdownNow();
+        endpoint.close();
     }
 
-    private void ready(int processId) {
+    //synchronized, so that the ready message is broadcast exactly once, even with sharded ingress.
+    private synchronized void ready(int processId) {
         if (ready.contains(processId)) {
             LOG.warn("Something is wrong: process " + processId + " said that it is ready more than once!");
         }
@@ -175,36 +454,77 @@ public abstract class ActiveMqBroker implements MessageListener, Broker {
         return failed.contains(processId);
     }
 
-    @Override
-    public void onMessage(Message message) {
-        if (!(message instanceof ObjectMessage)) {
-            LOG.error("Unknown message type received by broker!");
+    private void cutLink(int source, int destination) {
+        LOG.info("Cutting link " + source + " -> " + destination);
+        links.set(source, destination, true);
+    }
+
+    private void healLink(int source, int destination) {
+        LOG.info("Healing link " + source + " -> " + destination);
+        links.set(source, destination, false);
+    }
+
+    private void partition(RoutableMessage message) {
+        BrokeredMessage decoded = message.decode();
+        if (!(decoded instanceof PartitionMessage)) {
+            LOG.error("Something is wrong: invalid partition received!");
             return;
         }
+        int[][] groups = ((PartitionMessage) decoded).getGroups();
+        LOG.info("Partitioning into " + groups.length + " groups");
+        links.partition(groups);
+    }
 
-        ObjectMessage msg = (ObjectMessage) message;
-        try {
-            Serializable wrappedMessage = msg.getObject();
-            if (wrappedMessage instanceof ReadyMessage) {
-                handleReadyMessage((ReadyMessage) wrappedMessage);
-            } else if (wrappedMessage instanceof ProcessToProcessMessage) {
-                handleProcessToProcessMessage((ProcessToProcessMessage) wrappedMessage);
-            } else if (wrappedMessage instanceof FailMessage) {
-                handleFailMessage((FailMessage) wrappedMessage);
-            } else if (wrappedMessage instanceof ResurrectMessage) {
-                handleResurrectMessage((ResurrectMessage) wrappedMessage);
-            }
-        } catch (JMSException e) {
-            LOG.error("Error receiving message!", e);
+    private void setLinkFaults(RoutableMessage message) {
+        BrokeredMessage decoded = message.decode();
+        if (!(decoded instanceof LinkFaultsMessage)) {
+            LOG.error("Something is wrong: invalid link faults received!");
+            return;
         }
+        LinkFaultsMessage faults = (LinkFaultsMessage) decoded;
+        LOG.info("Setting faults of link " + faults.getSource() + " -> " + faults.getDestination() + ": loss " + faults.getLossProbability()
+                + ", duplication " + faults.getDuplicationProbability() + ", reorder window " + faults.getReorderWindow() + "ms");
+        linkFaults.set(faults.getSource(), faults.getDestination(), faults.getLossProbability(), faults.getDuplicationProbability(), faults.getReorderWindow());
     }
 
-    private void handleReadyMessage(ReadyMessage message) throws JMSException {
-        ready(message.getSource());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMessage(RoutableMessage message) {
+        switch (message.getKind()) {
+            case READY:
+                ready(message.getSource());
+                break;
+            case PROCESS_TO_PROCESS:
+            case HEARTBEAT:
+                handleProcessToProcessMessage(message);
+                break;
+            case FAIL:
+                fail(message.getDestination());
+                break;
+            case RESURRECT:
+                recover(message.getDestination());
+                break;
+            case CUT_LINK:
+                cutLink(message.getSource(), message.getDestination());
+                break;
+            case HEAL_LINK:
+                healLink(message.getSource(), message.getDestination());
+                break;
+            case LINK_FAULTS:
+                setLinkFaults(message);
+                break;
+            case PARTITION:
+                partition(message);
+                break;
+            default:
+                LOG.warn("Something is wrong: unknown message from process " + message.getSource() + " received!");
+        }
     }
 
-    private void handleProcessToProcessMessage(ProcessToProcessMessage message) throws JMSException {
-        if (allReady()) {
+    private void handleProcessToProcessMessage(RoutableMessage message) {
+        if (allReady() && !hasExpired(message)) {
             if (message.getDestination() == BROADCAST_DESTINATION) {
                 broadcast(message);
             } else {
@@ -213,57 +533,106 @@ public abstract class ActiveMqBroker implements MessageListener, Broker {
         }
     }
 
-    private void handleFailMessage(FailMessage message) throws JMSException {
-        fail(message.getProcessId());
+    //checked on headers and a peek at the body, which is never deserialized by the broker.
+    private boolean hasExpired(RoutableMessage message) {
+        return MessageExpiry.getDefault().isExpired(message.getType(), message.getTimestamp());
     }
 
-    private void handleResurrectMessage(ResurrectMessage message) throws JMSException {
-        recover(message.getProcessId());
+    //the message body is forwarded untouched, the same body to all destinations.
+    private void broadcast(final RoutableMessage message) {
+        if (hasFailed(message.getSource())) {
+            return;
+        }
+
+        if (broadcastChannelEnabled && !fifoLinksEnabled && !inFlight.isLimited()) { //the channel can't admit per destination
+            broadcastOverChannel(message);
+            return;
+        }
+
+        for (int i = 1; i <= totalNumberOfProcesses; i++) {
+            if (i != message.getSource()) { //don't send to self
+                unicast(message, i);
+            }
+        }
     }
 
-    private void broadcast(final ProcessToProcessMessage p2pMessage) {
+    //delays and failures are still applied per destination, but the transport is only called once. Never in flight.
+    private void broadcastOverChannel(final RoutableMessage message) {
+        int source = message.getSource();
+        long[] delays = new long[totalNumberOfProcesses];
         for (int i = 1; i <= totalNumberOfProcesses; i++) {
-            if (i != p2pMessage.getSource()) { //don't send to self
-                unicast(p2pMessage, i);
+            if (i == source || hasFailed(i) || links.isCut(source, i) || linkFaults.isLost(source, i)) { //don't send to self
+                delays[i - 1] = -1;
+            } else {
+                delays[i - 1] = getDelay(source, i) + linkFaults.getReorderDelay(source, i) + getQueueingDelay(message, i);
+                if (linkFaults.isDuplicated(source, i)) { //the channel carries a single copy, the duplicate goes separately
+                    delay(message, i, getDelay(source, i) + linkFaults.getReorderDelay(source, i));
+                }
             }
         }
+        endpoint.broadcast(message, delays);
     }
 
     //for system messages that don't need to be delayed.
-    private void broadcastNow(final ProcessMessage p2pMessage) {
+    private void broadcastNow(final ProcessMessage message) {
+        RoutableMessage preparedMessage = endpoint.prepare(message);
         for (int i = 1; i <= totalNumberOfProcesses; i++) {
-            unicastNow(p2pMessage, i);
+            unicastNow(preparedMessage, i);
         }
     }
 
-    private void unicast(final ProcessMessage p2pMessage, final int destination) {
-        if (hasFailed(destination) || hasFailed(p2pMessage.getSource())) {
+    private void unicast(final RoutableMessage message, final int destination) {
+        int source = message.getSource();
+        if (hasFailed(destination) || hasFailed(source) || links.isCut(source, destination) || linkFaults.isLost(source, destination)) {
             return;
         }
 
-        executor.schedule(new Runnable() {
-            @Override
-            public void run() {
-                unicastNow(p2pMessage, destination);
-            }
-        }, getDelay(), TimeUnit.MILLISECONDS);
+        delay(message, destination, getDelay(source, destination) + linkFaults.getReorderDelay(source, destination));
+        if (linkFaults.isDuplicated(source, destination)) {
+            delay(message, destination, getDelay(source, destination) + linkFaults.getReorderDelay(source, destination));
+        }
     }
 
-    //for system messages that don't need to be delayed.
-    private void unicastNow(final ProcessMessage p2pMessage, int destination) {
-        ActiveMQObjectMessage activeMQObjectMessage = new ActiveMQObjectMessage();
-        try {
-            activeMQObjectMessage.setObject(p2pMessage);
-            messageProducers[destination - 1].send(activeMQObjectMessage);
-        } catch (JMSException e) {
-            LOG.error("Error sending message!", e);
+    private void delay(final RoutableMessage message, final int destination, long delay) {
+        RoutableMessage inFlightMessage = inFlight.admit(message, destination);
+        if (inFlightMessage == null) {
+            return; //dropped
+        }
+        delay += getQueueingDelay(message, destination);
+
+        boolean heartbeatLane = heartbeatLaneEnabled && message.getKind() == RoutableMessage.Kind.HEARTBEAT;
+        if (fifoLinksEnabled) {
+            (heartbeatLane ? heartbeatFifoDelayLine : fifoDelayLine).add(inFlightMessage, destination, delay);
+        } else {
+            (heartbeatLane ? heartbeatDelayLine : delayLine).add(inFlightMessage, destination, delay);
         }
     }
 
+    //messages are only sized when bandwidth is limited, sizing may mean serializing them.
+    private long getQueueingDelay(RoutableMessage message, int destination) {
+        return bandwidth.isLimited() ? bandwidth.getQueueingDelay(message.getSource(), destination, message.getSize()) : 0;
+    }
+
+    //for system messages that don't need to be delayed.
+    private void unicastNow(final RoutableMessage message, int destination) {
+        endpoint.send(message, destination);
+    }
+
     /**
      * Compute delay for the next message.
      *
      * @return delay in ms.
      */
     protected abstract long getDelay();
+
+    /**
+     * Compute delay for the next message over a link. Override for per-link delays, by default the same as {@link #getDelay()}.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return delay in ms.
+     */
+    protected long getDelay(int source, int destination) {
+        return getDelay();
+    }
 }
@@ -0,0 +1,25 @@
+package broker;
+
+/**
+ * What the broker does with a message when the number of messages in flight (delayed, but not sent yet) reaches
+ * its limit, see {@link ActiveMqBroker#setInFlightLimits(int, int, BackpressurePolicy)}.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Block the ingress consumer (and thus the sending processes) until a message in flight has been sent.
+     * Must not be used with a single-threaded transport, such as the {@link simulation.Simulator}'s.
+     */
+    BLOCK,
+
+    /**
+     * Discard the oldest heartbeat in flight to make room for the message. If there is no heartbeat in flight,
+     * drop the message.
+     */
+    SHED_OLDEST_HEARTBEATS,
+
+    /**
+     * Drop the message.
+     */
+    DROP
+}
@@ -0,0 +1,159 @@
+package broker;
+
+import clock.Clock;
+import message.internal.LinkMessage;
+
+/**
+ * Bandwidth limits of each directed link between processes 1 to N and of each process' network interface, as token
+ * buckets filled with bytes per second and drained by the serialized size of messages.
+ * <p/>
+ * A message that finds a bucket empty isn't dropped, it goes into debt: it waits until the bucket has refilled enough
+ * to cover its size, and so does every message after it. Queueing delay thus emerges from load. A message passes
+ * through its source's outgoing bucket, its link's bucket and its destination's incoming bucket, and waits for the
+ * slowest of them (the bottleneck).
+ * <p/>
+ * Links and processes are unlimited by default, and messages don't wait at all then.
+ * <p/>
+ * This class is thread-safe.
+ */
+class Bandwidth {
+
+    private final int numberOfProcesses;
+    private final Clock clock;
+
+    /**
+     * Current buckets, null when unlimited. The arrays are never modified once published.
+     */
+    private volatile Bucket[] links;
+    private volatile Bucket[] outgoing;
+    private volatile Bucket[] incoming;
+    private volatile boolean limited = false;
+
+    /**
+     * Construct new limits with all links and processes unlimited.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param clock             according to which buckets are refilled.
+     */
+    Bandwidth(int numberOfProcesses, Clock clock) {
+        this.numberOfProcesses = numberOfProcesses;
+        this.clock = clock;
+        this.links = new Bucket[numberOfProcesses * numberOfProcesses];
+        this.outgoing = new Bucket[numberOfProcesses];
+        this.incoming = new Bucket[numberOfProcesses];
+    }
+
+    /**
+     * Limit the bandwidth of links.
+     *
+     * @param source         ID of the source process, or {@link LinkMessage#ALL}.
+     * @param destination    ID of the destination process, or {@link LinkMessage#ALL}.
+     * @param bytesPerSecond rate at which the links' buckets are refilled, 0 for unlimited.
+     * @param burst          capacity of the links' buckets in bytes.
+     */
+    synchronized void setLinkLimit(int source, int destination, long bytesPerSecond, long burst) {
+        Bucket[] updated = links.clone();
+        for (int s = 1; s <= numberOfProcesses; s++) {
+            for (int d = 1; d <= numberOfProcesses; d++) {
+                if ((source == LinkMessage.ALL || source == s) && (destination == LinkMessage.ALL || destination == d)) {
+                    updated[(s - 1) * numberOfProcesses + (d - 1)] = newBucket(bytesPerSecond, burst);
+                }
+            }
+        }
+        links = updated;
+        limited = contains(links) || contains(outgoing) || contains(incoming);
+    }
+
+    /**
+     * Limit the bandwidth of processes, in each direction.
+     *
+     * @param processId      ID of the process, or {@link LinkMessage#ALL}.
+     * @param bytesPerSecond rate at which the processes' outgoing and incoming buckets are refilled, 0 for unlimited.
+     * @param burst          capacity of the processes' buckets in bytes.
+     */
+    synchronized void setProcessLimit(int processId, long bytesPerSecond, long burst) {
+        Bucket[] updatedOutgoing = outgoing.clone();
+        Bucket[] updatedIncoming = incoming.clone();
+        for (int p = 1; p <= numberOfProcesses; p++) {
+            if (processId == LinkMessage.ALL || processId == p) {
+                updatedOutgoing[p - 1] = newBucket(bytesPerSecond, burst);
+                updatedIncoming[p - 1] = newBucket(bytesPerSecond, burst);
+            }
+        }
+        outgoing = updatedOutgoing;
+        incoming = updatedIncoming;
+        limited = contains(links) || contains(outgoing) || contains(incoming);
+    }
+
+    /**
+     * Check whether any link or process is limited, i.e. whether the size of messages is needed at all.
+     *
+     * @return true iff limited.
+     */
+    boolean isLimited() {
+        return limited;
+    }
+
+    /**
+     * Take the next message over a link through the buckets and compute how long it has to wait for them.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @param size        serialized size of the message in bytes.
+     * @return queueing delay in ms.
+     */
+    long getQueueingDelay(int source, int destination, int size) {
+        if (source < 1 || source > numberOfProcesses || destination < 1 || destination > numberOfProcesses) {
+            return 0;
+        }
+        long now = clock.currentTimeMillis();
+        long delay = take(outgoing[source - 1], size, now);
+        delay = Math.max(delay, take(links[(source - 1) * numberOfProcesses + (destination - 1)], size, now));
+        return Math.max(delay, take(incoming[destination - 1], size, now));
+    }
+
+    private long take(Bucket bucket, int size, long now) {
+        return bucket == null ? 0 : bucket.take(size, now);
+    }
+
+    private boolean contains(Bucket[] buckets) {
+        for (Bucket bucket : buckets) {
+            if (bucket != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Bucket newBucket(long bytesPerSecond, long burst) {
+        return bytesPerSecond > 0 ? new Bucket(bytesPerSecond, burst, clock.currentTimeMillis()) : null;
+    }
+
+    /**
+     * A token bucket, starting full.
+     */
+    private static class Bucket {
+
+        private final double bytesPerMs;
+        private final double capacity;
+
+        private double tokens; //negative when in debt
+        private long lastRefill;
+
+        private Bucket(long bytesPerSecond, long burst, long now) {
+            this.bytesPerMs = bytesPerSecond / 1000.0;
+            this.capacity = Math.max(burst, 0);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        private synchronized long take(int size, long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * bytesPerMs);
+                lastRefill = now;
+            }
+            tokens -= size;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / bytesPerMs);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package broker;
+
+import clock.Clock;
+import transport.RoutableMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A calendar queue (timing wheel) of messages waiting to be sent to their destinations after a delay.
+ * <p/>
+ * Messages are put in the bucket of the millisecond in which they are due, which is O(1). A single task (tick) is
+ * scheduled per bucket and delivery millisecond, no matter how many messages are due in it. When it runs, it drains
+ * all messages due from the bucket and hands them to the {@link Sender} in one batch. A broadcast to N processes with
+ * a fixed delay thus costs a single scheduled task, rather than N.
+ * <p/>
+ * This class is thread-safe.
+ */
+class DelayLine {
+
+    /**
+     * Number of buckets, i.e. milliseconds covered by one rotation of the wheel. Messages delayed by more than that
+     * share buckets with messages due sooner and are left in place until they are due.
+     */
+    static final int WHEEL_SIZE = 1024;
+
+    /**
+     * The consumer of messages that are due.
+     */
+    interface Sender {
+
+        /**
+         * Send a message that is due.
+         *
+         * @param message     to send.
+         * @param destination ID of the destination process.
+         */
+        void send(RoutableMessage message, int destination);
+    }
+
+    private final Clock clock;
+    private final ScheduledExecutorService executor;
+    private final Sender sender;
+
+    private final Bucket[] buckets = new Bucket[WHEEL_SIZE];
+
+    /**
+     * Construct a new delay line.
+     *
+     * @param clock    according to which messages are due.
+     * @param executor on which ticks are scheduled, created by the same clock.
+     * @param sender   to which messages are handed once due.
+     */
+    DelayLine(Clock clock, ScheduledExecutorService executor, Sender sender) {
+        this.clock = clock;
+        this.executor = executor;
+        this.sender = sender;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Add a message to the delay line.
+     *
+     * @param message     to send.
+     * @param destination ID of the destination process.
+     * @param delay       in ms.
+     */
+    void add(RoutableMessage message, int destination, long delay) {
+        final long due = clock.currentTimeMillis() + delay;
+        final Bucket bucket = buckets[(int) (due % WHEEL_SIZE)];
+        synchronized (bucket) {
+            bucket.entries.add(new Entry(message, destination, due));
+            if (bucket.scheduledTick == due) {
+                return; //the tick of this millisecond will take care of it
+            }
+            bucket.scheduledTick = due;
+        }
+
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    tick(bucket, due);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //shutting down, messages no longer delivered
+        }
+    }
+
+    /**
+     * Drain all messages due from a bucket and send them.
+     *
+     * @param bucket to drain.
+     * @param tick   delivery millisecond for which the tick has been scheduled.
+     */
+    private void tick(Bucket bucket, long tick) {
+        long now = Math.max(tick, clock.currentTimeMillis()); //the clock may lag behind the executor's timer slightly
+        List<Entry> batch = new ArrayList<Entry>();
+        synchronized (bucket) {
+            if (bucket.scheduledTick == tick) {
+                bucket.scheduledTick = -1; //messages added for the same millisecond from now on need a new tick
+            }
+            List<Entry> remaining = new ArrayList<Entry>();
+            for (Entry entry : bucket.entries) {
+                if (entry.due <= now) {
+                    batch.add(entry);
+                } else {
+                    remaining.add(entry); //due in one of the next rotations
+                }
+            }
+            bucket.entries = remaining;
+        }
+
+        for (Entry entry : batch) {
+            sender.send(entry.message, entry.destination);
+        }
+    }
+
+    /**
+     * Messages due in the same millisecond (modulo {@link #WHEEL_SIZE}).
+     */
+    private static class Bucket {
+
+        private List<Entry> entries = new ArrayList<Entry>();
+
+        /**
+         * Delivery millisecond for which the last tick of this bucket has been scheduled.
+         */
+        private long scheduledTick = -1;
+    }
+
+    private static class Entry {
+
+        private final RoutableMessage message;
+        private final int destination;
+        private final long due;
+
+        private Entry(RoutableMessage message, int destination, long due) {
+            this.message = message;
+            this.destination = destination;
+            this.due = due;
+        }
+    }
+}
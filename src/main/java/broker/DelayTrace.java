@@ -0,0 +1,145 @@
+package broker;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Per-link message delays recorded from real traffic, replayed from a memory-mapped file.
+ * <p/>
+ * The file consists of a header ({@link #MAGIC}, {@link #VERSION}, number of processes N, sample interval in ms and
+ * number of samples per link S, all 4-byte big-endian ints) followed by N * N links, ordered by source and then by
+ * destination, each being S consecutive samples. A sample is the delay in ms as an unsigned 2-byte big-endian short.
+ * <p/>
+ * Sample k of every link is the delay observed during the k-th sample interval of the recording, so that looking up
+ * the samples of all links for the same point in time preserves bursts that affected many links at once. The trace is
+ * replayed in a loop.
+ * <p/>
+ * The file is never loaded onto the heap. It is mapped into memory in chunks, so traces larger than 2GB are supported.
+ * <p/>
+ * This class is immutable and thread-safe.
+ */
+public class DelayTrace {
+
+    public static final int MAGIC = 0x46445452; //"FDTR"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int SAMPLE_SIZE = 2;
+
+    /**
+     * Size of the memory-mapped chunks of the file, a multiple of {@link #SAMPLE_SIZE}.
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    private final int numberOfProcesses;
+    private final int sampleInterval;
+    private final int samplesPerLink;
+    private final MappedByteBuffer[] chunks;
+
+    private DelayTrace(int numberOfProcesses, int sampleInterval, int samplesPerLink, MappedByteBuffer[] chunks) {
+        this.numberOfProcesses = numberOfProcesses;
+        this.sampleInterval = sampleInterval;
+        this.samplesPerLink = samplesPerLink;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Open a trace file.
+     *
+     * @param file containing the trace.
+     * @return trace.
+     * @throws IOException if the file can't be read or isn't a valid trace.
+     */
+    public static DelayTrace open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            if (randomAccessFile.readInt() != MAGIC) {
+                throw new IOException(file + " is not a delay trace!");
+            }
+            int version = randomAccessFile.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version + "!");
+            }
+            int numberOfProcesses = randomAccessFile.readInt();
+            int sampleInterval = randomAccessFile.readInt();
+            int samplesPerLink = randomAccessFile.readInt();
+            if (numberOfProcesses <= 0 || sampleInterval <= 0 || samplesPerLink <= 0) {
+                throw new IOException(file + " has an invalid header!");
+            }
+
+            long size = (long) numberOfProcesses * numberOfProcesses * samplesPerLink * SAMPLE_SIZE;
+            if (randomAccessFile.length() < HEADER_SIZE + size) {
+                throw new IOException(file + " is truncated!");
+            }
+
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + position, Math.min(CHUNK_SIZE, size - position));
+            }
+            return new DelayTrace(numberOfProcesses, sampleInterval, samplesPerLink, chunks);
+        } finally {
+            randomAccessFile.close(); //mappings stay valid
+        }
+    }
+
+    /**
+     * Write a trace file.
+     *
+     * @param file           to write.
+     * @param sampleInterval interval between samples in ms.
+     * @param samples        delays in ms, indexed by source - 1, destination - 1 and sample number. All links
+     *                       must have the same number of samples.
+     * @throws IOException if the file can't be written.
+     */
+    public static void write(File file, int sampleInterval, int[][][] samples) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(samples.length);
+            out.writeInt(sampleInterval);
+            out.writeInt(samples[0][0].length);
+            for (int[][] source : samples) {
+                for (int[] link : source) {
+                    for (int sample : link) {
+                        out.writeShort(Math.min(sample, 0xFFFF));
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get the number of processes of the recording.
+     *
+     * @return number of processes.
+     */
+    public int getNumberOfProcesses() {
+        return numberOfProcesses;
+    }
+
+    /**
+     * Get the delay of a link at a point in time.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @param elapsed     time since the start of the replay in ms.
+     * @return delay in ms.
+     */
+    public long getDelay(int source, int destination, long elapsed) {
+        long link = (long) (source - 1) * numberOfProcesses + (destination - 1);
+        long sample = (elapsed / sampleInterval) % samplesPerLink;
+        long offset = (link * samplesPerLink + sample) * SAMPLE_SIZE;
+        return chunks[(int) (offset / CHUNK_SIZE)].getShort((int) (offset % CHUNK_SIZE)) & 0xFFFF;
+    }
+}
@@ -1,59 +1,97 @@
 package broker;
 
+import message.internal.CutLinkMessage;
 import message.internal.FailMessage;
+import message.internal.HealLinkMessage;
+import message.internal.LinkFaultsMessage;
+import message.internal.LinkMessage;
+import message.internal.PartitionMessage;
 import message.internal.ResurrectMessage;
-import org.apache.activemq.ActiveMQConnectionFactory;
-import org.apache.activemq.command.ActiveMQObjectMessage;
-import org.apache.log4j.Logger;
-
-import javax.jms.*;
-
-import static broker.ActiveMqBroker.*;
+import transport.Endpoint;
+import transport.Transport;
+import transport.Transports;
 
 /**
  *
  */
 public class FailureInjector {
-    private static final Logger LOG = Logger.getLogger(FailureInjector.class);
 
-    private MessageProducer producer;
+    private final Endpoint endpoint;
 
     public FailureInjector() {
-        setupMessageProducer();
+        this(Transports.getDefault());
     }
 
-    private void setupMessageProducer() {
-        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
-        Connection connection;
-        try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Destination toProcessQueue = session.createQueue(FROM_PROCESS_QUEUE);
-            producer = session.createProducer(toProcessQueue);
-            producer.setDeliveryMode(Session.AUTO_ACKNOWLEDGE);
-        } catch (JMSException e) {
-            LOG.fatal("Failed to create message producer.", e);
-        }
+    public FailureInjector(Transport transport) {
+        endpoint = transport.connectClient();
     }
 
     public void killProcess(int processId) {
-        ActiveMQObjectMessage activeMQObjectMessage = new ActiveMQObjectMessage();
-        try {
-            activeMQObjectMessage.setObject(new FailMessage(processId));
-            producer.send(activeMQObjectMessage);
-        } catch (JMSException e) {
-            LOG.error("Error sending message!", e);
-        }
+        endpoint.send(new FailMessage(processId));
     }
 
     public void restoreProcess(int processId) {
-        ActiveMQObjectMessage activeMQObjectMessage = new ActiveMQObjectMessage();
-        try {
-            activeMQObjectMessage.setObject(new ResurrectMessage(processId));
-            producer.send(activeMQObjectMessage);
-        } catch (JMSException e) {
-            LOG.error("Error sending message!", e);
-        }
+        endpoint.send(new ResurrectMessage(processId));
+    }
+
+    /**
+     * Cut the link from one process to another, the link in the opposite direction stays up.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     */
+    public void cutLink(int source, int destination) {
+        endpoint.send(new CutLinkMessage(source, destination));
+    }
+
+    /**
+     * Heal the link from one process to another.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     */
+    public void healLink(int source, int destination) {
+        endpoint.send(new HealLinkMessage(source, destination));
+    }
+
+    /**
+     * Cut all links to and from a process. Unlike {@link #killProcess(int)}, the process keeps running.
+     *
+     * @param processId ID of the process to isolate.
+     */
+    public void isolate(int processId) {
+        endpoint.send(new CutLinkMessage(processId, LinkMessage.ALL));
+        endpoint.send(new CutLinkMessage(LinkMessage.ALL, processId));
+    }
+
+    /**
+     * Partition the network: cut all links (in both directions) between processes of different groups, all at once.
+     * Links within groups are left untouched.
+     *
+     * @param groups IDs of the processes of each group.
+     */
+    public void partition(int[]... groups) {
+        endpoint.send(new PartitionMessage(groups));
+    }
+
+    /**
+     * Heal all links.
+     */
+    public void heal() {
+        endpoint.send(new HealLinkMessage(LinkMessage.ALL, LinkMessage.ALL));
+    }
+
+    /**
+     * Make a link lossy. Set all parameters to 0 to make it perfect again.
+     *
+     * @param source                 ID of the source process, or {@link LinkMessage#ALL}.
+     * @param destination            ID of the destination process, or {@link LinkMessage#ALL}.
+     * @param lossProbability        probability of a message being dropped.
+     * @param duplicationProbability probability of a message being delivered twice.
+     * @param reorderWindow          maximum extra delay of a message in ms, so that messages sent within the window
+     *                               may overtake each other.
+     */
+    public void setLinkFaults(int source, int destination, double lossProbability, double duplicationProbability, int reorderWindow) {
+        endpoint.send(new LinkFaultsMessage(source, destination, lossProbability, duplicationProbability, reorderWindow));
     }
 }
@@ -0,0 +1,87 @@
+package broker;
+
+import clock.Clock;
+import transport.RoutableMessage;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A delay line that never reorders messages on the same link: a message is never sent before an earlier message
+ * from the same source to the same destination.
+ * <p/>
+ * Each (source, destination) link has its own queue of messages waiting to be sent. A message is due after its delay,
+ * but not before the previous message on its link: its due time is the maximum of both. Every time a message of a link
+ * is due (according to an underlying {@link DelayLine}), the head of the link's queue is sent, holding the link's lock,
+ * so that even ticks running concurrently send messages of the same link in order.
+ * <p/>
+ * This class is thread-safe.
+ */
+class FifoDelayLine {
+
+    private final int numberOfProcesses;
+    private final Clock clock;
+    private final DelayLine delayLine;
+    private final Link[] links;
+
+    /**
+     * Construct a new delay line.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param clock             according to which messages are due.
+     * @param executor          on which ticks are scheduled, created by the same clock.
+     * @param sender            to which messages are handed once due.
+     */
+    FifoDelayLine(int numberOfProcesses, Clock clock, ScheduledExecutorService executor, final DelayLine.Sender sender) {
+        this.numberOfProcesses = numberOfProcesses;
+        this.clock = clock;
+        this.links = new Link[numberOfProcesses * numberOfProcesses];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = new Link();
+        }
+        this.delayLine = new DelayLine(clock, executor, new DelayLine.Sender() {
+            @Override
+            public void send(RoutableMessage message, int destination) {
+                Link link = links[link(message.getSource(), destination)];
+                synchronized (link) {
+                    sender.send(link.pending.poll(), destination); //not necessarily the message that has been due
+                }
+            }
+        });
+    }
+
+    /**
+     * Add a message to the delay line.
+     *
+     * @param message     to send, from one of the processes of the ensemble.
+     * @param destination ID of the destination process.
+     * @param delay       in ms, extended if necessary so that the message isn't sent before earlier ones on its link.
+     */
+    void add(RoutableMessage message, int destination, long delay) {
+        Link link = links[link(message.getSource(), destination)];
+        synchronized (link) {
+            long now = clock.currentTimeMillis();
+            link.lastDue = Math.max(now + delay, link.lastDue);
+            link.pending.add(message);
+            delayLine.add(message, destination, link.lastDue - now);
+        }
+    }
+
+    private int link(int source, int destination) {
+        return (source - 1) * numberOfProcesses + (destination - 1);
+    }
+
+    /**
+     * Messages waiting to be sent over a link, in the order they have been added.
+     */
+    private static class Link {
+
+        private final Queue<RoutableMessage> pending = new ArrayDeque<RoutableMessage>();
+
+        /**
+         * Time at which the last message added is due.
+         */
+        private long lastDue = 0;
+    }
+}
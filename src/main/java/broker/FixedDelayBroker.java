@@ -1,5 +1,7 @@
 package broker;
 
+import transport.Transport;
+
 /**
  * A broker with fixed delay of {@link #DELAY}.
  */
@@ -14,6 +16,16 @@ public class FixedDelayBroker extends ActiveMqBroker {
         super(numberOfProcesses);
     }
 
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     */
+    public FixedDelayBroker(int numberOfProcesses, Transport transport) {
+        super(numberOfProcesses, transport);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1,5 +1,8 @@
 package broker;
 
+import transport.Transport;
+import transport.Transports;
+
 import java.util.Random;
 
 /**
@@ -9,7 +12,7 @@ public class GaussianDelayBroker extends ActiveMqBroker {
     private static final double MEAN = (double) DELAY;
     private static final double STDV = MEAN / 2.0;
 
-    private final Random random = new Random(System.currentTimeMillis());
+    private final Random random;
 
     /**
      * Construct a new broker.
@@ -17,7 +20,29 @@ public class GaussianDelayBroker extends ActiveMqBroker {
      * @param numberOfProcesses total number of processes in the ensemble.
      */
     public GaussianDelayBroker(int numberOfProcesses) {
-        super(numberOfProcesses);
+        this(numberOfProcesses, Transports.getDefault());
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     */
+    public GaussianDelayBroker(int numberOfProcesses, Transport transport) {
+        this(numberOfProcesses, transport, System.currentTimeMillis());
+    }
+
+    /**
+     * Construct a new broker with reproducible delays.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param seed              of the random delay generator, from which the fault generator is seeded too.
+     */
+    public GaussianDelayBroker(int numberOfProcesses, Transport transport, long seed) {
+        super(numberOfProcesses, transport, seed);
+        this.random = new Random(seed);
     }
 
     /**
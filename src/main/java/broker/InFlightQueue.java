@@ -0,0 +1,351 @@
+package broker;
+
+import clock.Clock;
+import message.internal.BrokeredMessage;
+import org.apache.log4j.Logger;
+import transport.RoutableMessage;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounting of messages in flight, i.e. waiting for their delay to elapse, per destination and in total. Admission
+ * is bounded by limits on both, enforced according to a {@link BackpressurePolicy}. Without limits (the default),
+ * messages are only counted.
+ * <p/>
+ * Every admitted message is wrapped in an {@link InFlightMessage}, which records when it has been admitted, so that
+ * the time it spends in flight can be measured when it is released. A message shed while in flight stays in the
+ * delay line until it is due, but no longer counts towards the limits and is not sent.
+ * <p/>
+ * This class is thread-safe.
+ */
+class InFlightQueue {
+    private static final Logger LOG = Logger.getLogger(InFlightQueue.class);
+
+    private final int numberOfProcesses;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+
+    private int destinationLimit = Integer.MAX_VALUE;
+    private int globalLimit = Integer.MAX_VALUE;
+    private BackpressurePolicy policy = BackpressurePolicy.DROP;
+    private volatile boolean limited = false;
+
+    /**
+     * Messages in flight, indexed by destination. Index 0 is unused.
+     */
+    private final int[] depths;
+    private int depth = 0;
+
+    /**
+     * Heartbeats in flight that can be shed, oldest first, indexed by destination. Index 0 is unused.
+     */
+    private final Deque<InFlightMessage>[] heartbeats;
+
+    private long released = 0;
+    private long totalTimeInQueue = 0;
+    private long maxTimeInQueue = 0;
+    private long dropped = 0;
+    private long shed = 0;
+
+    /**
+     * Construct a new queue without limits.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param clock             according to which time in queue is measured.
+     */
+    @SuppressWarnings("unchecked")
+    InFlightQueue(int numberOfProcesses, Clock clock) {
+        this.numberOfProcesses = numberOfProcesses;
+        this.clock = clock;
+        this.depths = new int[numberOfProcesses + 1];
+        this.heartbeats = new Deque[numberOfProcesses + 1];
+        for (int i = 1; i <= numberOfProcesses; i++) {
+            heartbeats[i] = new ArrayDeque<InFlightMessage>();
+        }
+    }
+
+    /**
+     * Set the limits.
+     *
+     * @param destinationLimit maximum number of messages in flight to a single destination.
+     * @param globalLimit      maximum number of messages in flight in total.
+     * @param policy           applied when a limit is reached.
+     */
+    void setLimits(int destinationLimit, int globalLimit, BackpressurePolicy policy) {
+        lock.lock();
+        try {
+            this.destinationLimit = destinationLimit;
+            this.globalLimit = globalLimit;
+            this.policy = policy;
+            this.limited = destinationLimit != Integer.MAX_VALUE || globalLimit != Integer.MAX_VALUE;
+            notFull.signalAll(); //limits may have been raised
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether any limit is set, i.e. whether messages need to be admitted and released one destination at a time.
+     *
+     * @return true iff limited.
+     */
+    boolean isLimited() {
+        return limited;
+    }
+
+    /**
+     * Admit a message, blocking, shedding or dropping according to the policy if a limit has been reached.
+     *
+     * @param message     to admit.
+     * @param destination ID of the destination process.
+     * @return message in flight, to be released before it is sent. Null if the message has been dropped.
+     */
+    InFlightMessage admit(RoutableMessage message, int destination) {
+        lock.lock();
+        try {
+            while (isFull(destination)) {
+                if (policy == BackpressurePolicy.BLOCK) {
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        LOG.warn("Interrupted while waiting for messages in flight to be sent, dropping message.");
+                        Thread.currentThread().interrupt();
+                        dropped++;
+                        return null;
+                    }
+                } else if (policy == BackpressurePolicy.DROP || !shedOldestHeartbeat(destination)) {
+                    dropped++;
+                    return null;
+                }
+            }
+
+            InFlightMessage inFlight = new InFlightMessage(message, clock.currentTimeMillis());
+            if (isValid(destination)) {
+                depths[destination]++;
+                if (message.getKind() == RoutableMessage.Kind.HEARTBEAT) {
+                    heartbeats[destination].addLast(inFlight);
+                }
+            }
+            depth++;
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a message that is due.
+     *
+     * @param inFlight    message in flight, as admitted.
+     * @param destination ID of the destination process.
+     * @return true iff the message should be sent, false if it has been shed.
+     */
+    boolean release(InFlightMessage inFlight, int destination) {
+        lock.lock();
+        try {
+            if (inFlight.shed) {
+                return false;
+            }
+
+            if (isValid(destination)) {
+                depths[destination]--;
+                if (inFlight.getKind() == RoutableMessage.Kind.HEARTBEAT) {
+                    heartbeats[destination].removeFirstOccurrence(inFlight); //usually the first one
+                }
+            }
+            depth--;
+
+            long timeInQueue = clock.currentTimeMillis() - inFlight.admitted;
+            released++;
+            totalTimeInQueue += timeInQueue;
+            maxTimeInQueue = Math.max(maxTimeInQueue, timeInQueue);
+
+            notFull.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //must hold the lock.
+    private boolean isFull(int destination) {
+        return depth >= globalLimit || (isValid(destination) && depths[destination] >= destinationLimit);
+    }
+
+    //must hold the lock. Sheds the oldest heartbeat to the destination, or globally if only the global limit has been reached.
+    private boolean shedOldestHeartbeat(int destination) {
+        int victim = -1;
+        if (isValid(destination) && depths[destination] >= destinationLimit) {
+            victim = heartbeats[destination].isEmpty() ? -1 : destination;
+        } else {
+            long oldest = Long.MAX_VALUE;
+            for (int i = 1; i <= numberOfProcesses; i++) {
+                if (!heartbeats[i].isEmpty() && heartbeats[i].peekFirst().admitted < oldest) {
+                    oldest = heartbeats[i].peekFirst().admitted;
+                    victim = i;
+                }
+            }
+        }
+
+        if (victim == -1) {
+            return false;
+        }
+
+        heartbeats[victim].pollFirst().shed = true;
+        depths[victim]--;
+        depth--;
+        shed++;
+        return true;
+    }
+
+    private boolean isValid(int destination) {
+        return destination >= 1 && destination <= numberOfProcesses;
+    }
+
+    /**
+     * Get the number of messages in flight.
+     *
+     * @return depth.
+     */
+    int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of messages in flight to a destination.
+     *
+     * @param destination ID of the destination process.
+     * @return depth.
+     */
+    int getDepth(int destination) {
+        lock.lock();
+        try {
+            return isValid(destination) ? depths[destination] : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the average time messages that have been sent spent in flight.
+     *
+     * @return time in ms.
+     */
+    double getAverageTimeInQueue() {
+        lock.lock();
+        try {
+            return released == 0 ? 0 : (double) totalTimeInQueue / released;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum time a message that has been sent spent in flight.
+     *
+     * @return time in ms.
+     */
+    long getMaxTimeInQueue() {
+        lock.lock();
+        try {
+            return maxTimeInQueue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of messages dropped because a limit had been reached.
+     *
+     * @return number of messages.
+     */
+    long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of heartbeats shed while in flight.
+     *
+     * @return number of messages.
+     */
+    long getShed() {
+        lock.lock();
+        try {
+            return shed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A message in flight, wrapping the message admitted.
+     */
+    static class InFlightMessage extends RoutableMessage {
+
+        private final RoutableMessage message;
+        private final long admitted;
+        private boolean shed = false; //guarded by the queue's lock
+
+        private InFlightMessage(RoutableMessage message, long admitted) {
+            super(message.getKind(), message.getSource(), message.getDestination());
+            this.message = message;
+            this.admitted = admitted;
+        }
+
+        /**
+         * Get the message admitted, as received from the transport.
+         *
+         * @return message.
+         */
+        RoutableMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public BrokeredMessage decode() {
+            return message.decode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<?> getType() {
+            return message.getType();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimestamp() {
+            return message.getTimestamp();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getSize() {
+            return message.getSize();
+        }
+    }
+}
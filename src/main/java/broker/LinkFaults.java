@@ -0,0 +1,159 @@
+package broker;
+
+import message.internal.LinkMessage;
+
+import java.util.Random;
+
+/**
+ * The faults (loss, duplication and reordering) of each directed link between processes 1 to N, as primitive matrices.
+ * <p/>
+ * Looking up a link is O(1) and doesn't lock. Links without faults don't draw any random numbers, so configuring faults
+ * doesn't change the delays of a seeded broker on the other links. Under the same seed and the same sequence of messages
+ * (e.g. in a {@link simulation.Simulator}), the same messages are lost, duplicated and reordered.
+ * <p/>
+ * This class is thread-safe.
+ */
+class LinkFaults {
+
+    private final int numberOfProcesses;
+    private final Random random;
+
+    /**
+     * Current faults, never modified once published.
+     */
+    private volatile Matrices matrices;
+
+    /**
+     * Construct a new set of faults with all links perfect.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param seed              of the random fault generator.
+     */
+    LinkFaults(int numberOfProcesses, long seed) {
+        this.numberOfProcesses = numberOfProcesses;
+        this.random = new Random(seed);
+        this.matrices = new Matrices(numberOfProcesses * numberOfProcesses);
+    }
+
+    /**
+     * Re-seed the random fault generator.
+     *
+     * @param seed of the random fault generator.
+     */
+    void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Configure faults of links.
+     *
+     * @param source                 ID of the source process, or {@link LinkMessage#ALL}.
+     * @param destination            ID of the destination process, or {@link LinkMessage#ALL}.
+     * @param lossProbability        probability of a message being dropped.
+     * @param duplicationProbability probability of a message being delivered twice.
+     * @param reorderWindow          maximum extra delay of a message in ms.
+     */
+    synchronized void set(int source, int destination, double lossProbability, double duplicationProbability, int reorderWindow) {
+        Matrices updated = new Matrices(matrices);
+        for (int s = 1; s <= numberOfProcesses; s++) {
+            for (int d = 1; d <= numberOfProcesses; d++) {
+                if ((source == LinkMessage.ALL || source == s) && (destination == LinkMessage.ALL || destination == d)) {
+                    int link = (s - 1) * numberOfProcesses + (d - 1);
+                    updated.loss[link] = lossProbability;
+                    updated.duplication[link] = duplicationProbability;
+                    updated.reorderWindow[link] = reorderWindow;
+                }
+            }
+        }
+        matrices = updated;
+    }
+
+    /**
+     * Decide whether the next message over a link is lost.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return true iff lost.
+     */
+    boolean isLost(int source, int destination) {
+        int link = link(source, destination);
+        if (link < 0) {
+            return false;
+        }
+        double probability = matrices.loss[link];
+        return probability > 0 && random.nextDouble() < probability;
+    }
+
+    /**
+     * Decide whether the next message over a link is duplicated.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return true iff duplicated.
+     */
+    boolean isDuplicated(int source, int destination) {
+        int link = link(source, destination);
+        if (link < 0) {
+            return false;
+        }
+        double probability = matrices.duplication[link];
+        return probability > 0 && random.nextDouble() < probability;
+    }
+
+    /**
+     * Check whether messages over a link may be duplicated at all, without drawing.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return true iff the link has a duplication probability.
+     */
+    boolean isDuplicating(int source, int destination) {
+        int link = link(source, destination);
+        return link >= 0 && matrices.duplication[link] > 0;
+    }
+
+    /**
+     * Draw the extra delay of the next message over a link.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return extra delay in ms, within the link's reorder window.
+     */
+    long getReorderDelay(int source, int destination) {
+        int link = link(source, destination);
+        if (link < 0) {
+            return 0;
+        }
+        int window = matrices.reorderWindow[link];
+        return window > 0 ? random.nextInt(window + 1) : 0;
+    }
+
+    private int link(int source, int destination) {
+        if (source < 1 || source > numberOfProcesses || destination < 1 || destination > numberOfProcesses) {
+            return -1;
+        }
+        return (source - 1) * numberOfProcesses + (destination - 1);
+    }
+
+    /**
+     * Fault parameters, indexed by (source - 1) * N + (destination - 1).
+     */
+    private static class Matrices {
+
+        private final double[] loss;
+        private final double[] duplication;
+        private final int[] reorderWindow;
+
+        private Matrices(int links) {
+            loss = new double[links];
+            duplication = new double[links];
+            reorderWindow = new int[links];
+        }
+
+        private Matrices(Matrices original) {
+            loss = original.loss.clone();
+            duplication = original.duplication.clone();
+            reorderWindow = original.reorderWindow.clone();
+        }
+    }
+}
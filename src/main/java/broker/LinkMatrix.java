@@ -0,0 +1,108 @@
+package broker;
+
+import message.internal.LinkMessage;
+
+/**
+ * The state (cut or not) of each directed link between processes 1 to N, as a bitset adjacency matrix.
+ * <p/>
+ * Checking a link is O(1): a single array read and bit test, without any locking. Cutting and healing links is
+ * rare, it copies the matrix and publishes the copy.
+ * <p/>
+ * This class is thread-safe.
+ */
+class LinkMatrix {
+
+    private final int numberOfProcesses;
+
+    /**
+     * Bit (source - 1) * N + (destination - 1) is set iff the link from source to destination is cut. Never modified
+     * once published.
+     */
+    private volatile long[] cut;
+
+    /**
+     * Construct a new matrix with all links up.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     */
+    LinkMatrix(int numberOfProcesses) {
+        this.numberOfProcesses = numberOfProcesses;
+        this.cut = new long[(numberOfProcesses * numberOfProcesses + 63) / 64];
+    }
+
+    /**
+     * Is a link cut?
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return true iff cut. Links of processes that aren't in the ensemble are never cut.
+     */
+    boolean isCut(int source, int destination) {
+        if (source < 1 || source > numberOfProcesses || destination < 1 || destination > numberOfProcesses) {
+            return false;
+        }
+        int bit = (source - 1) * numberOfProcesses + (destination - 1);
+        return (cut[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Cut or heal links. Only the links concerned are visited, i.e. a single one for a concrete source and destination.
+     *
+     * @param source      ID of the source process, or {@link LinkMessage#ALL}.
+     * @param destination ID of the destination process, or {@link LinkMessage#ALL}.
+     * @param isCut       true to cut the links, false to heal them.
+     */
+    synchronized void set(int source, int destination, boolean isCut) {
+        int firstSource = source == LinkMessage.ALL ? 1 : source;
+        int lastSource = source == LinkMessage.ALL ? numberOfProcesses : Math.min(source, numberOfProcesses);
+        int firstDestination = destination == LinkMessage.ALL ? 1 : destination;
+        int lastDestination = destination == LinkMessage.ALL ? numberOfProcesses : Math.min(destination, numberOfProcesses);
+        if (firstSource < 1 || firstDestination < 1) {
+            return; //not in the ensemble
+        }
+
+        long[] updated = cut.clone();
+        for (int s = firstSource; s <= lastSource; s++) {
+            for (int d = firstDestination; d <= lastDestination; d++) {
+                set(updated, s, d, isCut);
+            }
+        }
+        cut = updated;
+    }
+
+    /**
+     * Partition the processes: cut all links (in both directions) between processes of different groups. Links
+     * within groups and links of processes that aren't in any group are left untouched.
+     *
+     * @param groups IDs of the processes of each group.
+     */
+    synchronized void partition(int[][] groups) {
+        int[] groupOf = new int[numberOfProcesses + 1]; //0 for no group
+        for (int i = 0; i < groups.length; i++) {
+            for (int processId : groups[i]) {
+                if (processId >= 1 && processId <= numberOfProcesses) {
+                    groupOf[processId] = i + 1;
+                }
+            }
+        }
+
+        long[] updated = cut.clone();
+        for (int s = 1; s <= numberOfProcesses; s++) {
+            for (int d = 1; d <= numberOfProcesses; d++) {
+                if (groupOf[s] != 0 && groupOf[d] != 0 && groupOf[s] != groupOf[d]) {
+                    set(updated, s, d, true);
+                }
+            }
+        }
+        cut = updated;
+    }
+
+    private void set(long[] matrix, int source, int destination, boolean isCut) {
+        int bit = (source - 1) * numberOfProcesses + (destination - 1);
+        if (isCut) {
+            matrix[bit >>> 6] |= 1L << bit;
+        } else {
+            matrix[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package broker;
+
+import transport.Transport;
+import transport.Transports;
+
+import java.util.Random;
+
+/**
+ * A broker with log-normal delay with mean {@link #DELAY} and a long right tail, controlled by
+ * {@link LogNormalDelayBroker#SIGMA}, the standard deviation of the delay's logarithm.
+ */
+public class LogNormalDelayBroker extends ActiveMqBroker {
+    private static final double SIGMA = 0.8;
+    private static final double MU = Math.log(DELAY) - SIGMA * SIGMA / 2.0;
+
+    private final Random random;
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     */
+    public LogNormalDelayBroker(int numberOfProcesses) {
+        this(numberOfProcesses, Transports.getDefault());
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     */
+    public LogNormalDelayBroker(int numberOfProcesses, Transport transport) {
+        this(numberOfProcesses, transport, System.currentTimeMillis());
+    }
+
+    /**
+     * Construct a new broker with reproducible delays.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param seed              of the random delay generator, from which the fault generator is seeded too.
+     */
+    public LogNormalDelayBroker(int numberOfProcesses, Transport transport, long seed) {
+        super(numberOfProcesses, transport, seed);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getDelay() {
+        return Math.round(Math.exp(MU + SIGMA * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,76 @@
+package broker;
+
+import transport.Transport;
+import transport.Transports;
+
+import java.util.Random;
+
+/**
+ * A broker with bursty delay, modulated by a two-state Markov chain shared by all links.
+ * <p/>
+ * In the good state, delays are Gaussian with mean {@link #DELAY}. Before each message, the network turns bad with
+ * probability {@link MarkovModulatedDelayBroker#GOOD_TO_BAD}. In the bad state, delays are Gaussian with a mean of
+ * {@link MarkovModulatedDelayBroker#BAD_FACTOR} times {@link #DELAY}, until the network recovers with probability
+ * {@link MarkovModulatedDelayBroker#BAD_TO_GOOD} before each message. Bursts thus last 1 / {@link MarkovModulatedDelayBroker#BAD_TO_GOOD}
+ * messages on average and affect all links at once.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class MarkovModulatedDelayBroker extends ActiveMqBroker {
+    private static final double GOOD_TO_BAD = 0.01;
+    private static final double BAD_TO_GOOD = 0.05;
+    private static final double BAD_FACTOR = 5.0;
+
+    private static final double GOOD_MEAN = (double) DELAY;
+    private static final double GOOD_STDV = GOOD_MEAN / 4.0;
+    private static final double BAD_MEAN = BAD_FACTOR * DELAY;
+    private static final double BAD_STDV = BAD_MEAN / 4.0;
+
+    private final Random random;
+    private boolean bad = false;
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     */
+    public MarkovModulatedDelayBroker(int numberOfProcesses) {
+        this(numberOfProcesses, Transports.getDefault());
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     */
+    public MarkovModulatedDelayBroker(int numberOfProcesses, Transport transport) {
+        this(numberOfProcesses, transport, System.currentTimeMillis());
+    }
+
+    /**
+     * Construct a new broker with reproducible delays.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param seed              of the random state transitions and delay generator, from which the fault generator is
+     *                          seeded too.
+     */
+    public MarkovModulatedDelayBroker(int numberOfProcesses, Transport transport, long seed) {
+        super(numberOfProcesses, transport, seed);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized long getDelay() {
+        if (random.nextDouble() < (bad ? BAD_TO_GOOD : GOOD_TO_BAD)) {
+            bad = !bad;
+        }
+
+        double delay = bad ? random.nextGaussian() * BAD_STDV + BAD_MEAN : random.nextGaussian() * GOOD_STDV + GOOD_MEAN;
+        return Math.max(0, Math.round(delay));
+    }
+}
@@ -0,0 +1,57 @@
+package broker;
+
+import transport.Transport;
+import transport.Transports;
+
+import java.util.Random;
+
+/**
+ * A broker with Pareto (power-law) delay with mean {@link #DELAY}, i.e. a heavy right tail. The minimum delay is
+ * {@link ParetoDelayBroker#SCALE}, the tail index {@link ParetoDelayBroker#SHAPE}.
+ */
+public class ParetoDelayBroker extends ActiveMqBroker {
+    private static final double SHAPE = 2.5;
+    private static final double SCALE = DELAY * (SHAPE - 1.0) / SHAPE;
+
+    private final Random random;
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     */
+    public ParetoDelayBroker(int numberOfProcesses) {
+        this(numberOfProcesses, Transports.getDefault());
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     */
+    public ParetoDelayBroker(int numberOfProcesses, Transport transport) {
+        this(numberOfProcesses, transport, System.currentTimeMillis());
+    }
+
+    /**
+     * Construct a new broker with reproducible delays.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param seed              of the random delay generator, from which the fault generator is seeded too.
+     */
+    public ParetoDelayBroker(int numberOfProcesses, Transport transport, long seed) {
+        super(numberOfProcesses, transport, seed);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getDelay() {
+        double uniform = 1.0 - random.nextDouble(); //(0, 1]
+        return Math.round(SCALE / Math.pow(uniform, 1.0 / SHAPE));
+    }
+}
@@ -0,0 +1,104 @@
+package broker;
+
+/**
+ * A network topology: processes placed in zones (racks, data centres, ...) and the latency between zones.
+ * <p/>
+ * The latency of a link is Gaussian with a mean and standard deviation given by the zones of its source and
+ * destination, which may be different for each direction. Both are expanded into per-link matrices on construction,
+ * so that looking up a link is O(1) and doesn't allocate. Process IDs beyond the number of placed processes wrap around.
+ * <p/>
+ * This class is immutable and thread-safe.
+ */
+public class Topology {
+
+    private final int numberOfProcesses;
+    private final double[] means;
+    private final double[] stdvs;
+
+    /**
+     * Construct a new topology.
+     *
+     * @param zones zone of each process, indexed by process ID - 1. Zones are numbered from 0.
+     * @param means mean latency in ms, indexed by source zone and destination zone.
+     * @param stdvs standard deviation of the latency in ms, indexed by source zone and destination zone.
+     * @throws IllegalArgumentException if there is a process in a zone without latencies.
+     */
+    public Topology(int[] zones, double[][] means, double[][] stdvs) {
+        this.numberOfProcesses = zones.length;
+        this.means = new double[numberOfProcesses * numberOfProcesses];
+        this.stdvs = new double[numberOfProcesses * numberOfProcesses];
+
+        for (int source = 0; source < numberOfProcesses; source++) {
+            for (int destination = 0; destination < numberOfProcesses; destination++) {
+                int sourceZone = zones[source];
+                int destinationZone = zones[destination];
+                if (sourceZone < 0 || sourceZone >= means.length || destinationZone < 0 || destinationZone >= means[sourceZone].length) {
+                    throw new IllegalArgumentException("No latency from zone " + sourceZone + " to zone " + destinationZone + "!");
+                }
+                this.means[source * numberOfProcesses + destination] = means[sourceZone][destinationZone];
+                this.stdvs[source * numberOfProcesses + destination] = stdvs[sourceZone][destinationZone];
+            }
+        }
+    }
+
+    /**
+     * Construct a new topology with the same latency between any two different zones, and another one within zones.
+     *
+     * @param zones          zone of each process, indexed by process ID - 1. Zones are numbered from 0.
+     * @param intraZoneMean  mean latency within a zone in ms.
+     * @param interZoneMean  mean latency between zones in ms.
+     * @param stdvRatio      standard deviation of the latency as a fraction of its mean.
+     * @return topology.
+     */
+    public static Topology zones(int[] zones, double intraZoneMean, double interZoneMean, double stdvRatio) {
+        int numberOfZones = 0;
+        for (int zone : zones) {
+            numberOfZones = Math.max(numberOfZones, zone + 1);
+        }
+
+        double[][] means = new double[numberOfZones][numberOfZones];
+        double[][] stdvs = new double[numberOfZones][numberOfZones];
+        for (int i = 0; i < numberOfZones; i++) {
+            for (int j = 0; j < numberOfZones; j++) {
+                means[i][j] = i == j ? intraZoneMean : interZoneMean;
+                stdvs[i][j] = means[i][j] * stdvRatio;
+            }
+        }
+        return new Topology(zones, means, stdvs);
+    }
+
+    /**
+     * Get the number of placed processes.
+     *
+     * @return number of processes.
+     */
+    public int getNumberOfProcesses() {
+        return numberOfProcesses;
+    }
+
+    /**
+     * Get the mean latency of a link.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return mean latency in ms.
+     */
+    public double getMean(int source, int destination) {
+        return means[link(source, destination)];
+    }
+
+    /**
+     * Get the standard deviation of the latency of a link.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @return standard deviation in ms.
+     */
+    public double getStdv(int source, int destination) {
+        return stdvs[link(source, destination)];
+    }
+
+    private int link(int source, int destination) {
+        return ((source - 1) % numberOfProcesses) * numberOfProcesses + (destination - 1) % numberOfProcesses;
+    }
+}
@@ -0,0 +1,72 @@
+package broker;
+
+import transport.Transport;
+import transport.Transports;
+
+import java.util.Random;
+
+/**
+ * A broker with Gaussian delays per link, as given by a {@link Topology}.
+ */
+public class TopologyDelayBroker extends ActiveMqBroker {
+
+    private final Topology topology;
+    private final Random random;
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param topology          of the network.
+     */
+    public TopologyDelayBroker(int numberOfProcesses, Topology topology) {
+        this(numberOfProcesses, Transports.getDefault(), topology);
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param topology          of the network.
+     */
+    public TopologyDelayBroker(int numberOfProcesses, Transport transport, Topology topology) {
+        this(numberOfProcesses, transport, topology, System.currentTimeMillis());
+    }
+
+    /**
+     * Construct a new broker with reproducible delays.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param topology          of the network.
+     * @param seed              of the random delay generator, from which the fault generator is seeded too.
+     */
+    public TopologyDelayBroker(int numberOfProcesses, Transport transport, Topology topology, long seed) {
+        super(numberOfProcesses, transport, seed);
+        this.topology = topology;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Never used, all delays are per link.
+     */
+    @Override
+    protected long getDelay() {
+        return DELAY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getDelay(int source, int destination) {
+        long result = Math.round(random.nextGaussian() * topology.getStdv(source, destination) + topology.getMean(source, destination));
+        if (result < 0) {
+            return 0;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,60 @@
+package broker;
+
+import clock.Clocks;
+import transport.Transport;
+import transport.Transports;
+
+/**
+ * A broker replaying per-link delays recorded from real traffic (see {@link DelayTrace}).
+ * <p/>
+ * Delays are time-aligned: a message sent over a link t ms after the broker has been created is delayed by the sample
+ * of that link for time t. Process IDs beyond the number of processes of the recording wrap around.
+ */
+public class TraceDrivenDelayBroker extends ActiveMqBroker {
+
+    private final DelayTrace trace;
+    private final long startTime;
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param trace             to replay.
+     */
+    public TraceDrivenDelayBroker(int numberOfProcesses, DelayTrace trace) {
+        this(numberOfProcesses, Transports.getDefault(), trace);
+    }
+
+    /**
+     * Construct a new broker.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param transport         over which the broker communicates with processes.
+     * @param trace             to replay.
+     */
+    public TraceDrivenDelayBroker(int numberOfProcesses, Transport transport, DelayTrace trace) {
+        super(numberOfProcesses, transport);
+        this.trace = trace;
+        this.startTime = Clocks.getDefault().currentTimeMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Never used, all delays are per link.
+     */
+    @Override
+    protected long getDelay() {
+        return DELAY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getDelay(int source, int destination) {
+        int recordedProcesses = trace.getNumberOfProcesses();
+        long elapsed = Clocks.getDefault().currentTimeMillis() - startTime;
+        return trace.getDelay((source - 1) % recordedProcesses + 1, (destination - 1) % recordedProcesses + 1, elapsed);
+    }
+}
@@ -0,0 +1,51 @@
+package clock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Source of time for the whole system. Everything that reads the current time, or schedules work to be done in the
+ * future, does so through a clock, so that the system can be run both in real time ({@link SystemClock}) and in
+ * virtual time ({@link simulation.Simulator}).
+ */
+public interface Clock {
+
+    /**
+     * Get the current time.
+     *
+     * @return current time in ms since 1/1/1970.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Create a new executor for scheduled tasks, which are run according to this clock.
+     *
+     * @param threads number of threads of the executor (may be ignored by virtual-time clocks).
+     * @return new executor.
+     */
+    ScheduledExecutorService newScheduledExecutor(int threads);
+
+    /**
+     * Create a new executor with a single thread, intended for long-running, blocking tasks (such as consensus)
+     * that are driven by events happening according to this clock.
+     *
+     * @return new executor.
+     */
+    ExecutorService newSingleThreadExecutor();
+
+    /**
+     * Wait on a monitor until signalled by {@link #signalAll(Object)}, just like {@link Object#wait()}. Tasks run by
+     * {@link #newSingleThreadExecutor()} must block this way, so that virtual-time clocks know when they are idle.
+     *
+     * @param monitor to wait on, held by the calling thread.
+     * @throws InterruptedException if the calling thread has been interrupted.
+     */
+    void await(Object monitor) throws InterruptedException;
+
+    /**
+     * Wake up all threads waiting on a monitor in {@link #await(Object)}, just like {@link Object#notifyAll()}.
+     *
+     * @param monitor to signal, held by the calling thread.
+     */
+    void signalAll(Object monitor);
+}
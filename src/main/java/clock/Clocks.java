@@ -0,0 +1,33 @@
+package clock;
+
+/**
+ * Holder of the default {@link Clock}, used by all components of the system. This is {@link SystemClock} unless
+ * configured otherwise.
+ * <p/>
+ * This class is thread-safe.
+ */
+public final class Clocks {
+
+    private static volatile Clock defaultClock = SystemClock.getInstance();
+
+    private Clocks() {
+    }
+
+    /**
+     * Get the default clock.
+     *
+     * @return default clock.
+     */
+    public static Clock getDefault() {
+        return defaultClock;
+    }
+
+    /**
+     * Set the default clock. Only affects components (and messages) created afterwards.
+     *
+     * @param clock new default clock.
+     */
+    public static void setDefault(Clock clock) {
+        defaultClock = clock;
+    }
+}
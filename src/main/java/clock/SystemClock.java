@@ -0,0 +1,66 @@
+package clock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A {@link Clock} representing real (wall-clock) time.
+ * <p/>
+ * This class has no state, intended to be used as singleton.
+ */
+public final class SystemClock implements Clock {
+
+    private static final SystemClock INSTANCE = new SystemClock();
+
+    public static SystemClock getInstance() {
+        return INSTANCE;
+    }
+
+    private SystemClock() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Tasks that can't be accepted will be aborted (corresponding exception will be thrown).
+     */
+    @Override
+    public ScheduledExecutorService newScheduledExecutor(int threads) {
+        return new ScheduledThreadPoolExecutor(threads, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExecutorService newSingleThreadExecutor() {
+        return Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void await(Object monitor) throws InterruptedException {
+        monitor.wait();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalAll(Object monitor) {
+        monitor.notifyAll();
+    }
+}
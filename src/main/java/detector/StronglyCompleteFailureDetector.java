@@ -1,5 +1,6 @@
 package detector;
 
+import clock.Clocks;
 import detector.timeout.TimeoutStrategy;
 import listener.MessageListener;
 import listener.SuspectListener;
@@ -7,6 +8,8 @@ import message.HeartbeatMessage;
 import message.TimestampedProcessToProcessMessage;
 import org.apache.log4j.Logger;
 import process.base.Process;
+import transport.Endpoint;
+import transport.MulticastHeartbeatChannel;
 
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
@@ -28,7 +31,8 @@ import static java.util.concurrent.TimeUnit.*;
  * <li>Listening to messages and delegating parts of message handling to subclasses.</li>
  * <li>Scheduling processes for suspicion for purposes of failure detection letting a concrete implementation of
  * {@link TimeoutStrategy} to determine the timeout.</li>
- * <li>Broadcasting periodic heartbeats.</li>
+ * <li>Broadcasting periodic heartbeats, over the process' transport or the default
+ * {@link MulticastHeartbeatChannel} if there is one.</li>
  * <li>Maintaining the list of suspects and notifying listeners of changes.</li>
  * </ul>
  * <p/>
@@ -75,9 +79,15 @@ public abstract class StronglyCompleteFailureDetector implements FailureDetector
     private final Set<WeakReference<SuspectListener>> suspectListeners = new CopyOnWriteArraySet<WeakReference<SuspectListener>>();
 
     /**
-     * Executor for scheduled tasks with a fixed thread pool. Tasks that can't be accepted will be aborted (corresponding exception will be thrown).
+     * Executor for scheduled tasks with a fixed thread pool, running according to the default {@link clock.Clock}.
+     * Tasks that can't be accepted will be aborted (corresponding exception will be thrown).
      */
-    protected final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(THREADS_PER_DETECTOR, new ThreadPoolExecutor.AbortPolicy());
+    protected final ScheduledExecutorService executor = Clocks.getDefault().newScheduledExecutor(THREADS_PER_DETECTOR);
+
+    /**
+     * Membership of the heartbeat channel, null if heartbeats travel over the process' transport.
+     */
+    private volatile Endpoint heartbeatEndpoint;
 
     /**
      * Constructor.
@@ -93,8 +103,13 @@ public abstract class StronglyCompleteFailureDetector implements FailureDetector
      */
     @Override
     public void start() {
-        process.addMessageListener(this);
         initTimeoutStrategiesAndScheduleFirstSuspicions();
+        process.addMessageListener(this);
+        MulticastHeartbeatChannel heartbeatChannel = MulticastHeartbeatChannel.getDefault();
+        if (heartbeatChannel != null) {
+            //only join once the timeout strategies are in place, heartbeats start arriving straight away
+            heartbeatEndpoint = heartbeatChannel.join(process.getProcessId(), process.getNumberOfProcesses(), this);
+        }
         scheduleHeartbeatBroadcast();
     }
 
@@ -104,6 +119,9 @@ public abstract class StronglyCompleteFailureDetector implements FailureDetector
     @Override
     public void stop() {
         executor.shutdownNow();
+        if (heartbeatEndpoint != null) {
+            heartbeatEndpoint.close();
+        }
     }
 
     /**
@@ -134,7 +152,11 @@ public abstract class StronglyCompleteFailureDetector implements FailureDetector
      */
     @Override
     public final void receive(final TimestampedProcessToProcessMessage m) {
-        timeoutStrategies.get(m.getSource()).messageReceived(m);
+        TimeoutStrategy timeoutStrategy = timeoutStrategies.get(m.getSource());
+        if (timeoutStrategy == null) {
+            return; //not started yet (heartbeats may overtake the ready message), or not a member of the ensemble
+        }
+        timeoutStrategy.messageReceived(m);
         doReceive(m);
     }
 
@@ -152,7 +174,13 @@ public abstract class StronglyCompleteFailureDetector implements FailureDetector
         Runnable sendHeartBeatTask = new Runnable() {
             @Override
             public void run() {
-                process.send(new HeartbeatMessage(process.getProcessId()));
+                HeartbeatMessage heartbeat = new HeartbeatMessage(process.getProcessId());
+                Endpoint endpoint = heartbeatEndpoint;
+                if (endpoint != null) {
+                    endpoint.send(heartbeat);
+                } else {
+                    process.send(heartbeat);
+                }
             }
         };
         executor.scheduleAtFixedRate(sendHeartBeatTask, 0, HEARTBEAT_PERIOD_MS, MILLISECONDS);
@@ -0,0 +1,17 @@
+package listener;
+
+import transport.RoutableMessage;
+
+/**
+ * Interface for brokers that wish to be notified when a {@link transport.Transport} receives a new message
+ * on their behalf.
+ */
+public interface BrokerListener {
+
+    /**
+     * Handle a new message.
+     *
+     * @param message the received message, with an opaque body.
+     */
+    void onMessage(RoutableMessage message);
+}
@@ -0,0 +1,17 @@
+package listener;
+
+import message.internal.BrokeredMessage;
+
+/**
+ * Interface for processes that wish to be notified when a {@link transport.Transport} receives a new message
+ * on their behalf.
+ */
+public interface TransportListener {
+
+    /**
+     * Handle a new message.
+     *
+     * @param message the received message.
+     */
+    void onMessage(BrokeredMessage message);
+}
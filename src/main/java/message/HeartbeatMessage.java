@@ -16,6 +16,16 @@ public class HeartbeatMessage extends TimestampedProcessToProcessMessage {
         super(source, BROADCAST_DESTINATION);
     }
 
+    /**
+     * Construct a heartbeat with the given timestamp, used by {@link MessageCodec} when decoding.
+     *
+     * @param source    ID of the source process.
+     * @param timestamp timestamp of the heartbeat in ms since 1/1/1970.
+     */
+    HeartbeatMessage(int source, long timestamp) {
+        super(source, BROADCAST_DESTINATION, timestamp);
+    }
+
     @Override
     public String toString() {
         return "HB:" + getSource();
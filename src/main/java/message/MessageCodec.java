@@ -0,0 +1,415 @@
+package message;
+
+import message.internal.BrokeredMessage;
+import message.internal.CutLinkMessage;
+import message.internal.FailMessage;
+import message.internal.HealLinkMessage;
+import message.internal.LinkFaultsMessage;
+import message.internal.LinkMessage;
+import message.internal.PartitionMessage;
+import message.internal.ReadyMessage;
+import message.internal.ResurrectMessage;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Compact binary wire format of {@link BrokeredMessage}s.
+ * <p/>
+ * Every encoded message starts with a version byte ({@link #VERSION}) and a type tag byte, followed by the fields of
+ * the message: ints (IDs, destinations, rounds) as zig-zag varints, timestamps as fixed-width 8-byte big-endian longs,
+ * booleans as a single byte, and values as a varint length (-1 for null) followed by their UTF-8 bytes. The destination
+ * of heartbeats is implied. A heartbeat thus takes 11 bytes, instead of hundreds when Java-serialized.
+ * <p/>
+ * Messages of any other class (including subclasses of the message classes above) are encoded as
+ * a Java-serialized object following the version and type tag, so nothing is ever lost on the wire.
+ * <p/>
+ * This class is thread-safe.
+ */
+public final class MessageCodec {
+    private static final Logger LOG = Logger.getLogger(MessageCodec.class);
+
+    /**
+     * Version of the wire format, incremented on incompatible changes.
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte JAVA_SERIALIZED = 0;
+    private static final byte HEARTBEAT = 1;
+    private static final byte TIMESTAMPED = 2;
+    private static final byte VALUE = 3;
+    private static final byte OUTCOME = 4;
+    private static final byte READY = 5;
+    private static final byte FAIL = 6;
+    private static final byte RESURRECT = 7;
+    private static final byte CUT_LINK = 8;
+    private static final byte HEAL_LINK = 9;
+    private static final byte LINK_FAULTS = 10;
+    private static final byte PARTITION = 11;
+
+    /**
+     * Maximum size of an encoded message excluding its value: version, type tag, 3 varints, two 8-byte fields
+     * (timestamp, or the probabilities of link faults), value length varint and a boolean.
+     */
+    private static final int MAX_FIXED_SIZE = 1 + 1 + 3 * 5 + 2 * 8 + 5 + 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encode a message.
+     *
+     * @param message to encode.
+     * @return encoded message, null if the message could not be encoded.
+     */
+    public static byte[] encode(BrokeredMessage message) {
+        Class<?> type = message.getClass();
+        if (type == PartitionMessage.class) {
+            return encodePartition((PartitionMessage) message);
+        }
+        byte[] value = null;
+        if (type == ValueMessage.class || type == OutcomeMessage.class) {
+            value = utf8(((ValueMessage) message).getValue());
+        } else if (type != HeartbeatMessage.class && type != TimestampedProcessToProcessMessage.class
+                && type != ReadyMessage.class && type != FailMessage.class && type != ResurrectMessage.class
+                && type != CutLinkMessage.class && type != HealLinkMessage.class && type != LinkFaultsMessage.class) {
+            return encodeJavaSerialized(message);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_FIXED_SIZE + (value == null ? 0 : value.length));
+        buffer.put(VERSION);
+        if (type == HeartbeatMessage.class) {
+            HeartbeatMessage heartbeat = (HeartbeatMessage) message;
+            buffer.put(HEARTBEAT);
+            putVarint(buffer, heartbeat.getSource());
+            buffer.putLong(heartbeat.getTimestamp());
+        } else if (type == TimestampedProcessToProcessMessage.class) {
+            buffer.put(TIMESTAMPED);
+            putHeader(buffer, (TimestampedProcessToProcessMessage) message);
+        } else if (type == ValueMessage.class) {
+            ValueMessage valueMessage = (ValueMessage) message;
+            buffer.put(VALUE);
+            putHeader(buffer, valueMessage);
+            putVarint(buffer, valueMessage.getRound());
+            putBytes(buffer, value);
+        } else if (type == OutcomeMessage.class) {
+            OutcomeMessage outcomeMessage = (OutcomeMessage) message;
+            buffer.put(OUTCOME);
+            putHeader(buffer, outcomeMessage);
+            putVarint(buffer, outcomeMessage.getRound());
+            putBytes(buffer, value);
+            buffer.put((byte) (outcomeMessage.isUnanimous() ? 1 : 0));
+        } else if (type == ReadyMessage.class) {
+            buffer.put(READY);
+            putVarint(buffer, ((ReadyMessage) message).getSource());
+        } else if (type == FailMessage.class) {
+            buffer.put(FAIL);
+            putVarint(buffer, ((FailMessage) message).getProcessId());
+        } else if (type == ResurrectMessage.class) {
+            buffer.put(RESURRECT);
+            putVarint(buffer, ((ResurrectMessage) message).getProcessId());
+        } else if (type == LinkFaultsMessage.class) {
+            LinkFaultsMessage faults = (LinkFaultsMessage) message;
+            buffer.put(LINK_FAULTS);
+            putVarint(buffer, faults.getSource());
+            putVarint(buffer, faults.getDestination());
+            buffer.putDouble(faults.getLossProbability());
+            buffer.putDouble(faults.getDuplicationProbability());
+            putVarint(buffer, faults.getReorderWindow());
+        } else {
+            buffer.put(type == CutLinkMessage.class ? CUT_LINK : HEAL_LINK);
+            putVarint(buffer, ((LinkMessage) message).getSource());
+            putVarint(buffer, ((LinkMessage) message).getDestination());
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Get the type of an encoded message from the buffer's position, without decoding it.
+     *
+     * @param buffer containing the encoded message, left untouched.
+     * @return class of the message, null if Java-serialized or not decodable.
+     */
+    public static Class<? extends BrokeredMessage> peekType(ByteBuffer buffer) {
+        if (buffer.remaining() < 2 || buffer.get(buffer.position()) != VERSION) {
+            return null;
+        }
+        switch (buffer.get(buffer.position() + 1)) {
+            case HEARTBEAT:
+                return HeartbeatMessage.class;
+            case TIMESTAMPED:
+                return TimestampedProcessToProcessMessage.class;
+            case VALUE:
+                return ValueMessage.class;
+            case OUTCOME:
+                return OutcomeMessage.class;
+            case READY:
+                return ReadyMessage.class;
+            case FAIL:
+                return FailMessage.class;
+            case RESURRECT:
+                return ResurrectMessage.class;
+            case CUT_LINK:
+                return CutLinkMessage.class;
+            case HEAL_LINK:
+                return HealLinkMessage.class;
+            case LINK_FAULTS:
+                return LinkFaultsMessage.class;
+            case PARTITION:
+                return PartitionMessage.class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the timestamp of an encoded message from the buffer's position, without decoding it.
+     *
+     * @param buffer containing the encoded message, left untouched.
+     * @return timestamp of the message, -1 if it has none (or is Java-serialized or not decodable).
+     */
+    public static long peekTimestamp(ByteBuffer buffer) {
+        Class<? extends BrokeredMessage> type = peekType(buffer);
+        if (type == null || !TimestampedMessage.class.isAssignableFrom(type)) {
+            return -1;
+        }
+
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(duplicate.position() + 2);
+        try {
+            getVarint(duplicate); //source
+            if (type != HeartbeatMessage.class) {
+                getVarint(duplicate); //destination
+            }
+            return duplicate.getLong();
+        } catch (BufferUnderflowException e) {
+            return -1; //truncated, logged when decoded
+        }
+    }
+
+    /**
+     * Decode a message.
+     *
+     * @param body encoded message.
+     * @return decoded message, null if the message could not be decoded.
+     */
+    public static BrokeredMessage decode(byte[] body) {
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Decode a message from the buffer's position to its limit.
+     *
+     * @param buffer containing the encoded message.
+     * @return decoded message, null if the message could not be decoded.
+     */
+    public static BrokeredMessage decode(ByteBuffer buffer) {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                LOG.error("Failed to decode message: unsupported wire format version " + version + "!");
+                return null;
+            }
+
+            byte type = buffer.get();
+            switch (type) {
+                case HEARTBEAT:
+                    return new HeartbeatMessage(getVarint(buffer), buffer.getLong());
+                case TIMESTAMPED:
+                    return new TimestampedProcessToProcessMessage(getVarint(buffer), getVarint(buffer), buffer.getLong());
+                case VALUE:
+                    return decodeValue(buffer);
+                case OUTCOME:
+                    return decodeOutcome(buffer);
+                case READY:
+                    return new ReadyMessage(getVarint(buffer));
+                case FAIL:
+                    return new FailMessage(getVarint(buffer));
+                case RESURRECT:
+                    return new ResurrectMessage(getVarint(buffer));
+                case CUT_LINK:
+                    return new CutLinkMessage(getVarint(buffer), getVarint(buffer));
+                case HEAL_LINK:
+                    return new HealLinkMessage(getVarint(buffer), getVarint(buffer));
+                case LINK_FAULTS:
+                    return new LinkFaultsMessage(getVarint(buffer), getVarint(buffer), buffer.getDouble(), buffer.getDouble(), getVarint(buffer));
+                case PARTITION:
+                    return decodePartition(buffer);
+                case JAVA_SERIALIZED:
+                    return decodeJavaSerialized(buffer);
+                default:
+                    LOG.error("Failed to decode message: unknown type " + type + "!");
+                    return null;
+            }
+        } catch (BufferUnderflowException e) {
+            LOG.error("Failed to decode message: truncated!", e);
+            return null;
+        }
+    }
+
+    private static BrokeredMessage decodeValue(ByteBuffer buffer) {
+        int source = getVarint(buffer);
+        int destination = getVarint(buffer);
+        long timestamp = buffer.getLong();
+        int round = getVarint(buffer);
+        String value = getString(buffer);
+        return new ValueMessage(source, destination, round, value, timestamp);
+    }
+
+    private static BrokeredMessage decodeOutcome(ByteBuffer buffer) {
+        int source = getVarint(buffer);
+        int destination = getVarint(buffer);
+        long timestamp = buffer.getLong();
+        int round = getVarint(buffer);
+        String value = getString(buffer);
+        boolean unanimous = buffer.get() != 0;
+        return new OutcomeMessage(source, destination, round, value, unanimous, timestamp);
+    }
+
+    /**
+     * Encode a partition: the number of groups, followed by each group's size and process IDs.
+     */
+    private static byte[] encodePartition(PartitionMessage message) {
+        int size = 1 + 1 + 5;
+        for (int[] group : message.getGroups()) {
+            size += 5 + 5 * group.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.put(PARTITION);
+        putVarint(buffer, message.getGroups().length);
+        for (int[] group : message.getGroups()) {
+            putVarint(buffer, group.length);
+            for (int processId : group) {
+                putVarint(buffer, processId);
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static BrokeredMessage decodePartition(ByteBuffer buffer) {
+        int[][] groups = new int[getLength(buffer)][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new int[getLength(buffer)];
+            for (int j = 0; j < groups[i].length; j++) {
+                groups[i][j] = getVarint(buffer);
+            }
+        }
+        return new PartitionMessage(groups);
+    }
+
+    /**
+     * Read the number of elements that follow, each at least 1 byte long.
+     */
+    private static int getLength(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException(); //malformed length, treated as truncated rather than allocated
+        }
+        return length;
+    }
+
+    /**
+     * Write source, destination and timestamp of a message.
+     */
+    private static void putHeader(ByteBuffer buffer, TimestampedProcessToProcessMessage message) {
+        putVarint(buffer, message.getSource());
+        putVarint(buffer, message.getDestination());
+        buffer.putLong(message.getTimestamp());
+    }
+
+    /**
+     * Write an int as a zig-zag varint, i.e. 1 byte for values between -64 and 63, at most 5 bytes.
+     */
+    private static void putVarint(ByteBuffer buffer, int value) {
+        int zigZag = (value << 1) ^ (value >> 31);
+        while ((zigZag & ~0x7F) != 0) {
+            buffer.put((byte) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        buffer.put((byte) zigZag);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int zigZag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            zigZag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new BufferUnderflowException(); //malformed varint, treated as truncated
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            putVarint(buffer, -1);
+            return;
+        }
+        putVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException(); //malformed length, treated as truncated rather than allocated
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(UTF_8);
+    }
+
+    private static byte[] encodeJavaSerialized(BrokeredMessage message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(VERSION);
+        bytes.write(JAVA_SERIALIZED);
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(message);
+            out.close();
+        } catch (IOException e) {
+            LOG.error("Failed to encode message!", e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static BrokeredMessage decodeJavaSerialized(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            Object message = in.readObject();
+            if (!(message instanceof BrokeredMessage)) {
+                LOG.error("Failed to decode message: only BrokeredMessage supported!");
+                return null;
+            }
+            return (BrokeredMessage) message;
+        } catch (IOException e) {
+            LOG.error("Failed to decode message!", e);
+        } catch (ClassNotFoundException e) {
+            LOG.error("Failed to decode message!", e);
+        }
+        return null;
+    }
+}
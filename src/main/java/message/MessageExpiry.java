@@ -0,0 +1,113 @@
+package message;
+
+import clock.Clocks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-to-live (TTL) of messages per type. A message whose age (according to its timestamp and the default
+ * {@link clock.Clock}) exceeds the TTL of its type has expired: it carries no useful information anymore and is dropped
+ * by the broker and by the receiving process' transport, before it is deserialized.
+ * <p/>
+ * Types are matched exactly, i.e. a TTL for {@link ValueMessage} doesn't apply to {@link OutcomeMessage}. Messages of
+ * types without a TTL never expire (the default). Expired messages are counted per type, wherever they are dropped.
+ * <p/>
+ * The default instance is used by all components of the system.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class MessageExpiry {
+
+    private static volatile MessageExpiry defaultExpiry = new MessageExpiry();
+
+    private final ConcurrentMap<Class<?>, Long> timesToLive = new ConcurrentHashMap<Class<?>, Long>();
+    private final ConcurrentMap<Class<?>, AtomicLong> expired = new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+    /**
+     * Get the default instance.
+     *
+     * @return default instance.
+     */
+    public static MessageExpiry getDefault() {
+        return defaultExpiry;
+    }
+
+    /**
+     * Set the default instance.
+     *
+     * @param expiry new default instance.
+     */
+    public static void setDefault(MessageExpiry expiry) {
+        defaultExpiry = expiry;
+    }
+
+    /**
+     * Set the TTL of a message type.
+     *
+     * @param type       of messages.
+     * @param timeToLive in ms, negative for messages that never expire.
+     */
+    public void setTimeToLive(Class<? extends TimestampedMessage> type, long timeToLive) {
+        if (timeToLive < 0) {
+            timesToLive.remove(type);
+        } else {
+            timesToLive.put(type, timeToLive);
+        }
+    }
+
+    /**
+     * Check whether a message has expired, and count it if it has.
+     *
+     * @param type      of the message, null if unknown.
+     * @param timestamp of the message.
+     * @return true iff expired.
+     */
+    public boolean isExpired(Class<?> type, long timestamp) {
+        if (type == null || timesToLive.isEmpty()) {
+            return false;
+        }
+        Long timeToLive = timesToLive.get(type);
+        if (timeToLive == null || Clocks.getDefault().currentTimeMillis() - timestamp <= timeToLive) {
+            return false;
+        }
+
+        AtomicLong count = expired.get(type);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = expired.putIfAbsent(type, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get the number of expired messages of a type.
+     *
+     * @param type of messages.
+     * @return number of expired messages.
+     */
+    public long getNumberOfExpiredMessages(Class<?> type) {
+        AtomicLong count = expired.get(type);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Get the number of expired messages per type.
+     *
+     * @return copy of the number of expired messages, keyed by type.
+     */
+    public Map<Class<?>, Long> getNumberOfExpiredMessages() {
+        Map<Class<?>, Long> result = new HashMap<Class<?>, Long>();
+        for (Map.Entry<Class<?>, AtomicLong> entry : expired.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
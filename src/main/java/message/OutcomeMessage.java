@@ -21,6 +21,21 @@ public class OutcomeMessage extends ValueMessage {
         this.unanimous = unanimous;
     }
 
+    /**
+     * Construct a message with the given timestamp, used by {@link MessageCodec} when decoding.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @param round       round number when the outcome was reached.
+     * @param value       outcome value.
+     * @param unanimous   whether the outcome is unanimous.
+     * @param timestamp   timestamp of the message in ms since 1/1/1970.
+     */
+    OutcomeMessage(int source, int destination, int round, String value, boolean unanimous, long timestamp) {
+        super(source, destination, round, value, timestamp);
+        this.unanimous = unanimous;
+    }
+
     /**
      * Is the outcome unanimous?
      *
@@ -19,6 +19,19 @@ public abstract class RoundMessage extends TimestampedProcessToProcessMessage {
         this.round = round;
     }
 
+    /**
+     * Construct a message with the given timestamp, used by {@link MessageCodec} when decoding.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @param round       round number when the value/outcome was reached.
+     * @param timestamp   timestamp of the message in ms since 1/1/1970.
+     */
+    RoundMessage(int source, int destination, int round, long timestamp) {
+        super(source, destination, timestamp);
+        this.round = round;
+    }
+
     /**
      * Get the round number.
      *
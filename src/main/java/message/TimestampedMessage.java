@@ -13,7 +13,8 @@ public interface TimestampedMessage {
     long getTimestamp();
 
     /**
-     * Get the delay of this message, i.e. the time that has elapsed between when the message was created and now.
+     * Get the delay of this message, i.e. the time that has elapsed between when the message was created and now,
+     * according to the default {@link clock.Clock}.
      *
      * @return delay in ms.
      */
@@ -1,5 +1,7 @@
 package message;
 
+import clock.Clocks;
+
 /**
  * A {@link TimestampedMessage} {@link ProcessToProcessMessage}.
  */
@@ -10,15 +12,26 @@ public class TimestampedProcessToProcessMessage implements ProcessToProcessMessa
     private final long timestamp;
 
     /**
-     * Construct a new message with timestamp = now.
+     * Construct a new message with timestamp = now, according to the default {@link clock.Clock}.
      *
      * @param source      ID of the source process.
      * @param destination ID of the destination process.
      */
     public TimestampedProcessToProcessMessage(int source, int destination) {
+        this(source, destination, Clocks.getDefault().currentTimeMillis());
+    }
+
+    /**
+     * Construct a message with the given timestamp, used by {@link MessageCodec} when decoding.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @param timestamp   timestamp of the message in ms since 1/1/1970.
+     */
+    TimestampedProcessToProcessMessage(int source, int destination, long timestamp) {
         this.source = source;
         this.destination = destination;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
 
     /**
@@ -50,6 +63,6 @@ public class TimestampedProcessToProcessMessage implements ProcessToProcessMessa
      */
     @Override
     public long getDelay() {
-        return System.currentTimeMillis() - getTimestamp();
+        return Clocks.getDefault().currentTimeMillis() - getTimestamp();
     }
 }
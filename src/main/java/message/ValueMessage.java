@@ -20,6 +20,20 @@ public class ValueMessage extends RoundMessage {
         this.value = value;
     }
 
+    /**
+     * Construct a message with the given timestamp, used by {@link MessageCodec} when decoding.
+     *
+     * @param source      ID of the source process.
+     * @param destination ID of the destination process.
+     * @param round       round number when the value was decided.
+     * @param value       decided value.
+     * @param timestamp   timestamp of the message in ms since 1/1/1970.
+     */
+    ValueMessage(int source, int destination, int round, String value, long timestamp) {
+        super(source, destination, round, timestamp);
+        this.value = value;
+    }
+
     /**
      * Ge the decided value.
      *
@@ -0,0 +1,17 @@
+package message.internal;
+
+/**
+ * A control message used to tell a broker that it should simulate a link failure, i.e. drop all messages over the link.
+ */
+public class CutLinkMessage extends LinkMessage {
+
+    /**
+     * Construct a new message.
+     *
+     * @param source      ID of the source process of the failed link, or {@link #ALL}.
+     * @param destination ID of the destination process of the failed link, or {@link #ALL}.
+     */
+    public CutLinkMessage(int source, int destination) {
+        super(source, destination);
+    }
+}
@@ -0,0 +1,17 @@
+package message.internal;
+
+/**
+ * A control message used to tell a broker that it should simulate a link recovery.
+ */
+public class HealLinkMessage extends LinkMessage {
+
+    /**
+     * Construct a new message.
+     *
+     * @param source      ID of the source process of the recovered link, or {@link #ALL}.
+     * @param destination ID of the destination process of the recovered link, or {@link #ALL}.
+     */
+    public HealLinkMessage(int source, int destination) {
+        super(source, destination);
+    }
+}
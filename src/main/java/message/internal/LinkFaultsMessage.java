@@ -0,0 +1,56 @@
+package message.internal;
+
+/**
+ * A control message used to tell a broker that it should simulate a lossy link: messages over the link are lost,
+ * duplicated or reordered with the given probabilities.
+ */
+public class LinkFaultsMessage extends LinkMessage {
+
+    private final double lossProbability;
+    private final double duplicationProbability;
+    private final int reorderWindow;
+
+    /**
+     * Construct a new message.
+     *
+     * @param source                 ID of the source process of the link, or {@link #ALL}.
+     * @param destination            ID of the destination process of the link, or {@link #ALL}.
+     * @param lossProbability        probability of a message being dropped.
+     * @param duplicationProbability probability of a message being delivered twice.
+     * @param reorderWindow          maximum extra delay in ms of a message, so that messages sent within the window
+     *                               may overtake each other. 0 for no reordering.
+     */
+    public LinkFaultsMessage(int source, int destination, double lossProbability, double duplicationProbability, int reorderWindow) {
+        super(source, destination);
+        this.lossProbability = lossProbability;
+        this.duplicationProbability = duplicationProbability;
+        this.reorderWindow = reorderWindow;
+    }
+
+    /**
+     * Get the probability of a message being dropped.
+     *
+     * @return probability.
+     */
+    public double getLossProbability() {
+        return lossProbability;
+    }
+
+    /**
+     * Get the probability of a message being delivered twice.
+     *
+     * @return probability.
+     */
+    public double getDuplicationProbability() {
+        return duplicationProbability;
+    }
+
+    /**
+     * Get the maximum extra delay of a message.
+     *
+     * @return reorder window in ms.
+     */
+    public int getReorderWindow() {
+        return reorderWindow;
+    }
+}
@@ -0,0 +1,46 @@
+package message.internal;
+
+/**
+ * Base class for control messages used to tell a broker that it should simulate a link failure or recovery.
+ * <p/>
+ * Links are directed: a message about the link from A to B doesn't affect the link from B to A.
+ */
+public abstract class LinkMessage implements BrokeredMessage {
+
+    /**
+     * Source or destination meaning "all processes".
+     */
+    public static final int ALL = -1;
+
+    private final int source;
+    private final int destination;
+
+    /**
+     * Construct a new message.
+     *
+     * @param source      ID of the source process of the link, or {@link #ALL}.
+     * @param destination ID of the destination process of the link, or {@link #ALL}.
+     */
+    protected LinkMessage(int source, int destination) {
+        this.source = source;
+        this.destination = destination;
+    }
+
+    /**
+     * Get ID of the source process of the link.
+     *
+     * @return process ID, or {@link #ALL}.
+     */
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * Get ID of the destination process of the link.
+     *
+     * @return process ID, or {@link #ALL}.
+     */
+    public int getDestination() {
+        return destination;
+    }
+}
@@ -0,0 +1,28 @@
+package message.internal;
+
+/**
+ * A control message used to tell a broker that it should simulate a network partition, i.e. cut all links (in both
+ * directions) between processes of different groups, all at once.
+ */
+public class PartitionMessage implements BrokeredMessage {
+
+    private final int[][] groups;
+
+    /**
+     * Construct a new message.
+     *
+     * @param groups IDs of the processes of each group.
+     */
+    public PartitionMessage(int[][] groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Get the groups of the partition.
+     *
+     * @return IDs of the processes of each group.
+     */
+    public int[][] getGroups() {
+        return groups;
+    }
+}
@@ -1,5 +1,6 @@
 package process.base;
 
+import clock.Clocks;
 import com.sun.xml.internal.ws.util.CompletedFuture;
 import detector.FailureDetector;
 import org.apache.log4j.Logger;
@@ -13,7 +14,7 @@ import java.util.concurrent.*;
 public abstract class ConsensusCapableProcess<FD extends FailureDetector> extends FailureDetectorProcess<FD> {
     private static final Logger LOG = Logger.getLogger(ConsensusCapableProcess.class);
 
-    protected final ExecutorService executor = Executors.newSingleThreadExecutor();
+    protected final ExecutorService executor = Clocks.getDefault().newSingleThreadExecutor();
     protected final String initialProposal;
     protected Future<String> decision;
 
@@ -2,6 +2,8 @@ package process.base;
 
 import detector.FailureDetector;
 import listener.MessageListener;
+import message.HeartbeatMessage;
+import message.TimestampedProcessToProcessMessage;
 
 /**
  * An {@link Process} with a {@link FailureDetector} module.
@@ -32,6 +34,21 @@ public abstract class FailureDetectorProcess<FD extends FailureDetector> extends
         detector.start();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Heartbeats are only of interest to the failure detector, they are handed to it alone, so that they are never
+     * held up by other listeners busy with other messages.
+     */
+    @Override
+    public void deliver(TimestampedProcessToProcessMessage message) {
+        if (message instanceof HeartbeatMessage && detector instanceof MessageListener) {
+            ((MessageListener) detector).receive(message);
+            return;
+        }
+        super.deliver(message);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1,5 +1,7 @@
 package process.consensus;
 
+import clock.Clock;
+import clock.Clocks;
 import detector.EventuallyStrongFailureDetector;
 import listener.MessageListener;
 import listener.SuspectListener;
@@ -34,6 +36,7 @@ public class EventuallyStrongConsensus implements Callable<String>, SuspectListe
 
     private final Process process;
     private final EventuallyStrongFailureDetector detector;
+    private final Clock clock = Clocks.getDefault();
 
     private String currentProposal;
     private int currentRound = 0;
@@ -129,7 +132,7 @@ public class EventuallyStrongConsensus implements Callable<String>, SuspectListe
             accountForAlreadyKnownSuspects();
 
             while (!hasEnoughProposals()) {
-                wait(); //block current thread until enough proposals have been collected
+                clock.await(this); //block current thread until enough proposals have been collected
             }
 
             //deviation from the theoretical algorithm: broadcasting instead of unicasting to all those
@@ -147,7 +150,7 @@ public class EventuallyStrongConsensus implements Callable<String>, SuspectListe
     private void everyoneCollectOutcomeFromCoordinator() throws InterruptedException {
         accountForAlreadyKnownSuspects();
         while (collectedOutcome.get(currentRound).isUnknown()) {
-            wait();
+            clock.await(this);
         }
     }
 
@@ -188,14 +191,14 @@ public class EventuallyStrongConsensus implements Callable<String>, SuspectListe
                     collectedProposals.get(currentRound)[suspect - 1] = SuspectValue.getInstance();
                 }
             }
-            notifyAll();
+            clock.signalAll(this);
         }
 
         if (suspects.contains(getCurrentCoordinator())) {
             if (collectedOutcome.get(currentRound).equals(UnknownValue.getInstance())) {
                 collectedOutcome.put(currentRound, SuspectValue.getInstance());
             }
-            notifyAll();
+            clock.signalAll(this);
         }
 
     }
@@ -212,12 +215,12 @@ public class EventuallyStrongConsensus implements Callable<String>, SuspectListe
             Outcome outcome = Outcome.fromMessage((OutcomeMessage) message);
             initializeCollectedOutcome(outcome.getRound()); //in case it has not yet been initialized (the sender is ahead of the game)
             collectedOutcome.put(outcome.getRound(), outcome);
-            notifyAll();
+            clock.signalAll(this);
         } else if (message instanceof ValueMessage) {
             ValidValue validValue = ValidValue.fromMessage((ValueMessage) message);
             initializeCollectedProposals(validValue.getRound()); //in case it has not yet been initialized (the sender is ahead of the game)
             collectedProposals.get(validValue.getRound())[message.getSource() - 1] = validValue;
-            notifyAll();
+            clock.signalAll(this);
         }
     }
 
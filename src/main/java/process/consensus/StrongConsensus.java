@@ -1,5 +1,7 @@
 package process.consensus;
 
+import clock.Clock;
+import clock.Clocks;
 import detector.StrongFailureDetector;
 import listener.MessageListener;
 import listener.SuspectListener;
@@ -34,6 +36,7 @@ public class StrongConsensus implements Callable<String>, SuspectListener, Messa
 
     private final Process process;
     private final StrongFailureDetector detector;
+    private final Clock clock = Clocks.getDefault();
 
     private String currentProposal; //x
     private int currentRound;       //r
@@ -92,7 +95,7 @@ public class StrongConsensus implements Callable<String>, SuspectListener, Messa
             suspectsUpdated(detector.getSuspects()); //account for any processes already suspected
 
             while (collectedProposal.get(currentRound).isUnknown()) {
-                wait(); //block current thread until a value has been collected
+                clock.await(this); //block current thread until a value has been collected
             }
 
             if (collectedProposal.get(currentRound).isValid()) { //the other option than valid is that the process became a suspect
@@ -139,7 +142,7 @@ public class StrongConsensus implements Callable<String>, SuspectListener, Messa
         for (Integer suspect : suspects) {
             collectedProposal.put(suspect, SuspectValue.getInstance());
         }
-        notifyAll();
+        clock.signalAll(this);
     }
 
     /**
@@ -152,7 +155,7 @@ public class StrongConsensus implements Callable<String>, SuspectListener, Messa
         if (message instanceof ValueMessage) {
             if (collectedProposal.get(message.getSource()).isUnknown()) {
                 collectedProposal.put(message.getSource(), ValidValue.fromMessage((ValueMessage) message));
-                notifyAll();
+                clock.signalAll(this);
             }
         }
     }
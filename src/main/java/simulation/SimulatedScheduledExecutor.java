@@ -0,0 +1,131 @@
+package simulation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} whose tasks are executed by a {@link Simulator} in virtual time.
+ * <p/>
+ * This class is thread-safe.
+ */
+class SimulatedScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final Simulator simulator;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Construct a new executor.
+     *
+     * @param simulator that will execute the tasks.
+     */
+    SimulatedScheduledExecutor(Simulator simulator) {
+        this.simulator = simulator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(new SimulatedTask<Object>(simulator, this, command, timeAfter(delay, unit), 0));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(new SimulatedTask<V>(simulator, this, callable, timeAfter(delay, unit)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return enqueue(new SimulatedTask<Object>(simulator, this, command, timeAfter(initialDelay, unit), Math.max(1, unit.toMillis(period))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be positive");
+        }
+        return enqueue(new SimulatedTask<Object>(simulator, this, command, timeAfter(initialDelay, unit), -Math.max(1, unit.toMillis(delay))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Pending tasks are discarded when their time comes, so the returned list is always empty.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        return Collections.emptyList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTerminated() {
+        return shutdown;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return shutdown;
+    }
+
+    private long timeAfter(long delay, TimeUnit unit) {
+        return simulator.currentTimeMillis() + Math.max(0, unit.toMillis(delay));
+    }
+
+    private <V> SimulatedTask<V> enqueue(SimulatedTask<V> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        simulator.schedule(task);
+        return task;
+    }
+}
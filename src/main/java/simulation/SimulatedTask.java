@@ -0,0 +1,109 @@
+package simulation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A task (event) scheduled for execution by a {@link Simulator} at a given virtual time.
+ */
+class SimulatedTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+
+    private final Simulator simulator;
+    private final SimulatedScheduledExecutor owner;
+    private final long period;
+    private long time;
+    private long sequenceNumber;
+
+    /**
+     * Construct a new one-shot task.
+     *
+     * @param simulator that will execute the task.
+     * @param owner     executor the task has been submitted to, null if none.
+     * @param callable  to execute.
+     * @param time      virtual time of execution in ms.
+     */
+    SimulatedTask(Simulator simulator, SimulatedScheduledExecutor owner, Callable<V> callable, long time) {
+        super(callable);
+        this.simulator = simulator;
+        this.owner = owner;
+        this.period = 0;
+        this.time = time;
+        this.sequenceNumber = simulator.nextSequenceNumber();
+    }
+
+    /**
+     * Construct a new task.
+     *
+     * @param simulator that will execute the task.
+     * @param owner     executor the task has been submitted to, null if none.
+     * @param runnable  to execute.
+     * @param time      virtual time of (first) execution in ms.
+     * @param period    positive for fixed-rate, negative for fixed-delay periodic tasks, 0 for one-shot tasks.
+     */
+    SimulatedTask(Simulator simulator, SimulatedScheduledExecutor owner, Runnable runnable, long time, long period) {
+        super(runnable, null);
+        this.simulator = simulator;
+        this.owner = owner;
+        this.period = period;
+        this.time = time;
+        this.sequenceNumber = simulator.nextSequenceNumber();
+    }
+
+    /**
+     * Get the virtual time of (next) execution.
+     *
+     * @return time in ms.
+     */
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * Execute the task, unless it has been cancelled or its executor shut down.
+     * Periodic tasks are re-scheduled.
+     */
+    void execute() {
+        if (owner != null && owner.isShutdown()) {
+            cancel(false);
+            return;
+        }
+
+        if (period == 0) {
+            run();
+        } else if (runAndReset()) {
+            time = period > 0 ? time + period : simulator.currentTimeMillis() - period;
+            sequenceNumber = simulator.nextSequenceNumber();
+            simulator.schedule(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(time - simulator.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this) {
+            return 0;
+        }
+        if (other instanceof SimulatedTask) {
+            SimulatedTask<?> that = (SimulatedTask<?>) other;
+            if (time != that.time) {
+                return time < that.time ? -1 : 1;
+            }
+            return sequenceNumber < that.sequenceNumber ? -1 : 1;
+        }
+        long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+}
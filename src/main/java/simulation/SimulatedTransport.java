@@ -0,0 +1,210 @@
+package simulation;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.internal.BrokeredMessage;
+import message.internal.ProcessMessage;
+import transport.BrokerEndpoint;
+import transport.Endpoint;
+import transport.RoutableMessage;
+import transport.Transport;
+import transport.UnserializedMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link Transport} delivering messages as events of a {@link Simulator}.
+ * <p/>
+ * Like {@link transport.InMemoryTransport}, messages are never serialized or copied. Every message sent becomes
+ * an event scheduled for the current virtual time (plus the destination's delay, for messages broadcast over
+ * the broadcast channel), so that all deliveries happen on the simulator's thread, one at a time and in the order
+ * in which messages have been sent.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class SimulatedTransport implements Transport {
+
+    private final Simulator simulator;
+    private final SimulatedMailbox brokerMailbox = new SimulatedMailbox();
+
+    /**
+     * Mailboxes of processes, keyed by process ID.
+     */
+    private final ConcurrentMap<Integer, SimulatedMailbox> processMailboxes = new ConcurrentHashMap<Integer, SimulatedMailbox>();
+
+    /**
+     * Construct a new transport.
+     *
+     * @param simulator that will deliver the messages.
+     */
+    SimulatedTransport(Simulator simulator) {
+        this.simulator = simulator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BrokerEndpoint bindBroker(int numberOfProcesses, final BrokerListener listener) {
+        brokerMailbox.bind(new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                listener.onMessage(new UnserializedMessage(message));
+            }
+        });
+        return new SimulatedBrokerEndpoint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectProcess(int processId, TransportListener listener) {
+        SimulatedMailbox mailbox = getProcessMailbox(processId);
+        mailbox.bind(listener);
+        return new SimulatedEndpoint(mailbox);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectClient() {
+        return new SimulatedEndpoint(null);
+    }
+
+    private SimulatedMailbox getProcessMailbox(int processId) {
+        SimulatedMailbox mailbox = processMailboxes.get(processId);
+        if (mailbox == null) {
+            SimulatedMailbox newMailbox = new SimulatedMailbox();
+            mailbox = processMailboxes.putIfAbsent(processId, newMailbox);
+            if (mailbox == null) {
+                mailbox = newMailbox;
+            }
+        }
+        return mailbox;
+    }
+
+    /**
+     * The broker's endpoint, delivering to processes' mailboxes.
+     */
+    private class SimulatedBrokerEndpoint implements BrokerEndpoint {
+
+        @Override
+        public RoutableMessage prepare(ProcessMessage message) {
+            return new UnserializedMessage(message);
+        }
+
+        @Override
+        public void send(RoutableMessage message, int destination) {
+            getProcessMailbox(destination).offer(((UnserializedMessage) message).getMessage());
+        }
+
+        @Override
+        public void broadcast(RoutableMessage message, long[] delays) {
+            BrokeredMessage brokeredMessage = ((UnserializedMessage) message).getMessage();
+            for (int i = 0; i < delays.length; i++) {
+                if (delays[i] >= 0) {
+                    getProcessMailbox(i + 1).offer(brokeredMessage, delays[i]);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            brokerMailbox.unbind();
+            brokerMailbox.clear();
+            for (SimulatedMailbox mailbox : processMailboxes.values()) {
+                mailbox.clear();
+            }
+        }
+    }
+
+    /**
+     * A process' (or client's) endpoint, delivering to the broker's mailbox.
+     */
+    private class SimulatedEndpoint implements Endpoint {
+
+        /**
+         * Mailbox of the process, null for clients that don't receive messages.
+         */
+        private final SimulatedMailbox mailbox;
+
+        private SimulatedEndpoint(SimulatedMailbox mailbox) {
+            this.mailbox = mailbox;
+        }
+
+        @Override
+        public void send(BrokeredMessage message) {
+            brokerMailbox.offer(message);
+        }
+
+        @Override
+        public void close() {
+            if (mailbox != null) {
+                mailbox.unbind();
+            }
+        }
+    }
+
+    /**
+     * Messages for a single endpoint. Messages delivered before a listener is bound are kept in a backlog and
+     * re-scheduled for delivery once it is. Clearing the mailbox discards both the backlog and the messages
+     * that have been sent but not yet delivered.
+     */
+    private class SimulatedMailbox {
+
+        private final List<BrokeredMessage> backlog = new ArrayList<BrokeredMessage>();
+        private TransportListener listener;
+        private long generation = 0;
+
+        private void offer(BrokeredMessage message) {
+            offer(message, 0);
+        }
+
+        private synchronized void offer(final BrokeredMessage message, long delay) {
+            final long offeredGeneration = generation;
+            simulator.schedule(new SimulatedTask<Object>(simulator, null, new Runnable() {
+                @Override
+                public void run() {
+                    deliver(message, offeredGeneration);
+                }
+            }, simulator.currentTimeMillis() + delay, 0));
+        }
+
+        private void deliver(BrokeredMessage message, long offeredGeneration) {
+            TransportListener currentListener;
+            synchronized (this) {
+                if (offeredGeneration != generation) {
+                    return;
+                }
+                if (listener == null) {
+                    backlog.add(message);
+                    return;
+                }
+                currentListener = listener;
+            }
+            currentListener.onMessage(message);
+        }
+
+        private synchronized void bind(TransportListener listener) {
+            this.listener = listener;
+            for (BrokeredMessage message : backlog) {
+                offer(message);
+            }
+            backlog.clear();
+        }
+
+        private synchronized void unbind() {
+            listener = null;
+        }
+
+        private synchronized void clear() {
+            backlog.clear();
+            generation++;
+        }
+    }
+}
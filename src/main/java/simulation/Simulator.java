@@ -0,0 +1,362 @@
+package simulation;
+
+import clock.Clock;
+import clock.Clocks;
+import org.apache.log4j.Logger;
+import transport.Transport;
+import transport.Transports;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A discrete-event simulator, i.e. a {@link Clock} representing virtual time.
+ * <p/>
+ * All scheduled tasks (heartbeats, suspicions, broker delays, message deliveries over the {@link SimulatedTransport})
+ * become events in a single queue, ordered by their virtual time and then by the order in which they were scheduled.
+ * The simulator executes the events one by one on the thread that runs it and jumps straight from one event to
+ * the next, so that hours of ensemble behaviour take seconds.
+ * <p/>
+ * Blocking tasks, such as consensus, run on threads created by {@link #newSingleThreadExecutor()} and block in
+ * {@link #await(Object)}. The simulator counts these tasks as busy from the moment they are submitted, or signalled by
+ * {@link #signalAll(Object)}, until they finish or wait again. Before executing the next event, it waits for the count
+ * to drop to zero, so that the messages they send are scheduled before virtual time advances. Since an event only ever
+ * delivers a message to (or suspects a process for) a single process, at most one of these tasks is woken up by each
+ * event and the simulation is reproducible, provided that all sources of randomness (i.e. delay brokers) are seeded.
+ * A blocking task that blocks in any other way stalls the simulation.
+ * <p/>
+ * Typical usage: create a simulator, {@link #install()} it, create the broker, processes and failure injectors as
+ * usual, and then {@link #runFor(long)} instead of sleeping. {@link #uninstall()} when done.
+ * <p/>
+ * This class is thread-safe, but only one thread should be running the simulation at a time.
+ */
+public class Simulator implements Clock {
+    private static final Logger LOG = Logger.getLogger(Simulator.class);
+
+    /**
+     * Virtual time at which simulations start by default, in ms since 1/1/1970.
+     */
+    public static final long DEFAULT_START_TIME = 0;
+
+    private final PriorityQueue<SimulatedTask<?>> events = new PriorityQueue<SimulatedTask<?>>();
+    private final Set<Thread> blockingTaskThreads = new CopyOnWriteArraySet<Thread>();
+    private final SimulatedTransport transport = new SimulatedTransport(this);
+
+    /**
+     * Number of blocking tasks that have been submitted and are neither finished nor waiting, guarded by this.
+     */
+    private int busyBlockingTasks = 0;
+
+    /**
+     * Monitors on which blocking tasks are waiting, keyed by the threads running them, guarded by this.
+     */
+    private final Map<Thread, Object> waitingThreads = new HashMap<Thread, Object>();
+
+    private volatile long now;
+    private long nextSequenceNumber = 0;
+    private long executedEvents = 0;
+
+    private Clock previousClock;
+    private Transport previousTransport;
+
+    /**
+     * Construct a new simulator starting at {@link #DEFAULT_START_TIME}.
+     */
+    public Simulator() {
+        this(DEFAULT_START_TIME);
+    }
+
+    /**
+     * Construct a new simulator.
+     *
+     * @param startTime virtual time at which the simulation starts, in ms since 1/1/1970.
+     */
+    public Simulator(long startTime) {
+        this.now = startTime;
+    }
+
+    /**
+     * Make this simulator the default {@link Clock} and its {@link SimulatedTransport} the default {@link Transport}.
+     */
+    public synchronized void install() {
+        previousClock = Clocks.getDefault();
+        previousTransport = Transports.getDefault();
+        Clocks.setDefault(this);
+        Transports.setDefault(transport);
+    }
+
+    /**
+     * Restore the default {@link Clock} and {@link Transport} that were in place before {@link #install()}.
+     */
+    public synchronized void uninstall() {
+        Clocks.setDefault(previousClock);
+        Transports.setDefault(previousTransport);
+    }
+
+    /**
+     * Get the transport that delivers messages as events of this simulator.
+     *
+     * @return simulated transport.
+     */
+    public SimulatedTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The number of threads is ignored, all tasks are run by the simulator.
+     */
+    @Override
+    public ScheduledExecutorService newScheduledExecutor(int threads) {
+        return new SimulatedScheduledExecutor(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Tasks submitted to the executor are counted as busy by the simulator, which waits for them to finish or wait in
+     * {@link #await(Object)} before executing the next event.
+     */
+    @Override
+    public ExecutorService newSingleThreadExecutor() {
+        return new BlockingTaskExecutor();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void await(Object monitor) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        if (!blockingTaskThreads.contains(current)) {
+            monitor.wait();
+            return;
+        }
+
+        synchronized (this) {
+            waitingThreads.put(current, monitor);
+            blockingTaskFinished();
+        }
+        try {
+            monitor.wait();
+        } finally {
+            synchronized (this) {
+                if (waitingThreads.remove(current) != null) {
+                    busyBlockingTasks++; //woken up other than by signalAll, e.g. interrupted
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The waiting tasks are counted as busy before this method returns.
+     */
+    @Override
+    public void signalAll(Object monitor) {
+        synchronized (this) {
+            Iterator<Map.Entry<Thread, Object>> iterator = waitingThreads.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue() == monitor) {
+                    iterator.remove();
+                    busyBlockingTasks++;
+                }
+            }
+        }
+        monitor.notifyAll();
+    }
+
+    /**
+     * Run the simulation for the given amount of virtual time.
+     *
+     * @param millis virtual time in ms.
+     */
+    public void runFor(long millis) {
+        runUntil(now + millis);
+    }
+
+    /**
+     * Run the simulation until the given virtual time, executing all events scheduled up to and including that time.
+     *
+     * @param time virtual time in ms since 1/1/1970.
+     */
+    public void runUntil(long time) {
+        while (step(time)) {
+            //keep going
+        }
+        awaitBlockingTasks();
+        now = Math.max(now, time);
+    }
+
+    /**
+     * Run the simulation until the given future is done, or the given amount of virtual time has elapsed.
+     *
+     * @param future    to wait for.
+     * @param maxMillis maximum virtual time in ms.
+     * @return true iff the future is done.
+     */
+    public boolean runUntilDone(Future<?> future, long maxMillis) {
+        long deadline = now + maxMillis;
+        while (!future.isDone() && step(deadline)) {
+            //keep going
+        }
+        return future.isDone();
+    }
+
+    /**
+     * Get the number of events executed so far.
+     *
+     * @return number of executed events.
+     */
+    public synchronized long getExecutedEvents() {
+        return executedEvents;
+    }
+
+    /**
+     * Execute the next event, if it is scheduled no later than the given time.
+     *
+     * @param time virtual time in ms since 1/1/1970.
+     * @return true iff an event has been executed.
+     */
+    private boolean step(long time) {
+        awaitBlockingTasks();
+
+        SimulatedTask<?> event;
+        synchronized (this) {
+            event = events.peek();
+            if (event == null || event.getTime() > time) {
+                return false;
+            }
+            events.poll();
+            now = event.getTime();
+            executedEvents++;
+        }
+
+        try {
+            event.execute();
+        } catch (RuntimeException e) {
+            LOG.error("Simulated event failed!", e);
+        }
+        Thread.interrupted(); //cancelling a running task must not affect the simulator
+
+        return true;
+    }
+
+    /**
+     * Schedule a new event.
+     *
+     * @param task to execute.
+     */
+    synchronized void schedule(SimulatedTask<?> task) {
+        events.add(task);
+    }
+
+    /**
+     * Get the next sequence number for an event, so that events scheduled for the same time are executed in the order
+     * in which they have been scheduled.
+     *
+     * @return sequence number.
+     */
+    synchronized long nextSequenceNumber() {
+        return nextSequenceNumber++;
+    }
+
+    private synchronized void blockingTaskSubmitted() {
+        busyBlockingTasks++;
+    }
+
+    private synchronized void blockingTaskFinished() {
+        busyBlockingTasks--;
+        notifyAll();
+    }
+
+    /**
+     * Wait until no blocking task is busy.
+     */
+    private synchronized void awaitBlockingTasks() {
+        while (busyBlockingTasks > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * An executor with a single thread, keeping the count of busy blocking tasks.
+     */
+    private class BlockingTaskExecutor extends ThreadPoolExecutor implements ThreadFactory {
+
+        private volatile Thread thread;
+
+        private BlockingTaskExecutor() {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            setThreadFactory(this);
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            thread = new Thread(r);
+            thread.setDaemon(true);
+            blockingTaskThreads.add(thread);
+            return thread;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            blockingTaskSubmitted();
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                blockingTaskFinished();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            blockingTaskFinished();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> neverRun = super.shutdownNow();
+            for (int i = 0; i < neverRun.size(); i++) {
+                blockingTaskFinished();
+            }
+            return neverRun;
+        }
+
+        @Override
+        protected void terminated() {
+            if (thread != null) {
+                blockingTaskThreads.remove(thread);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package transport;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.log4j.Logger;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+
+/**
+ * A fixed number of JMS connections, shared by all endpoints of an {@link ActiveMqTransport} in this JVM. Every
+ * connection is a TCP socket and a transport thread on both the client and the broker side, so giving each of
+ * hundreds of co-located processes its own connection costs hundreds of sockets and threads. Sessions, on the other
+ * hand, are cheap, so endpoints still create their own sessions (one per consumer), just on shared connections.
+ * <p/>
+ * Connections are handed out round-robin, opened when first needed and closed when their last user has released them.
+ * A pool at least as large as the number of endpoints behaves like one connection per endpoint.
+ * <p/>
+ * This class is thread-safe.
+ */
+class ActiveMqConnectionPool {
+    private static final Logger LOG = Logger.getLogger(ActiveMqConnectionPool.class);
+
+    private final String brokerUrl;
+    private final Connection[] connections;
+    private final int[] users;
+    private int next;
+
+    /**
+     * Construct a new pool.
+     *
+     * @param brokerUrl URL of the broker.
+     * @param size      maximum number of connections.
+     */
+    ActiveMqConnectionPool(String brokerUrl, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Connection pool size must be positive!");
+        }
+        this.brokerUrl = brokerUrl;
+        this.connections = new Connection[size];
+        this.users = new int[size];
+    }
+
+    /**
+     * Acquire a started connection, to be released by {@link #release(Connection)}.
+     *
+     * @return connection.
+     * @throws JMSException if a new connection could not be opened.
+     */
+    synchronized Connection acquire() throws JMSException {
+        int index = next;
+        if (connections[index] == null) {
+            Connection connection = new ActiveMQConnectionFactory(brokerUrl).createConnection();
+            connection.start();
+            connections[index] = connection;
+        }
+        next = (next + 1) % connections.length;
+        users[index]++;
+        return connections[index];
+    }
+
+    /**
+     * Release a connection, closing it if this was its last user.
+     *
+     * @param connection acquired from this pool, null is ignored.
+     */
+    void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < connections.length; i++) {
+                if (connections[i] == connection) {
+                    if (--users[i] > 0) {
+                        return;
+                    }
+                    connections[i] = null;
+                    break;
+                }
+            }
+        }
+        close(connection); //last user, or already discarded by clear()
+    }
+
+    /**
+     * Forget all connections, e.g. because the broker has stopped. Connections are closed when released by their
+     * users, new users get new connections.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = null;
+            users[i] = 0;
+        }
+        next = 0;
+    }
+
+    private void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            LOG.error("Failed to close connection!", e);
+        }
+    }
+}
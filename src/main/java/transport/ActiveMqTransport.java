@@ -0,0 +1,920 @@
+package transport;
+
+import listener.BrokerListener;
+import clock.Clocks;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.MessageCodec;
+import message.MessageExpiry;
+import message.internal.BrokeredMessage;
+import message.internal.ProcessMessage;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.log4j.Logger;
+
+import javax.jms.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Transport} using an embedded ActiveMQ broker listening on {@link #BROKER_URL}.
+ * <p/>
+ * Messages for the broker are sent to the {@link #FROM_PROCESS_QUEUE}, messages for process with ID i to the
+ * {@link #TO_PROCESS_QUEUE} + i. All messages are carried as {@link BytesMessage}s, encoded by {@link MessageCodec}.
+ * Messages for the broker also carry their routing headers as the {@link #KIND_PROPERTY}, {@link #SOURCE_PROPERTY}
+ * and {@link #DESTINATION_PROPERTY} message properties, so that the broker can route them without decoding their
+ * bodies. The broker forwards the very same body to all destinations.
+ * <p/>
+ * Messages broadcast over the broadcast channel are published once to the {@link #BROADCAST_TOPIC}, subscribed by
+ * all processes. Their body is prefixed by the number of processes and a delivery delay for each of them (negative for
+ * processes that must not receive the message), so that every subscriber applies its own delay.
+ * <p/>
+ * The broker's ingress can be sharded: the broker then consumes the {@link #FROM_PROCESS_QUEUE} with multiple
+ * consumers, each with its own session (and thus thread). Processes send their messages in the message group
+ * ({@link #GROUP_ID_PROPERTY}) of their ID, so that ActiveMQ hands all messages from the same process to the same
+ * consumer, in order.
+ * <p/>
+ * By default, heartbeats travel in a priority lane: their own queues ({@link #FROM_PROCESS_HEARTBEAT_QUEUE},
+ * {@link #TO_PROCESS_HEARTBEAT_QUEUE} + i) and topic ({@link #BROADCAST_HEARTBEAT_TOPIC}), consumed by their own
+ * sessions (and thus threads), so that they are never stuck behind a backlog of application messages.
+ * <p/>
+ * The broker and all processes in this JVM share a small pool of JMS connections (see {@link ActiveMqConnectionPool}),
+ * each endpoint with its own sessions, so that the number of sockets and threads doesn't grow with the number of
+ * processes.
+ * <p/>
+ * Optionally (see {@link #setBatching(int, long)}), process-to-process messages are packed into envelopes (see
+ * {@link MessageBatcher}), marked by the {@link #BATCH_PROPERTY}, both on their way to the broker and from the broker
+ * to each process. The broker unpacks envelopes and routes every message on its own. Heartbeats are never batched.
+ * <p/>
+ * Messages received by a process are queued in its bounded {@link Mailbox} and handed over to the process by the
+ * mailbox's thread, so that a slow listener holds up neither the JMS sessions nor heartbeats. Heartbeats take a fast
+ * path: they are handed over to the failure detector straight from the thread receiving them, so it is fed even while
+ * the process is busy with other messages (see {@link #getMailboxDepth(int)} and {@link #getMeanTimeInMailboxNs(int)}).
+ * With the heartbeat lane, this holds even while the mailbox is full.
+ */
+public class ActiveMqTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger(ActiveMqTransport.class);
+
+    public static final String BROKER_URL = "tcp://localhost:61617";
+    public static final String FROM_PROCESS_QUEUE = "from.process";
+    public static final String TO_PROCESS_QUEUE = "to.process.";
+    public static final String BROADCAST_TOPIC = "to.processes";
+    public static final String FROM_PROCESS_HEARTBEAT_QUEUE = "from.process.heartbeats";
+    public static final String TO_PROCESS_HEARTBEAT_QUEUE = "to.process.heartbeats.";
+    public static final String BROADCAST_HEARTBEAT_TOPIC = "to.processes.heartbeats";
+
+    public static final String KIND_PROPERTY = "kind";
+    public static final String SOURCE_PROPERTY = "source";
+    public static final String DESTINATION_PROPERTY = "destination";
+    public static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+    public static final String BATCH_PROPERTY = "batch";
+
+    public static final int DEFAULT_MAILBOX_CAPACITY = 10000;
+
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 4;
+
+    private final int ingressShards;
+    private final boolean heartbeatLane;
+    private final ActiveMqConnectionPool connectionPool;
+
+    private volatile int maxBatchSize = 1;
+    private volatile long maxBatchDelayMs;
+    private volatile int mailboxCapacity = DEFAULT_MAILBOX_CAPACITY;
+
+    /**
+     * Mailboxes of processes connected in this JVM, keyed by process ID.
+     */
+    private final ConcurrentMap<Integer, Mailbox> mailboxes = new ConcurrentHashMap<Integer, Mailbox>();
+
+    /**
+     * Construct a new transport with a single ingress shard.
+     */
+    public ActiveMqTransport() {
+        this(1);
+    }
+
+    /**
+     * Construct a new transport with a heartbeat priority lane.
+     *
+     * @param ingressShards number of broker ingress shards, i.e. consumers routing messages in parallel.
+     */
+    public ActiveMqTransport(int ingressShards) {
+        this(ingressShards, true);
+    }
+
+    /**
+     * Construct a new transport with a pool of {@link #DEFAULT_CONNECTION_POOL_SIZE} connections.
+     *
+     * @param ingressShards number of broker ingress shards, i.e. consumers routing messages in parallel.
+     * @param heartbeatLane true for heartbeats to travel over their own queues and topic.
+     */
+    public ActiveMqTransport(int ingressShards, boolean heartbeatLane) {
+        this(ingressShards, heartbeatLane, DEFAULT_CONNECTION_POOL_SIZE);
+    }
+
+    /**
+     * Construct a new transport.
+     *
+     * @param ingressShards      number of broker ingress shards, i.e. consumers routing messages in parallel.
+     * @param heartbeatLane      true for heartbeats to travel over their own queues and topic.
+     * @param connectionPoolSize maximum number of JMS connections shared by the broker and processes in this JVM.
+     */
+    public ActiveMqTransport(int ingressShards, boolean heartbeatLane, int connectionPoolSize) {
+        this.ingressShards = ingressShards;
+        this.heartbeatLane = heartbeatLane;
+        this.connectionPool = new ActiveMqConnectionPool(BROKER_URL, connectionPoolSize);
+    }
+
+    /**
+     * Set the flush policy of batching. Only affects the broker and processes bound or connected afterwards.
+     *
+     * @param maxBatchSize    maximum number of messages in an envelope, 1 to disable batching.
+     * @param maxBatchDelayMs maximum time a message waits for its envelope to be sent.
+     */
+    public void setBatching(int maxBatchSize, long maxBatchDelayMs) {
+        if (maxBatchSize < 1 || maxBatchDelayMs < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay must not be negative!");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMs = maxBatchDelayMs;
+    }
+
+    /**
+     * Set the capacity of processes' mailboxes. Only affects processes connected afterwards.
+     *
+     * @param mailboxCapacity maximum number of messages (other than heartbeats) waiting to be handed over to a process,
+     *                        before its JMS sessions stop receiving.
+     */
+    public void setMailboxCapacity(int mailboxCapacity) {
+        if (mailboxCapacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive!");
+        }
+        this.mailboxCapacity = mailboxCapacity;
+    }
+
+    /**
+     * Get the number of messages waiting to be handed over to a process connected in this JVM.
+     *
+     * @param processId ID of the process.
+     * @return depth of the process' mailbox, 0 if not connected.
+     */
+    public int getMailboxDepth(int processId) {
+        Mailbox mailbox = mailboxes.get(processId);
+        return mailbox == null ? 0 : mailbox.getDepth();
+    }
+
+    /**
+     * Get the largest number of messages that have been waiting to be handed over to a process connected in this JVM.
+     *
+     * @param processId ID of the process.
+     * @return maximum depth of the process' mailbox, 0 if not connected.
+     */
+    public int getMaxMailboxDepth(int processId) {
+        Mailbox mailbox = mailboxes.get(processId);
+        return mailbox == null ? 0 : mailbox.getMaxDepth();
+    }
+
+    /**
+     * Get the mean time messages have been waiting to be handed over to a process connected in this JVM.
+     *
+     * @param processId ID of the process.
+     * @return mean time in the process' mailbox in nanoseconds, 0 if not connected.
+     */
+    public long getMeanTimeInMailboxNs(int processId) {
+        Mailbox mailbox = mailboxes.get(processId);
+        return mailbox == null ? 0 : mailbox.getMeanTimeInMailboxNs();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BrokerEndpoint bindBroker(int numberOfProcesses, BrokerListener listener) {
+        BrokerService brokerService = createActiveMqBroker();
+        List<Connection> connections = new ArrayList<Connection>();
+        setupMessageQueueConsumer(listener, connections);
+        ActiveMqBrokerEndpoint endpoint;
+        if (!heartbeatLane) {
+            endpoint = new ActiveMqBrokerEndpoint(brokerService, connectionPool, connections,
+                    setupMessageProducers(TO_PROCESS_QUEUE, numberOfProcesses, connections), setupBroadcastProducer(BROADCAST_TOPIC, connections), null, null);
+        } else {
+            endpoint = new ActiveMqBrokerEndpoint(brokerService, connectionPool, connections,
+                    setupMessageProducers(TO_PROCESS_QUEUE, numberOfProcesses, connections), setupBroadcastProducer(BROADCAST_TOPIC, connections),
+                    setupMessageProducers(TO_PROCESS_HEARTBEAT_QUEUE, numberOfProcesses, connections), setupBroadcastProducer(BROADCAST_HEARTBEAT_TOPIC, connections));
+        }
+        if (maxBatchSize > 1) {
+            endpoint.enableBatching(maxBatchSize, maxBatchDelayMs);
+        }
+        return endpoint;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectProcess(int processId, TransportListener listener) {
+        ActiveMqEndpoint endpoint = createEndpoint(processId);
+        Mailbox mailbox = new Mailbox("process " + processId, false, mailboxCapacity);
+        mailbox.bind(listener);
+        mailboxes.put(processId, mailbox);
+        endpoint.attachMailbox(processId, mailbox, mailboxes);
+
+        TransportListener fastPathListener = new FastPathListener(listener, mailbox);
+        endpoint.setupMessageConsumer(processId, fastPathListener);
+        endpoint.setupBroadcastConsumer(processId, fastPathListener);
+        return endpoint;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectClient() {
+        return createEndpoint(0);
+    }
+
+    private ActiveMqEndpoint createEndpoint(int processId) {
+        ActiveMqEndpoint endpoint = new ActiveMqEndpoint(connectionPool, heartbeatLane);
+        if (maxBatchSize > 1) {
+            endpoint.enableBatching(processId, maxBatchSize, maxBatchDelayMs);
+        }
+        return endpoint;
+    }
+
+    private BrokerService createActiveMqBroker() {
+        BrokerService broker = new BrokerService();
+        try {
+            broker.setPersistent(false);
+            broker.setUseJmx(false);
+            broker.addConnector(BROKER_URL);
+            broker.setUseShutdownHook(true);
+            broker.start();
+        } catch (Exception e) {
+            LOG.fatal("Failed to start ActiveMQ broker.", e);
+        }
+        return broker;
+    }
+
+    private void setupMessageQueueConsumer(BrokerListener listener, List<Connection> connections) {
+        try {
+            Connection connection = connectionPool.acquire();
+            connections.add(connection);
+            for (int i = 0; i < ingressShards; i++) {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                Destination fromProcessQueue = session.createQueue(FROM_PROCESS_QUEUE);
+                MessageConsumer consumer = session.createConsumer(fromProcessQueue);
+                consumer.setMessageListener(new BrokerMessageListener(listener));
+            }
+            if (heartbeatLane) {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageConsumer consumer = session.createConsumer(session.createQueue(FROM_PROCESS_HEARTBEAT_QUEUE));
+                consumer.setMessageListener(new BrokerMessageListener(listener));
+            }
+        } catch (JMSException e) {
+            LOG.fatal("Failed to create message queue consumer.", e);
+        }
+    }
+
+    private MessageProducer[] setupMessageProducers(String queue, int numberOfProcesses, List<Connection> connections) {
+        MessageProducer[] messageProducers = new MessageProducer[numberOfProcesses];
+        try {
+            Connection connection = connectionPool.acquire();
+            connections.add(connection);
+            for (int i = 1; i <= numberOfProcesses; i++) {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                Destination toProcessQueue = session.createQueue(queue + i);
+                MessageProducer producer = session.createProducer(toProcessQueue);
+                producer.setDeliveryMode(Session.AUTO_ACKNOWLEDGE);
+                messageProducers[i - 1] = producer;
+            }
+        } catch (JMSException e) {
+            LOG.fatal("Failed to create message producers.", e);
+        }
+        return messageProducers;
+    }
+
+    private MessageProducer setupBroadcastProducer(String topic, List<Connection> connections) {
+        try {
+            Connection connection = connectionPool.acquire();
+            connections.add(connection);
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createTopic(topic));
+            producer.setDeliveryMode(Session.AUTO_ACKNOWLEDGE);
+            return producer;
+        } catch (JMSException e) {
+            LOG.fatal("Failed to create broadcast producer.", e);
+        }
+        return null;
+    }
+
+    private static ActiveMQBytesMessage createEnvelopeMessage(byte[] envelope) throws JMSException {
+        ActiveMQBytesMessage activeMQBytesMessage = new ActiveMQBytesMessage();
+        activeMQBytesMessage.setContent(new ByteSequence(envelope));
+        activeMQBytesMessage.setBooleanProperty(BATCH_PROPERTY, true);
+        return activeMQBytesMessage;
+    }
+
+    /**
+     * A message received or prepared by the broker, with an encoded body that is shared by all its destinations.
+     */
+    private static class EncodedMessage extends RoutableMessage {
+
+        private final ByteSequence body;
+
+        private EncodedMessage(BrokeredMessage message, byte[] body) {
+            super(MessageClassifier.kindOf(message), MessageClassifier.sourceOf(message), MessageClassifier.destinationOf(message));
+            this.body = body == null ? null : new ByteSequence(body);
+        }
+
+        private EncodedMessage(Kind kind, int source, int destination, ByteSequence body) {
+            super(kind, source, destination);
+            this.body = body;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public BrokeredMessage decode() {
+            return MessageCodec.decode(wrap());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<?> getType() {
+            return MessageCodec.peekType(wrap());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimestamp() {
+            return MessageCodec.peekTimestamp(wrap());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getSize() {
+            return body.getLength();
+        }
+
+        private ByteBuffer wrap() {
+            return ByteBuffer.wrap(body.getData(), body.getOffset(), body.getLength());
+        }
+    }
+
+    /**
+     * Adapter of JMS {@link BytesMessage}s to {@link BrokerListener}, reading routing headers from message properties
+     * (or envelopes) and leaving bodies encoded.
+     */
+    private static class BrokerMessageListener implements MessageListener, MessageBatcher.Handler {
+
+        private final BrokerListener listener;
+
+        private BrokerMessageListener(BrokerListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            if (!(message instanceof BytesMessage) || !(message instanceof ActiveMQMessage)) {
+                LOG.error("Incompatible message received! Only BytesMessage supported.");
+                return;
+            }
+            try {
+                if (message.propertyExists(BATCH_PROPERTY)) {
+                    MessageBatcher.unpack(((ActiveMQMessage) message).getContent(), this);
+                    return;
+                }
+                RoutableMessage.Kind kind = RoutableMessage.Kind.valueOf(message.getStringProperty(KIND_PROPERTY));
+                int source = message.getIntProperty(SOURCE_PROPERTY);
+                int destination = message.getIntProperty(DESTINATION_PROPERTY);
+                listener.onMessage(new EncodedMessage(kind, source, destination, ((ActiveMQMessage) message).getContent()));
+            } catch (JMSException e) {
+                LOG.error("Failed to receive message!", e);
+            } catch (RuntimeException e) { //missing or unknown kind, or malformed envelope
+                LOG.error("Incompatible message received! Routing headers missing.", e);
+            }
+        }
+
+        @Override
+        public void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body) {
+            listener.onMessage(new EncodedMessage(kind, source, destination, body));
+        }
+    }
+
+    /**
+     * Decorator of {@link TransportListener}s handing heartbeats over straight away, one at a time, even though they
+     * arrive from both the JMS sessions and the scheduler of delayed broadcasts. The process hands them to its failure
+     * detector only (see {@link process.base.FailureDetectorProcess}),
+     * so they are never held up by other listeners. All other messages are queued in the mailbox, which hands them
+     * over one at a time on its own thread.
+     * <p/>
+     * Heartbeats overtake messages in the mailbox only if they are received by a session of their own, i.e. with
+     * the heartbeat lane. Otherwise they share the JMS session with all other messages, which waits while the mailbox
+     * is full. Delayed broadcasts are handed over by schedulers of their own, one for heartbeats and one for all other
+     * messages, which waits while the mailbox is full.
+     */
+    private static class FastPathListener implements TransportListener {
+
+        private final TransportListener listener;
+        private final Mailbox mailbox;
+
+        private FastPathListener(TransportListener listener, Mailbox mailbox) {
+            this.listener = listener;
+            this.mailbox = mailbox;
+        }
+
+        @Override
+        public void onMessage(BrokeredMessage message) {
+            if (!(message instanceof HeartbeatMessage)) {
+                mailbox.offer(message);
+                return;
+            }
+            synchronized (this) {
+                listener.onMessage(message);
+            }
+        }
+    }
+
+    /**
+     * Adapter of JMS {@link BytesMessage}s published to the {@link #BROADCAST_TOPIC} to {@link TransportListener}.
+     * Messages are handed over after this process' delay, or dropped if this process must not receive them.
+     * Heartbeats are handed over by a scheduler of their own, so that they never wait for other messages to be handed
+     * over to a full mailbox.
+     */
+    private static class BroadcastMessageListener implements MessageListener {
+
+        private final int processId;
+        private final TransportListener listener;
+        private final ScheduledExecutorService scheduler;
+        private final ScheduledExecutorService heartbeatScheduler;
+
+        private BroadcastMessageListener(int processId, TransportListener listener, ScheduledExecutorService scheduler,
+                                         ScheduledExecutorService heartbeatScheduler) {
+            this.processId = processId;
+            this.listener = listener;
+            this.scheduler = scheduler;
+            this.heartbeatScheduler = heartbeatScheduler;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            if (!(message instanceof BytesMessage)) {
+                LOG.error("Incompatible message received! Only BytesMessage supported.");
+                return;
+            }
+            try {
+                BytesMessage bytesMessage = (BytesMessage) message;
+                byte[] content = new byte[(int) bytesMessage.getBodyLength()];
+                bytesMessage.readBytes(content);
+
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                int numberOfProcesses = buffer.getInt();
+                long delay = buffer.getInt(4 * processId);
+                if (delay < 0) {
+                    return; //not for me
+                }
+                buffer.position(4 + 4 * numberOfProcesses);
+
+                if (MessageExpiry.getDefault().isExpired(MessageCodec.peekType(buffer), MessageCodec.peekTimestamp(buffer))) {
+                    return; //stale, not worth decoding
+                }
+                final BrokeredMessage decodedMessage = MessageCodec.decode(buffer);
+                if (decodedMessage == null) {
+                    return; //failed to decode, already logged
+                }
+                (decodedMessage instanceof HeartbeatMessage ? heartbeatScheduler : scheduler).schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onMessage(decodedMessage);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (JMSException e) {
+                LOG.error("Failed to receive message!", e);
+            }
+        }
+    }
+
+    /**
+     * Adapter of JMS {@link BytesMessage}s (containing an encoded message, or an envelope of them) to
+     * {@link TransportListener}.
+     */
+    private static class ProcessMessageListener implements MessageListener, MessageBatcher.Handler {
+
+        private final TransportListener listener;
+
+        private ProcessMessageListener(TransportListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            if (!(message instanceof BytesMessage)) {
+                LOG.error("Incompatible message received! Only BytesMessage supported.");
+                return;
+            }
+            try {
+                BytesMessage bytesMessage = (BytesMessage) message;
+                byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+                bytesMessage.readBytes(body);
+                if (message.propertyExists(BATCH_PROPERTY)) {
+                    MessageBatcher.unpack(new ByteSequence(body), this);
+                    return;
+                }
+                receive(ByteBuffer.wrap(body));
+            } catch (JMSException e) {
+                LOG.error("Failed to receive message!", e);
+            } catch (IllegalArgumentException e) {
+                LOG.error("Incompatible message received! Malformed envelope.", e);
+            }
+        }
+
+        @Override
+        public void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body) {
+            receive(ByteBuffer.wrap(body.getData(), body.getOffset(), body.getLength()));
+        }
+
+        private void receive(ByteBuffer buffer) {
+            if (MessageExpiry.getDefault().isExpired(MessageCodec.peekType(buffer), MessageCodec.peekTimestamp(buffer))) {
+                return; //stale, not worth decoding
+            }
+            BrokeredMessage decodedMessage = MessageCodec.decode(buffer);
+            if (decodedMessage == null) {
+                return; //failed to decode, already logged
+            }
+            listener.onMessage(decodedMessage);
+        }
+    }
+
+    /**
+     * The broker's endpoint, one producer per process and one for the broadcast channel, and the same again for
+     * heartbeats with the heartbeat lane.
+     */
+    private static class ActiveMqBrokerEndpoint implements BrokerEndpoint {
+
+        private final BrokerService brokerService;
+        private final ActiveMqConnectionPool connectionPool;
+
+        /**
+         * Connections acquired from the pool, one per use.
+         */
+        private final List<Connection> connections;
+
+        /**
+         * Message producers, one per process, indexed by processId - 1
+         */
+        private final MessageProducer[] messageProducers;
+
+        private final MessageProducer broadcastProducer;
+
+        /**
+         * Heartbeat producers, one per process, indexed by processId - 1. Null without the heartbeat lane.
+         */
+        private final MessageProducer[] heartbeatProducers;
+
+        /**
+         * Heartbeat producer for the broadcast channel. Null without the heartbeat lane.
+         */
+        private final MessageProducer heartbeatBroadcastProducer;
+
+        /**
+         * Batchers of messages to processes, indexed by processId - 1, and their scheduler. Null without batching.
+         */
+        private MessageBatcher[] batchers;
+        private ScheduledExecutorService batchScheduler;
+
+        private ActiveMqBrokerEndpoint(BrokerService brokerService, ActiveMqConnectionPool connectionPool, List<Connection> connections,
+                                       MessageProducer[] messageProducers, MessageProducer broadcastProducer,
+                                       MessageProducer[] heartbeatProducers, MessageProducer heartbeatBroadcastProducer) {
+            this.brokerService = brokerService;
+            this.connectionPool = connectionPool;
+            this.connections = connections;
+            this.messageProducers = messageProducers;
+            this.broadcastProducer = broadcastProducer;
+            this.heartbeatProducers = heartbeatProducers;
+            this.heartbeatBroadcastProducer = heartbeatBroadcastProducer;
+        }
+
+        private void enableBatching(int maxBatchSize, long maxBatchDelayMs) {
+            batchScheduler = Clocks.getDefault().newScheduledExecutor(1);
+            batchers = new MessageBatcher[messageProducers.length];
+            for (int i = 0; i < messageProducers.length; i++) {
+                final MessageProducer producer = messageProducers[i];
+                batchers[i] = new MessageBatcher(maxBatchSize, maxBatchDelayMs, batchScheduler, new MessageBatcher.Flusher() {
+                    @Override
+                    public void flush(byte[] envelope) {
+                        try {
+                            producer.send(createEnvelopeMessage(envelope));
+                        } catch (JMSException e) {
+                            LOG.error("Error sending batch!", e);
+                        }
+                    }
+                });
+            }
+        }
+
+        private boolean isHeartbeat(RoutableMessage message) {
+            return heartbeatProducers != null && message.getKind() == RoutableMessage.Kind.HEARTBEAT;
+        }
+
+        @Override
+        public RoutableMessage prepare(ProcessMessage message) {
+            return new EncodedMessage(message, MessageCodec.encode(message));
+        }
+
+        @Override
+        public void send(RoutableMessage message, int destination) {
+            ByteSequence body = ((EncodedMessage) message).body;
+            if (body == null) {
+                return; //failed to encode, already logged
+            }
+            if (batchers != null && message.getKind() == RoutableMessage.Kind.PROCESS_TO_PROCESS) {
+                batchers[destination - 1].add(message, body);
+                return;
+            }
+            if (batchers != null && message.getKind() != RoutableMessage.Kind.HEARTBEAT) {
+                batchers[destination - 1].flush(); //not to overtake batched messages
+            }
+
+            ActiveMQBytesMessage activeMQBytesMessage = new ActiveMQBytesMessage();
+            activeMQBytesMessage.setContent(body); //shared by all destinations, never copied
+            try {
+                (isHeartbeat(message) ? heartbeatProducers : messageProducers)[destination - 1].send(activeMQBytesMessage);
+            } catch (JMSException e) {
+                LOG.error("Error sending message!", e);
+            }
+        }
+
+        @Override
+        public void broadcast(RoutableMessage message, long[] delays) {
+            ByteSequence body = ((EncodedMessage) message).body;
+            if (body == null) {
+                return; //failed to encode, already logged
+            }
+
+            ByteBuffer content = ByteBuffer.allocate(4 + 4 * delays.length + body.getLength());
+            content.putInt(delays.length);
+            for (long delay : delays) {
+                content.putInt((int) Math.min(delay, Integer.MAX_VALUE));
+            }
+            content.put(body.getData(), body.getOffset(), body.getLength());
+
+            ActiveMQBytesMessage activeMQBytesMessage = new ActiveMQBytesMessage();
+            activeMQBytesMessage.setContent(new ByteSequence(content.array()));
+            try {
+                (isHeartbeat(message) ? heartbeatBroadcastProducer : broadcastProducer).send(activeMQBytesMessage);
+            } catch (JMSException e) {
+                LOG.error("Error broadcasting message!", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (batchers != null) {
+                for (MessageBatcher batcher : batchers) {
+                    batcher.flush();
+                }
+                batchScheduler.shutdownNow();
+            }
+            for (Connection connection : connections) {
+                connectionPool.release(connection);
+            }
+            try {
+                brokerService.stop();
+            } catch (Exception e) {
+                LOG.error("Failed stopping broker", e);
+            }
+            connectionPool.clear(); //connections of processes are dead, too
+        }
+    }
+
+    /**
+     * A process' (or client's) endpoint, with its own consuming session on a pooled connection, and another session
+     * for heartbeats with the heartbeat lane.
+     * <p/>
+     * Sends are called concurrently (by timers, consensus and listeners), but JMS sessions and producers must not be.
+     * Each sending thread therefore takes an idle {@link Sender} with its own session and producers, creating a new
+     * one if none is idle, and returns it afterwards. There are thus never more senders than concurrent sends, and
+     * no sender ever waits for another. Sends are synchronous, so the messages of each thread still reach the broker
+     * in the order sent.
+     */
+    private static class ActiveMqEndpoint implements Endpoint {
+
+        private final ActiveMqConnectionPool connectionPool;
+        private final boolean heartbeatLane;
+        private Connection connection;
+        private Session session;
+
+        /**
+         * Session for consuming heartbeats, null without the heartbeat lane.
+         */
+        private Session heartbeatSession;
+
+        private final Queue<Sender> idleSenders = new ConcurrentLinkedQueue<Sender>();
+        private final Queue<Sender> allSenders = new ConcurrentLinkedQueue<Sender>();
+
+        /**
+         * Batcher of process-to-process messages and its scheduler, null without batching.
+         */
+        private MessageBatcher batcher;
+        private ScheduledExecutorService batchScheduler;
+
+        /**
+         * Schedulers of delayed broadcasts (heartbeats and all other messages), null for clients that don't receive
+         * messages.
+         */
+        private ScheduledExecutorService broadcastScheduler;
+        private ScheduledExecutorService heartbeatBroadcastScheduler;
+
+        /**
+         * Mailbox of the process and the transport's mailboxes it is listed in (by process ID), null for clients that
+         * don't receive messages.
+         */
+        private Mailbox mailbox;
+        private ConcurrentMap<Integer, Mailbox> mailboxes;
+        private int processId;
+
+        private ActiveMqEndpoint(ActiveMqConnectionPool connectionPool, boolean heartbeatLane) {
+            this.connectionPool = connectionPool;
+            this.heartbeatLane = heartbeatLane;
+            createConnectionAndSession(heartbeatLane);
+        }
+
+        private void attachMailbox(int processId, Mailbox mailbox, ConcurrentMap<Integer, Mailbox> mailboxes) {
+            this.processId = processId;
+            this.mailbox = mailbox;
+            this.mailboxes = mailboxes;
+        }
+
+        private void enableBatching(int processId, int maxBatchSize, long maxBatchDelayMs) {
+            final String groupId = String.valueOf(processId);
+            batchScheduler = Clocks.getDefault().newScheduledExecutor(1);
+            batcher = new MessageBatcher(maxBatchSize, maxBatchDelayMs, batchScheduler, new MessageBatcher.Flusher() {
+                @Override
+                public void flush(byte[] envelope) {
+                    try {
+                        ActiveMQBytesMessage activeMQBytesMessage = createEnvelopeMessage(envelope);
+                        activeMQBytesMessage.setStringProperty(GROUP_ID_PROPERTY, groupId);
+                        send(activeMQBytesMessage, false);
+                    } catch (JMSException e) {
+                        LOG.error("Failed to send batch!", e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void send(BrokeredMessage message) {
+            EncodedMessage encodedMessage = new EncodedMessage(message, MessageCodec.encode(message));
+            if (encodedMessage.body == null) {
+                return; //failed to encode, already logged
+            }
+            if (batcher != null && encodedMessage.getKind() == RoutableMessage.Kind.PROCESS_TO_PROCESS) {
+                batcher.add(encodedMessage, encodedMessage.body);
+                return;
+            }
+            if (batcher != null && encodedMessage.getKind() != RoutableMessage.Kind.HEARTBEAT) {
+                batcher.flush(); //not to overtake batched messages
+            }
+
+            ActiveMQBytesMessage activeMQBytesMessage = new ActiveMQBytesMessage();
+            activeMQBytesMessage.setContent(encodedMessage.body);
+            try {
+                activeMQBytesMessage.setStringProperty(KIND_PROPERTY, encodedMessage.getKind().name());
+                activeMQBytesMessage.setIntProperty(SOURCE_PROPERTY, encodedMessage.getSource());
+                activeMQBytesMessage.setIntProperty(DESTINATION_PROPERTY, encodedMessage.getDestination());
+                activeMQBytesMessage.setStringProperty(GROUP_ID_PROPERTY, String.valueOf(encodedMessage.getSource()));
+                send(activeMQBytesMessage, encodedMessage.getKind() == RoutableMessage.Kind.HEARTBEAT);
+            } catch (JMSException e) {
+                LOG.error("Failed to send message!", e);
+            }
+        }
+
+        private void send(ActiveMQBytesMessage activeMQBytesMessage, boolean heartbeat) throws JMSException {
+            Sender sender = takeSender();
+            try {
+                if (sender.heartbeatProducer != null && heartbeat) {
+                    sender.heartbeatProducer.send(activeMQBytesMessage);
+                } else {
+                    sender.messageProducer.send(activeMQBytesMessage);
+                }
+            } finally {
+                idleSenders.offer(sender);
+            }
+        }
+
+        private Sender takeSender() throws JMSException {
+            Sender sender = idleSenders.poll();
+            if (sender == null) {
+                sender = new Sender(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), heartbeatLane);
+                allSenders.offer(sender);
+            }
+            return sender;
+        }
+
+        @Override
+        public void close() {
+            if (batcher != null) {
+                batcher.flush();
+                batchScheduler.shutdownNow();
+            }
+            if (broadcastScheduler != null) {
+                broadcastScheduler.shutdownNow();
+                heartbeatBroadcastScheduler.shutdownNow();
+            }
+            if (mailbox != null) {
+                mailboxes.remove(processId, mailbox); //not a reconnected process' new mailbox
+                mailbox.unbind();
+                mailbox.clear(); //releases JMS sessions waiting for space
+            }
+            try {
+                for (Sender sender : allSenders) {
+                    sender.session.close();
+                }
+                if (heartbeatSession != null) {
+                    heartbeatSession.close();
+                }
+                session.close();
+            } catch (JMSException e) {
+                LOG.error("Failed to close endpoint!", e);
+            }
+            connectionPool.release(connection);
+        }
+
+        private void createConnectionAndSession(boolean heartbeatLane) {
+            try {
+                connection = connectionPool.acquire();
+                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                if (heartbeatLane) {
+                    heartbeatSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                }
+            } catch (JMSException e) {
+                LOG.error("Failed to create JMS session!", e);
+            }
+        }
+
+        private void setupMessageConsumer(int processId, TransportListener listener) {
+            try {
+                Destination toProcessQueue = session.createQueue(TO_PROCESS_QUEUE + processId);
+                MessageConsumer consumer = session.createConsumer(toProcessQueue);
+                consumer.setMessageListener(new ProcessMessageListener(listener));
+                if (heartbeatSession != null) {
+                    MessageConsumer heartbeatConsumer = heartbeatSession.createConsumer(heartbeatSession.createQueue(TO_PROCESS_HEARTBEAT_QUEUE + processId));
+                    heartbeatConsumer.setMessageListener(new ProcessMessageListener(listener));
+                }
+            } catch (JMSException e) {
+                LOG.error("Failed to setup message consumer!", e);
+            }
+        }
+
+        private void setupBroadcastConsumer(int processId, TransportListener listener) {
+            broadcastScheduler = Clocks.getDefault().newScheduledExecutor(1);
+            heartbeatBroadcastScheduler = Clocks.getDefault().newScheduledExecutor(1);
+            try {
+                MessageConsumer consumer = session.createConsumer(session.createTopic(BROADCAST_TOPIC));
+                consumer.setMessageListener(new BroadcastMessageListener(processId, listener, broadcastScheduler, heartbeatBroadcastScheduler));
+                if (heartbeatSession != null) {
+                    MessageConsumer heartbeatConsumer = heartbeatSession.createConsumer(heartbeatSession.createTopic(BROADCAST_HEARTBEAT_TOPIC));
+                    heartbeatConsumer.setMessageListener(new BroadcastMessageListener(processId, listener, broadcastScheduler, heartbeatBroadcastScheduler));
+                }
+            } catch (JMSException e) {
+                LOG.error("Failed to setup broadcast consumer!", e);
+            }
+        }
+    }
+
+    /**
+     * A session of its own and its producers, used by one sending thread at a time.
+     */
+    private static class Sender {
+
+        private final Session session;
+        private final MessageProducer messageProducer;
+
+        /**
+         * Producer of heartbeats, null without the heartbeat lane.
+         */
+        private final MessageProducer heartbeatProducer;
+
+        private Sender(Session session, boolean heartbeatLane) throws JMSException {
+            this.session = session;
+            this.messageProducer = session.createProducer(session.createQueue(FROM_PROCESS_QUEUE));
+            this.heartbeatProducer = heartbeatLane ? session.createProducer(session.createQueue(FROM_PROCESS_HEARTBEAT_QUEUE)) : null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package transport;
+
+import message.internal.ProcessMessage;
+
+/**
+ * The broker's side of a {@link Transport}, capable of sending messages to individual processes.
+ */
+public interface BrokerEndpoint {
+
+    /**
+     * Prepare a message originating at the broker for being sent. The same prepared message can be sent to any number
+     * of destinations.
+     *
+     * @param message to prepare.
+     * @return prepared message.
+     */
+    RoutableMessage prepare(ProcessMessage message);
+
+    /**
+     * Send a message to a process immediately. Its body is forwarded untouched.
+     *
+     * @param message     to send, received or prepared by this endpoint.
+     * @param destination ID of the destination process.
+     */
+    void send(RoutableMessage message, int destination);
+
+    /**
+     * Broadcast a message over the transport's broadcast channel, i.e. hand it over to the transport once, no matter
+     * how many processes there are. The transport delivers it to each process after that process' delay.
+     *
+     * @param message to broadcast, received or prepared by this endpoint.
+     * @param delays  delivery delays in ms, indexed by process ID - 1, negative for processes that must not receive
+     *                the message.
+     */
+    void broadcast(RoutableMessage message, long[] delays);
+
+    /**
+     * Close the endpoint and discard all messages that have not yet been consumed by processes.
+     */
+    void close();
+}
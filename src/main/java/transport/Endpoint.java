@@ -0,0 +1,21 @@
+package transport;
+
+import message.internal.BrokeredMessage;
+
+/**
+ * A connection of a process (or any other client, such as a {@link broker.FailureInjector}) to the broker.
+ */
+public interface Endpoint {
+
+    /**
+     * Send a message to the broker.
+     *
+     * @param message to send.
+     */
+    void send(BrokeredMessage message);
+
+    /**
+     * Close the endpoint. No more messages will be received through it.
+     */
+    void close();
+}
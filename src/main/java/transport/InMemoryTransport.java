@@ -0,0 +1,208 @@
+package transport;
+
+import clock.Clocks;
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.internal.BrokeredMessage;
+import message.internal.ProcessMessage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Transport} for ensembles running in a single JVM.
+ * <p/>
+ * Messages are never serialized or copied. Since all messages in the system are immutable, the very same instance
+ * that has been sent is handed over to the receiver. Each endpoint (the broker and every process) has a {@link Mailbox}
+ * backed by a lock-free queue, drained by a dedicated thread, so that messages are consumed one at a time and in
+ * order, just like with a JMS session.
+ * <p/>
+ * The broker's ingress can be sharded by source process: each shard has its own mailbox and thread, so that messages
+ * from different processes are routed in parallel, while messages from the same process are still routed in order.
+ * <p/>
+ * By default, heartbeats travel in a priority lane: every mailbox has a separate queue for {@link HeartbeatMessage}s,
+ * drained before any other message, so that heartbeats are never stuck behind a backlog of application messages.
+ * <p/>
+ * A single instance must be shared by the broker, the processes and the failure injectors of an ensemble.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class InMemoryTransport implements Transport {
+
+    /**
+     * Mailboxes of the broker, one per ingress shard. Process with ID i sends to shard i % number of shards,
+     * clients to shard 0.
+     */
+    private final Mailbox[] brokerMailboxes;
+
+    /**
+     * Mailboxes of processes, keyed by process ID.
+     */
+    private final ConcurrentMap<Integer, Mailbox> processMailboxes = new ConcurrentHashMap<Integer, Mailbox>();
+
+    /**
+     * Whether heartbeats overtake other messages waiting in mailboxes.
+     */
+    private final boolean heartbeatLane;
+
+    /**
+     * Construct a new transport with a single ingress shard.
+     */
+    public InMemoryTransport() {
+        this(1);
+    }
+
+    /**
+     * Construct a new transport with a heartbeat priority lane.
+     *
+     * @param ingressShards number of broker ingress shards, i.e. threads routing messages in parallel.
+     */
+    public InMemoryTransport(int ingressShards) {
+        this(ingressShards, true);
+    }
+
+    /**
+     * Construct a new transport.
+     *
+     * @param ingressShards number of broker ingress shards, i.e. threads routing messages in parallel.
+     * @param heartbeatLane true for heartbeats to overtake other messages waiting in mailboxes.
+     */
+    public InMemoryTransport(int ingressShards, boolean heartbeatLane) {
+        this.heartbeatLane = heartbeatLane;
+        brokerMailboxes = new Mailbox[ingressShards];
+        for (int i = 0; i < ingressShards; i++) {
+            brokerMailboxes[i] = new Mailbox(ingressShards == 1 ? "broker" : "broker " + i, heartbeatLane);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BrokerEndpoint bindBroker(int numberOfProcesses, final BrokerListener listener) {
+        TransportListener adapter = new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                listener.onMessage(new UnserializedMessage(message));
+            }
+        };
+        for (Mailbox brokerMailbox : brokerMailboxes) {
+            brokerMailbox.bind(adapter);
+        }
+        return new InMemoryBrokerEndpoint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectProcess(int processId, TransportListener listener) {
+        Mailbox mailbox = getProcessMailbox(processId);
+        mailbox.bind(listener);
+        return new InMemoryEndpoint(mailbox, brokerMailboxes[processId % brokerMailboxes.length]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectClient() {
+        return new InMemoryEndpoint(null, brokerMailboxes[0]);
+    }
+
+    private Mailbox getProcessMailbox(int processId) {
+        Mailbox mailbox = processMailboxes.get(processId);
+        if (mailbox == null) {
+            Mailbox newMailbox = new Mailbox("process " + processId, heartbeatLane);
+            mailbox = processMailboxes.putIfAbsent(processId, newMailbox);
+            if (mailbox == null) {
+                mailbox = newMailbox;
+            }
+        }
+        return mailbox;
+    }
+
+    /**
+     * The broker's endpoint, delivering straight into processes' mailboxes. Broadcasts are fanned out to the mailboxes
+     * by a scheduler, after each process' delay.
+     */
+    private class InMemoryBrokerEndpoint implements BrokerEndpoint {
+
+        private final ScheduledExecutorService broadcastScheduler = Clocks.getDefault().newScheduledExecutor(1);
+
+        @Override
+        public RoutableMessage prepare(ProcessMessage message) {
+            return new UnserializedMessage(message);
+        }
+
+        @Override
+        public void send(RoutableMessage message, int destination) {
+            getProcessMailbox(destination).offer(((UnserializedMessage) message).getMessage());
+        }
+
+        @Override
+        public void broadcast(RoutableMessage message, long[] delays) {
+            final BrokeredMessage brokeredMessage = ((UnserializedMessage) message).getMessage();
+            for (int i = 0; i < delays.length; i++) {
+                if (delays[i] < 0) {
+                    continue;
+                }
+                final Mailbox mailbox = getProcessMailbox(i + 1);
+                broadcastScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        mailbox.offer(brokeredMessage);
+                    }
+                }, delays[i], TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void close() {
+            broadcastScheduler.shutdownNow();
+            for (Mailbox brokerMailbox : brokerMailboxes) {
+                brokerMailbox.unbind();
+                brokerMailbox.clear();
+            }
+            for (Mailbox mailbox : processMailboxes.values()) {
+                mailbox.clear();
+            }
+        }
+    }
+
+    /**
+     * A process' (or client's) endpoint, delivering straight into the mailbox of one of the broker's ingress shards.
+     */
+    private class InMemoryEndpoint implements Endpoint {
+
+        /**
+         * Mailbox of the process, null for clients that don't receive messages.
+         */
+        private final Mailbox mailbox;
+
+        /**
+         * Mailbox of the broker's ingress shard this endpoint sends to.
+         */
+        private final Mailbox brokerMailbox;
+
+        private InMemoryEndpoint(Mailbox mailbox, Mailbox brokerMailbox) {
+            this.mailbox = mailbox;
+            this.brokerMailbox = brokerMailbox;
+        }
+
+        @Override
+        public void send(BrokeredMessage message) {
+            brokerMailbox.offer(message);
+        }
+
+        @Override
+        public void close() {
+            if (mailbox != null) {
+                mailbox.unbind();
+            }
+        }
+    }
+}
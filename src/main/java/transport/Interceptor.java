@@ -0,0 +1,20 @@
+package transport;
+
+/**
+ * Fault and delay injection local to the sending process, for transports that carry messages between processes
+ * directly, without the broker in between (see {@link NioTransport}).
+ * <p/>
+ * Implementations must be thread-safe.
+ */
+public interface Interceptor {
+
+    /**
+     * Intercept a process-to-process message about to be sent to one of its destinations.
+     *
+     * @param message     about to be sent.
+     * @param destination ID of the destination process.
+     * @return delay in ms after which the message is sent, 0 to send it at once, negative to drop it. Delayed messages
+     * are sent in the order they are due, those due at the same time in the order they have been intercepted.
+     */
+    long intercept(RoutableMessage message, int destination);
+}
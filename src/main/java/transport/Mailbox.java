@@ -0,0 +1,211 @@
+package transport;
+
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.MessageExpiry;
+import message.TimestampedMessage;
+import message.internal.BrokeredMessage;
+import org.apache.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A multiple-producer, single-consumer queue of messages for a single endpoint. Messages are buffered until
+ * a listener is bound, then handed over to it by a dedicated thread that parks while the queue is empty.
+ * With the heartbeat lane, heartbeats are queued separately and handed over first.
+ * <p/>
+ * The mailbox can be bounded, in which case producers offering messages to a full mailbox wait until there is space,
+ * pushing back on whoever delivers the messages, until there is space or the listener is unbound (then the message is
+ * dropped). Heartbeats in the heartbeat lane are exempt. The mailbox keeps track
+ * of its depth and of the time messages spend in it.
+ * <p/>
+ * This class is thread-safe.
+ */
+class Mailbox implements Runnable {
+    private static final Logger LOG = Logger.getLogger(Mailbox.class);
+
+    private static final long SPACE_CHECK_INTERVAL_MS = 100;
+
+    private final String name;
+    private final boolean heartbeatLane;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+    private final Queue<Entry> heartbeatQueue = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * Free space in the queue, null when unbounded.
+     */
+    private final Semaphore space;
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong handedOver = new AtomicLong();
+    private final AtomicLong totalTimeInMailboxNs = new AtomicLong();
+
+    private volatile TransportListener listener;
+    private volatile Thread consumer;
+
+    /**
+     * True once the listener has been unbound, so that producers no longer wait for space.
+     */
+    private volatile boolean unbound;
+
+    Mailbox(String name, boolean heartbeatLane) {
+        this(name, heartbeatLane, Integer.MAX_VALUE);
+    }
+
+    Mailbox(String name, boolean heartbeatLane, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive!");
+        }
+        this.name = name;
+        this.heartbeatLane = heartbeatLane;
+        this.space = capacity == Integer.MAX_VALUE ? null : new Semaphore(capacity);
+    }
+
+    void offer(BrokeredMessage message) {
+        boolean heartbeat = heartbeatLane && message instanceof HeartbeatMessage;
+        if (!heartbeat && space != null && !awaitSpace()) {
+            return; //nobody listening any more
+        }
+
+        int currentDepth = depth.incrementAndGet(); //before the consumer can see the message
+        int currentMaxDepth;
+        while (currentDepth > (currentMaxDepth = maxDepth.get()) && !maxDepth.compareAndSet(currentMaxDepth, currentDepth)) {
+            //lost a race with another producer, retry
+        }
+
+        (heartbeat ? heartbeatQueue : queue).offer(new Entry(message));
+        LockSupport.unpark(consumer); //no-op when null
+    }
+
+    private boolean awaitSpace() {
+        try {
+            while (!space.tryAcquire(SPACE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (unbound) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    synchronized void bind(TransportListener listener) {
+        if (consumer != null) {
+            LOG.warn("Something is wrong: mailbox of " + name + " bound more than once!");
+            return;
+        }
+        this.listener = listener;
+        unbound = false;
+        consumer = new Thread(this, "mailbox-" + name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    synchronized void unbind() {
+        Thread thread = consumer;
+        consumer = null;
+        listener = null;
+        unbound = true;
+        LockSupport.unpark(thread);
+    }
+
+    void clear() {
+        while (poll() != null) {
+            //discard
+        }
+    }
+
+    /**
+     * Get the number of messages currently in the mailbox.
+     *
+     * @return depth.
+     */
+    int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Get the largest number of messages that have been in the mailbox at once.
+     *
+     * @return maximum depth.
+     */
+    int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Get the mean time messages handed over so far have spent in the mailbox.
+     *
+     * @return mean time in nanoseconds, 0 if none handed over yet.
+     */
+    long getMeanTimeInMailboxNs() {
+        long count = handedOver.get();
+        return count == 0 ? 0 : totalTimeInMailboxNs.get() / count;
+    }
+
+    private Entry poll() {
+        Entry entry = heartbeatQueue.poll();
+        if (entry == null) {
+            entry = queue.poll();
+            if (entry != null && space != null) {
+                space.release();
+            }
+        }
+        if (entry != null) {
+            depth.decrementAndGet();
+        }
+        return entry;
+    }
+
+    @Override
+    public void run() {
+        Thread self = Thread.currentThread();
+        while (consumer == self) {
+            Entry entry = poll();
+            if (entry == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            TransportListener currentListener = listener;
+            if (currentListener == null || consumer != self) {
+                return; //unbound while polling, message discarded like the rest of the mailbox
+            }
+            totalTimeInMailboxNs.addAndGet(System.nanoTime() - entry.offeredNs);
+            handedOver.incrementAndGet();
+
+            BrokeredMessage message = entry.message;
+            if (message instanceof TimestampedMessage
+                    && MessageExpiry.getDefault().isExpired(message.getClass(), ((TimestampedMessage) message).getTimestamp())) {
+                continue; //went stale waiting in the mailbox
+            }
+
+            try {
+                currentListener.onMessage(message);
+            } catch (RuntimeException e) {
+                LOG.error("Error handling message in mailbox of " + name + "!", e);
+            }
+        }
+    }
+
+    /**
+     * A message in the mailbox and the time it was offered.
+     */
+    private static class Entry {
+
+        private final BrokeredMessage message;
+        private final long offeredNs = System.nanoTime();
+
+        private Entry(BrokeredMessage message) {
+            this.message = message;
+        }
+    }
+}
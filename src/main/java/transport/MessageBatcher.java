@@ -0,0 +1,211 @@
+package transport;
+
+import org.apache.activemq.util.ByteSequence;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs encoded messages into envelopes, so that many small messages cost a single send (see
+ * {@link ActiveMqTransport#setBatching(int, long)}). An envelope is flushed when it holds the maximum number of
+ * messages, or the maximum delay after its first message was added, whichever comes first.
+ * <p/>
+ * An envelope consists of the number of messages, followed by each message's routing headers (kind, source and
+ * destination), the length of its body, and the body itself. Unpacking an envelope (see
+ * {@link #unpack(ByteSequence, Handler)}) doesn't copy the bodies.
+ * <p/>
+ * Envelopes are flushed in the order they were filled, one at a time, but not while holding the lock on the batcher,
+ * so that messages can be added to the next envelope while the previous one is being sent. This class is thread-safe.
+ */
+class MessageBatcher {
+
+    /**
+     * Sender of full (or timed-out) envelopes.
+     */
+    interface Flusher {
+
+        /**
+         * Send an envelope. Called by one thread at a time, in the order the envelopes were filled, without the lock on
+         * the batcher held.
+         *
+         * @param envelope to send.
+         */
+        void flush(byte[] envelope);
+    }
+
+    /**
+     * Receiver of unpacked messages.
+     */
+    interface Handler {
+
+        /**
+         * Handle a message unpacked from an envelope.
+         *
+         * @param kind        of the message.
+         * @param source      of the message.
+         * @param destination of the message.
+         * @param body        encoded message, backed by the envelope.
+         */
+        void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body);
+    }
+
+    private static final int ENVELOPE_HEADER_SIZE = 4;
+    private static final int ENTRY_HEADER_SIZE = 1 + 4 + 4 + 4;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final int maxBatchSize;
+    private final long maxBatchDelayMs;
+    private final ScheduledExecutorService scheduler;
+    private final Flusher flusher;
+    private final Runnable timedFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Envelopes filled but not sent yet, in order.
+     */
+    private final Queue<byte[]> packed = new ConcurrentLinkedQueue<byte[]>();
+
+    /**
+     * Held while sending, so that envelopes are sent one at a time.
+     */
+    private final Object sendLock = new Object();
+
+    //guarded by this
+    private ByteBuffer envelope = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private int size;
+    private ScheduledFuture<?> pendingFlush;
+
+    /**
+     * Construct a new batcher.
+     *
+     * @param maxBatchSize    maximum number of messages in an envelope.
+     * @param maxBatchDelayMs maximum time a message waits for its envelope to be flushed.
+     * @param scheduler       for timed flushes.
+     * @param flusher         sending envelopes.
+     */
+    MessageBatcher(int maxBatchSize, long maxBatchDelayMs, ScheduledExecutorService scheduler, Flusher flusher) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMs = maxBatchDelayMs;
+        this.scheduler = scheduler;
+        this.flusher = flusher;
+        envelope.position(ENVELOPE_HEADER_SIZE);
+    }
+
+    /**
+     * Add a message to the current envelope, flushing it if full.
+     *
+     * @param message headers of the message.
+     * @param body    encoded message.
+     */
+    void add(RoutableMessage message, ByteSequence body) {
+        synchronized (this) {
+            ensureRemaining(ENTRY_HEADER_SIZE + body.getLength());
+            envelope.put((byte) message.getKind().ordinal());
+            envelope.putInt(message.getSource());
+            envelope.putInt(message.getDestination());
+            envelope.putInt(body.getLength());
+            envelope.put(body.getData(), body.getOffset(), body.getLength());
+            size++;
+
+            if (size >= maxBatchSize) {
+                pack();
+            } else if (size == 1) {
+                try {
+                    pendingFlush = scheduler.schedule(timedFlush, maxBatchDelayMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    pack(); //shutting down, don't hold messages back
+                }
+            }
+        }
+        if (!packed.isEmpty()) {
+            sendPacked();
+        }
+    }
+
+    /**
+     * Flush the current envelope, if it holds any messages. When this method returns, the envelope has been sent.
+     */
+    void flush() {
+        synchronized (this) {
+            pack();
+        }
+        sendPacked();
+    }
+
+    //caller holds the lock on this.
+    private void pack() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (size == 0) {
+            return;
+        }
+
+        envelope.putInt(0, size);
+        byte[] filled = new byte[envelope.position()];
+        System.arraycopy(envelope.array(), 0, filled, 0, filled.length);
+        envelope.clear();
+        envelope.position(ENVELOPE_HEADER_SIZE);
+        size = 0;
+
+        packed.offer(filled);
+    }
+
+    //whoever holds the send lock sends all envelopes packed so far, including those packed by others meanwhile.
+    private void sendPacked() {
+        synchronized (sendLock) {
+            byte[] next;
+            while ((next = packed.poll()) != null) {
+                flusher.flush(next);
+            }
+        }
+    }
+
+    private void ensureRemaining(int length) {
+        if (envelope.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * envelope.capacity(), envelope.position() + length));
+            envelope.flip();
+            larger.put(envelope);
+            envelope = larger;
+        }
+    }
+
+    /**
+     * Unpack an envelope.
+     *
+     * @param envelope to unpack.
+     * @param handler  of each message, in the order they were added.
+     * @throws IllegalArgumentException if the envelope is malformed.
+     */
+    static void unpack(ByteSequence envelope, Handler handler) {
+        ByteBuffer buffer = ByteBuffer.wrap(envelope.getData(), envelope.getOffset(), envelope.getLength());
+        RoutableMessage.Kind[] kinds = RoutableMessage.Kind.values();
+        try {
+            int size = buffer.getInt();
+            for (int i = 0; i < size; i++) {
+                int kind = buffer.get();
+                int source = buffer.getInt();
+                int destination = buffer.getInt();
+                int length = buffer.getInt();
+                if (kind < 0 || kind >= kinds.length || length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Malformed envelope!");
+                }
+                handler.handle(kinds[kind], source, destination, new ByteSequence(envelope.getData(), buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated envelope!", e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package transport;
+
+import message.HeartbeatMessage;
+import message.ProcessToProcessMessage;
+import message.internal.BrokeredMessage;
+import message.internal.CutLinkMessage;
+import message.internal.FailMessage;
+import message.internal.HealLinkMessage;
+import message.internal.LinkMessage;
+import message.internal.PartitionMessage;
+import message.internal.ProcessMessage;
+import message.internal.ReadyMessage;
+import message.internal.ResurrectMessage;
+
+/**
+ * Derives the routing headers of a {@link RoutableMessage} (kind, source and destination) from the message it carries.
+ * Used on the sending side only, so that the broker, which routes on the headers, never needs to know the message
+ * classes.
+ * <p/>
+ * This class has no state, all methods are static.
+ */
+final class MessageClassifier {
+
+    private MessageClassifier() {
+    }
+
+    /**
+     * Get the kind of a message.
+     *
+     * @param message to classify.
+     * @return kind.
+     */
+    static RoutableMessage.Kind kindOf(BrokeredMessage message) {
+        if (message instanceof ReadyMessage) {
+            return RoutableMessage.Kind.READY;
+        } else if (message instanceof HeartbeatMessage) {
+            return RoutableMessage.Kind.HEARTBEAT;
+        } else if (message instanceof ProcessToProcessMessage) {
+            return RoutableMessage.Kind.PROCESS_TO_PROCESS;
+        } else if (message instanceof FailMessage) {
+            return RoutableMessage.Kind.FAIL;
+        } else if (message instanceof ResurrectMessage) {
+            return RoutableMessage.Kind.RESURRECT;
+        } else if (message instanceof CutLinkMessage) {
+            return RoutableMessage.Kind.CUT_LINK;
+        } else if (message instanceof HealLinkMessage) {
+            return RoutableMessage.Kind.HEAL_LINK;
+        } else if (message instanceof LinkMessage) {
+            return RoutableMessage.Kind.LINK_FAULTS;
+        } else if (message instanceof PartitionMessage) {
+            return RoutableMessage.Kind.PARTITION;
+        }
+        return RoutableMessage.Kind.OTHER;
+    }
+
+    /**
+     * Get the ID of the source process of a message.
+     *
+     * @param message to classify.
+     * @return source, 0 if none.
+     */
+    static int sourceOf(BrokeredMessage message) {
+        if (message instanceof LinkMessage) {
+            return ((LinkMessage) message).getSource();
+        }
+        return message instanceof ProcessMessage ? ((ProcessMessage) message).getSource() : 0;
+    }
+
+    /**
+     * Get the ID of the destination process of a message.
+     *
+     * @param message to classify.
+     * @return destination, 0 if none.
+     */
+    static int destinationOf(BrokeredMessage message) {
+        if (message instanceof ProcessToProcessMessage) {
+            return ((ProcessToProcessMessage) message).getDestination();
+        } else if (message instanceof FailMessage) {
+            return ((FailMessage) message).getProcessId();
+        } else if (message instanceof ResurrectMessage) {
+            return ((ResurrectMessage) message).getProcessId();
+        } else if (message instanceof LinkMessage) {
+            return ((LinkMessage) message).getDestination();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,243 @@
+package transport;
+
+import clock.Clocks;
+import listener.MessageListener;
+import message.HeartbeatMessage;
+import message.MessageCodec;
+import message.MessageExpiry;
+import message.internal.BrokeredMessage;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A channel carrying {@link HeartbeatMessage}s as UDP multicast datagrams on the loopback interface, instead of over
+ * the {@link Transport} together with all other messages. A heartbeat is sent once, no matter how many processes
+ * there are, and the operating system delivers a copy to every member of the group. Heartbeats are tolerant of loss,
+ * so UDP's lack of reliability doesn't matter.
+ * <p/>
+ * Each heartbeat is a single datagram of {@link #DATAGRAM_SIZE} bytes: the heartbeat encoded by {@link MessageCodec},
+ * padded with zeros. Every member has a receiver thread that hands heartbeats from other processes directly to its
+ * listener, without going through the receiving process.
+ * <p/>
+ * The broker never sees heartbeats on this channel, so it can't delay or drop them. Instead, an optional
+ * {@link Interceptor} (see {@link #setInterceptor(Interceptor)}) is consulted by the receiver for every heartbeat.
+ * <p/>
+ * The default channel, used by failure detectors (see {@link detector.StronglyCompleteFailureDetector}), is null,
+ * i.e. heartbeats travel over the transport unless configured otherwise.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class MulticastHeartbeatChannel {
+    private static final Logger LOG = Logger.getLogger(MulticastHeartbeatChannel.class);
+
+    /**
+     * Size of every datagram, enough for the largest encoded heartbeat (version, type, source and timestamp).
+     */
+    public static final int DATAGRAM_SIZE = 16;
+    public static final String DEFAULT_GROUP = "239.255.42.99";
+
+    private static final String LOOPBACK = "127.0.0.1";
+
+    private static volatile MulticastHeartbeatChannel defaultChannel;
+
+    private final InetAddress group;
+    private final int port;
+
+    private volatile Interceptor interceptor;
+
+    /**
+     * Get the default channel.
+     *
+     * @return default channel, null if heartbeats travel over the transport.
+     */
+    public static MulticastHeartbeatChannel getDefault() {
+        return defaultChannel;
+    }
+
+    /**
+     * Set the default channel. Only affects failure detectors started afterwards.
+     *
+     * @param channel new default channel, null for heartbeats to travel over the transport.
+     */
+    public static void setDefault(MulticastHeartbeatChannel channel) {
+        defaultChannel = channel;
+    }
+
+    /**
+     * Construct a new channel using the {@link #DEFAULT_GROUP}.
+     *
+     * @param port UDP port of the channel.
+     */
+    public MulticastHeartbeatChannel(int port) {
+        this(DEFAULT_GROUP, port);
+    }
+
+    /**
+     * Construct a new channel.
+     *
+     * @param group multicast group address.
+     * @param port  UDP port of the channel.
+     */
+    public MulticastHeartbeatChannel(String group, int port) {
+        try {
+            this.group = InetAddress.getByName(group);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid multicast group " + group + "!", e);
+        }
+        this.port = port;
+    }
+
+    /**
+     * Set the interceptor consulted by receivers for every heartbeat.
+     *
+     * @param interceptor new interceptor, null for none.
+     */
+    public void setInterceptor(Interceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    /**
+     * Join the channel.
+     *
+     * @param processId         ID of the joining process.
+     * @param numberOfProcesses total number of processes in the ensemble, heartbeats from others are ignored.
+     * @param listener          to be notified about heartbeats from other processes.
+     * @return endpoint through which the process can send heartbeats, null if the channel could not be joined.
+     */
+    public Endpoint join(int processId, int numberOfProcesses, MessageListener listener) {
+        try {
+            MulticastSocket socket = new MulticastSocket(port);
+            socket.setNetworkInterface(NetworkInterface.getByInetAddress(InetAddress.getByName(LOOPBACK)));
+            socket.setTimeToLive(0); //never leave the host
+            socket.setLoopbackMode(false); //i.e. do loop back
+            socket.joinGroup(group);
+            return new MulticastEndpoint(processId, numberOfProcesses, socket, listener);
+        } catch (IOException e) {
+            LOG.fatal("Failed to join heartbeat channel " + group + ":" + port + ".", e);
+            return null;
+        }
+    }
+
+    /**
+     * A member of the channel, sending heartbeats through a reused datagram and receiving them on its own thread.
+     */
+    private class MulticastEndpoint implements Endpoint, Runnable {
+
+        private final int processId;
+        private final int numberOfProcesses;
+        private final MulticastSocket socket;
+        private final MessageListener listener;
+        private final Thread receiver;
+        private final ScheduledExecutorService scheduler = Clocks.getDefault().newScheduledExecutor(1);
+
+        //only accessed by senders holding the lock on this endpoint
+        private final byte[] sendData = new byte[DATAGRAM_SIZE];
+        private final DatagramPacket sendPacket;
+
+        private MulticastEndpoint(int processId, int numberOfProcesses, MulticastSocket socket, MessageListener listener) {
+            this.processId = processId;
+            this.numberOfProcesses = numberOfProcesses;
+            this.socket = socket;
+            this.listener = listener;
+            this.sendPacket = new DatagramPacket(sendData, DATAGRAM_SIZE, group, port);
+            receiver = new Thread(this, "heartbeats-process " + processId);
+            receiver.setDaemon(true);
+            receiver.start();
+        }
+
+        @Override
+        public synchronized void send(BrokeredMessage message) {
+            if (!(message instanceof HeartbeatMessage)) {
+                LOG.error("Incompatible message sent! Only HeartbeatMessage supported.");
+                return;
+            }
+            byte[] body = MessageCodec.encode(message);
+            Arrays.fill(sendData, (byte) 0);
+            System.arraycopy(body, 0, sendData, 0, body.length);
+            try {
+                socket.send(sendPacket);
+            } catch (IOException e) {
+                LOG.error("Error sending heartbeat!", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(DATAGRAM_SIZE);
+            DatagramPacket packet = new DatagramPacket(buffer.array(), DATAGRAM_SIZE);
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(DATAGRAM_SIZE);
+                    socket.receive(packet);
+                } catch (SocketException e) {
+                    return; //closed
+                } catch (IOException e) {
+                    LOG.error("Failed to receive heartbeat!", e);
+                    continue;
+                }
+
+                buffer.clear();
+                if (packet.getLength() != DATAGRAM_SIZE || MessageCodec.peekType(buffer) != HeartbeatMessage.class) {
+                    LOG.error("Incompatible datagram received on heartbeat channel!");
+                    continue;
+                }
+                if (MessageExpiry.getDefault().isExpired(HeartbeatMessage.class, MessageCodec.peekTimestamp(buffer))) {
+                    continue; //stale, not worth decoding
+                }
+                HeartbeatMessage heartbeat = (HeartbeatMessage) MessageCodec.decode(buffer);
+                if (heartbeat == null || heartbeat.getSource() == processId || heartbeat.getSource() < 1 || heartbeat.getSource() > numberOfProcesses) {
+                    continue; //own heartbeat looped back, or another ensemble's
+                }
+                try {
+                    deliver(heartbeat);
+                } catch (RuntimeException e) {
+                    LOG.error("Error handling heartbeat!", e); //keep receiving
+                }
+            }
+        }
+
+        private void deliver(final HeartbeatMessage heartbeat) {
+            Interceptor currentInterceptor = interceptor;
+            long delay = currentInterceptor == null ? 0 : currentInterceptor.intercept(new UnserializedMessage(heartbeat), processId);
+            if (delay < 0) {
+                return; //dropped
+            }
+            if (delay == 0) {
+                listener.receive(heartbeat);
+                return;
+            }
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.receive(heartbeat);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                //closed, heartbeats no longer delivered
+            }
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            try {
+                socket.leaveGroup(group);
+            } catch (IOException e) {
+                LOG.error("Failed to leave heartbeat channel!", e);
+            }
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,719 @@
+package transport;
+
+import clock.Clocks;
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.MessageCodec;
+import message.MessageExpiry;
+import message.ProcessToProcessMessage;
+import message.internal.BrokeredMessage;
+import message.internal.ProcessMessage;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static broker.ActiveMqBroker.BROADCAST_DESTINATION;
+
+/**
+ * A {@link Transport} over non-blocking TCP sockets, on which processes send messages to each other directly rather
+ * than through the broker. This halves the number of hops of every message and takes the broker out of the data path.
+ * <p/>
+ * The broker and every process listen on their own address, known to everyone (so that processes can run in separate
+ * JVMs on the same host or LAN). {@link ProcessToProcessMessage}s go straight to their destinations (broadcasts to all
+ * other processes), all other messages (readiness and failure injection) go to the broker. A process thus only hears
+ * from the broker when everybody is ready.
+ * <p/>
+ * All sockets of a transport are served by a single selector thread. Messages are encoded with {@link MessageCodec}
+ * once per message and framed with a 4-byte length prefix. Each connection has a direct buffer that is reused for
+ * every frame. Connections are opened on demand and re-opened when lost; messages to a process are buffered until it
+ * listens. Received messages are handed over to the receiver by its own thread (see {@link Mailbox}), so that a slow
+ * receiver doesn't hold up the selector.
+ * <p/>
+ * Since the broker no longer sees process-to-process messages, it can't delay or drop them. Instead, an optional
+ * {@link Interceptor} (see {@link #setInterceptor(Interceptor)}) is consulted by the sender for every destination.
+ * Without one, messages are sent as fast as the network allows.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class NioTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger(NioTransport.class);
+
+    /**
+     * Size of each connection's buffer, grown for larger incoming frames.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int FRAME_HEADER_SIZE = 4;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final long RECONNECT_DELAY_MS = 100;
+    private static final String LOOPBACK = "127.0.0.1";
+
+    private final InetSocketAddress brokerAddress;
+    private final InetSocketAddress[] processAddresses;
+
+    private final Selector selector;
+    private final Thread selectorThread;
+
+    /**
+     * Work to be done by the selector thread, which owns all channels.
+     */
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Outgoing connections, keyed by remote address and shared by all senders in this JVM.
+     */
+    private final ConcurrentMap<InetSocketAddress, Connection> connections = new ConcurrentHashMap<InetSocketAddress, Connection>();
+
+    /**
+     * Schedules delayed messages and reconnects.
+     */
+    private final ScheduledExecutorService scheduler = Clocks.getDefault().newScheduledExecutor(1);
+
+    private volatile Interceptor interceptor;
+    private volatile boolean running = true;
+
+    /**
+     * Construct a new transport for an ensemble on this host, with the broker listening on the base port and process
+     * with ID i on base port + i.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param basePort          port of the broker.
+     */
+    public NioTransport(int numberOfProcesses, int basePort) {
+        this(new InetSocketAddress(LOOPBACK, basePort), loopbackAddresses(numberOfProcesses, basePort));
+    }
+
+    /**
+     * Construct a new transport.
+     *
+     * @param brokerAddress    address of the broker.
+     * @param processAddresses addresses of processes, indexed by process ID - 1.
+     */
+    public NioTransport(InetSocketAddress brokerAddress, InetSocketAddress[] processAddresses) {
+        this.brokerAddress = brokerAddress;
+        this.processAddresses = processAddresses.clone();
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            LOG.fatal("Failed to open selector.", e);
+            throw new IllegalStateException(e);
+        }
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        }, "nio-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    private static InetSocketAddress[] loopbackAddresses(int numberOfProcesses, int basePort) {
+        InetSocketAddress[] addresses = new InetSocketAddress[numberOfProcesses];
+        for (int i = 0; i < numberOfProcesses; i++) {
+            addresses[i] = new InetSocketAddress(LOOPBACK, basePort + i + 1);
+        }
+        return addresses;
+    }
+
+    /**
+     * Set the interceptor consulted by senders for every process-to-process message and destination.
+     *
+     * @param interceptor new interceptor, null for none.
+     */
+    public void setInterceptor(Interceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    /**
+     * Close all sockets and stop the selector thread. Messages not yet sent are discarded.
+     */
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+        selector.wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BrokerEndpoint bindBroker(int numberOfProcesses, final BrokerListener listener) {
+        Mailbox mailbox = new Mailbox("broker", true);
+        mailbox.bind(new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                listener.onMessage(new UnserializedMessage(message));
+            }
+        });
+        return new NioBrokerEndpoint(mailbox, listen(brokerAddress, mailbox));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectProcess(int processId, TransportListener listener) {
+        if (processId < 1 || processId > processAddresses.length) {
+            throw new IllegalArgumentException("No address for process " + processId + "!");
+        }
+        Mailbox mailbox = new Mailbox("process " + processId, true);
+        mailbox.bind(listener);
+        return new NioEndpoint(processId, mailbox, listen(processAddresses[processId - 1], mailbox));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectClient() {
+        return new NioEndpoint(0, null, null);
+    }
+
+    private Acceptor listen(InetSocketAddress address, Mailbox mailbox) {
+        try {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address);
+            final Acceptor acceptor = new Acceptor(channel, mailbox);
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    acceptor.register();
+                }
+            });
+            return acceptor;
+        } catch (IOException e) {
+            LOG.fatal("Failed to listen on " + address + ".", e);
+            return null;
+        }
+    }
+
+    private Connection getConnection(InetSocketAddress address) {
+        Connection connection = connections.get(address);
+        if (connection == null) {
+            Connection newConnection = new Connection(address);
+            connection = connections.putIfAbsent(address, newConnection);
+            if (connection == null) {
+                connection = newConnection;
+            }
+        }
+        return connection;
+    }
+
+    //sends the same encoded body to each destination, after the interceptor's delay.
+    private void sendToProcess(final byte[] body, RoutableMessage message, int destination) {
+        Interceptor currentInterceptor = interceptor;
+        long delay = currentInterceptor == null ? 0 : currentInterceptor.intercept(message, destination);
+        if (delay < 0) {
+            return; //dropped
+        }
+
+        final Connection connection = getConnection(processAddresses[destination - 1]);
+        if (delay == 0) {
+            connection.send(body);
+            return;
+        }
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    connection.send(body);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //shutting down, messages no longer delivered
+        }
+    }
+
+    private void execute(Runnable task) {
+        selectorTasks.offer(task);
+        selector.wakeup();
+    }
+
+    private void select() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                LOG.error("Failed to select!", e);
+                continue;
+            }
+
+            Runnable task;
+            while ((task = selectorTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Error handling socket!", e);
+                }
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isValid()) {
+                        ((ChannelHandler) key.attachment()).ready(key);
+                    }
+                } catch (CancelledKeyException e) {
+                    //closed concurrently
+                } catch (RuntimeException e) {
+                    LOG.error("Error handling socket!", e);
+                }
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((ChannelHandler) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.error("Failed to close selector!", e);
+        }
+    }
+
+    /**
+     * Handler of a channel's readiness, attached to its key. Only ever called by the selector thread.
+     */
+    private interface ChannelHandler {
+
+        /**
+         * Handle the channel being ready for the operations of interest.
+         *
+         * @param key of the channel.
+         */
+        void ready(SelectionKey key);
+
+        /**
+         * Close the channel.
+         */
+        void close();
+    }
+
+    /**
+     * Accepts connections on a listening socket, for an endpoint's mailbox.
+     */
+    private class Acceptor implements ChannelHandler {
+
+        private final ServerSocketChannel channel;
+        private final Mailbox mailbox;
+
+        private Acceptor(ServerSocketChannel channel, Mailbox mailbox) {
+            this.channel = channel;
+            this.mailbox = mailbox;
+        }
+
+        private void register() {
+            try {
+                channel.register(selector, SelectionKey.OP_ACCEPT, this);
+            } catch (ClosedChannelException e) {
+                //closed before registered
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                SocketChannel accepted = channel.accept();
+                if (accepted == null) {
+                    return;
+                }
+                accepted.configureBlocking(false);
+                accepted.socket().setTcpNoDelay(true);
+                accepted.register(selector, SelectionKey.OP_READ, new Inbound(accepted, mailbox));
+            } catch (IOException e) {
+                LOG.error("Failed to accept connection!", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close listening socket!", e);
+            }
+        }
+    }
+
+    /**
+     * An incoming connection, decoding frames into an endpoint's mailbox.
+     */
+    private class Inbound implements ChannelHandler {
+
+        private final SocketChannel channel;
+        private final Mailbox mailbox;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Inbound(SocketChannel channel, Mailbox mailbox) {
+            this.channel = channel;
+            this.mailbox = mailbox;
+        }
+
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                if (channel.read(buffer) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                LOG.debug("Incoming connection lost.", e);
+                close();
+                return;
+            }
+
+            buffer.flip();
+            while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+                int length = buffer.getInt(buffer.position());
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    LOG.error("Invalid frame of " + length + " bytes received!");
+                    close();
+                    return;
+                }
+                if (buffer.remaining() < FRAME_HEADER_SIZE + length) {
+                    if (FRAME_HEADER_SIZE + length > buffer.capacity()) { //grow to fit, the rest of the frame follows
+                        ByteBuffer larger = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE + length);
+                        larger.put(buffer);
+                        buffer = larger;
+                        return;
+                    }
+                    break;
+                }
+
+                ByteBuffer frame = buffer.duplicate();
+                frame.position(buffer.position() + FRAME_HEADER_SIZE);
+                frame.limit(frame.position() + length);
+                buffer.position(frame.limit());
+                receive(frame);
+            }
+            buffer.compact();
+        }
+
+        private void receive(ByteBuffer frame) {
+            if (MessageExpiry.getDefault().isExpired(MessageCodec.peekType(frame), MessageCodec.peekTimestamp(frame))) {
+                return; //stale, not worth decoding
+            }
+            BrokeredMessage message = MessageCodec.decode(frame);
+            if (message != null) {
+                mailbox.offer(message);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close connection!", e);
+            }
+        }
+    }
+
+    /**
+     * An outgoing connection to a remote address. Frames are queued by any thread and written by the selector thread,
+     * through a reused direct buffer. A single wake-up of the selector is pending at any time, no matter how many
+     * frames are queued.
+     */
+    private class Connection implements ChannelHandler {
+
+        private final InetSocketAddress address;
+        private final Queue<byte[]> frames = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled.set(false);
+                flush();
+            }
+        };
+
+        //only accessed by the selector thread
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private SocketChannel channel;
+        private SelectionKey key;
+        private boolean connected;
+        private byte[] current;
+        private int offset;
+        private final Deque<byte[]> retries = new ArrayDeque<byte[]>(); //taken before frames
+        private final Deque<byte[]> unwritten = new ArrayDeque<byte[]>(); //copied into the buffer, not fully written yet
+        private int writtenOfFirst; //bytes of the first unwritten frame (header included) already written
+
+        private Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private void send(byte[] body) {
+            frames.offer(body);
+            if (flushScheduled.compareAndSet(false, true)) {
+                execute(flush);
+            }
+        }
+
+        private void flush() {
+            if (channel == null) {
+                connect();
+            } else if (connected) {
+                write();
+            }
+        }
+
+        private void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connected = channel.connect(address);
+                key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+                if (connected) {
+                    write();
+                }
+            } catch (IOException e) {
+                reconnect(e);
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                if (!connected && key.isConnectable()) {
+                    connected = channel.finishConnect();
+                    if (!connected) {
+                        return;
+                    }
+                }
+                write();
+            } catch (IOException e) {
+                reconnect(e);
+            }
+        }
+
+        private void write() {
+            try {
+                while (true) {
+                    fill();
+                    buffer.flip();
+                    written(channel.write(buffer));
+                    buffer.compact();
+                    if (buffer.position() > 0) {
+                        key.interestOps(SelectionKey.OP_WRITE); //socket full, carry on when writable
+                        return;
+                    }
+                    if (current == null && retries.isEmpty() && frames.isEmpty()) {
+                        key.interestOps(0);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                reconnect(e);
+            }
+        }
+
+        //copies as many queued frames (length prefix and body) into the buffer as fit.
+        private void fill() {
+            while (true) {
+                if (current == null) {
+                    if (buffer.remaining() < FRAME_HEADER_SIZE || (retries.isEmpty() && frames.isEmpty())) {
+                        return;
+                    }
+                    current = retries.isEmpty() ? frames.poll() : retries.poll();
+                    offset = 0;
+                    buffer.putInt(current.length);
+                    unwritten.addLast(current);
+                }
+                int length = Math.min(buffer.remaining(), current.length - offset);
+                buffer.put(current, offset, length);
+                offset += length;
+                if (offset < current.length) {
+                    return; //buffer full
+                }
+                current = null;
+            }
+        }
+
+        //forgets the frames fully written to the socket.
+        private void written(int bytes) {
+            writtenOfFirst += bytes;
+            while (!unwritten.isEmpty() && writtenOfFirst >= FRAME_HEADER_SIZE + unwritten.peekFirst().length) {
+                writtenOfFirst -= FRAME_HEADER_SIZE + unwritten.pollFirst().length;
+            }
+        }
+
+        //frames not fully written to the socket (in the buffer, or partially written) are sent again, before the ones
+        //queued, once reconnected. Frames fully written to the old socket may still be lost.
+        private void reconnect(IOException e) {
+            LOG.debug("Connection to " + address + " failed, reconnecting.", e);
+            close();
+            channel = null;
+            connected = false;
+            current = null;
+            buffer.clear();
+            while (!unwritten.isEmpty()) {
+                retries.addFirst(unwritten.pollLast());
+            }
+            writtenOfFirst = 0;
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(flush);
+                    }
+                }, RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                //shutting down
+            }
+        }
+
+        @Override
+        public void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close connection!", e);
+            }
+        }
+    }
+
+    /**
+     * The broker's endpoint, sending to processes' addresses.
+     */
+    private class NioBrokerEndpoint implements BrokerEndpoint {
+
+        private final Mailbox mailbox;
+        private final Acceptor acceptor;
+
+        private NioBrokerEndpoint(Mailbox mailbox, Acceptor acceptor) {
+            this.mailbox = mailbox;
+            this.acceptor = acceptor;
+        }
+
+        @Override
+        public RoutableMessage prepare(ProcessMessage message) {
+            return new UnserializedMessage(message);
+        }
+
+        @Override
+        public void send(RoutableMessage message, int destination) {
+            getConnection(processAddresses[destination - 1]).send(MessageCodec.encode(message.decode()));
+        }
+
+        @Override
+        public void broadcast(RoutableMessage message, long[] delays) {
+            final byte[] body = MessageCodec.encode(message.decode());
+            for (int i = 0; i < delays.length; i++) {
+                if (delays[i] < 0) {
+                    continue;
+                }
+                final Connection connection = getConnection(processAddresses[i]);
+                try {
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            connection.send(body);
+                        }
+                    }, delays[i], TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    //shutting down, messages no longer delivered
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            mailbox.unbind();
+            mailbox.clear();
+            closeAcceptor(acceptor);
+        }
+    }
+
+    /**
+     * A process' (or client's) endpoint, sending process-to-process messages to their destinations and all other
+     * messages to the broker.
+     */
+    private class NioEndpoint implements Endpoint {
+
+        /**
+         * ID of the process, 0 for clients.
+         */
+        private final int processId;
+
+        /**
+         * Mailbox of the process, null for clients that don't receive messages.
+         */
+        private final Mailbox mailbox;
+        private final Acceptor acceptor;
+
+        private NioEndpoint(int processId, Mailbox mailbox, Acceptor acceptor) {
+            this.processId = processId;
+            this.mailbox = mailbox;
+            this.acceptor = acceptor;
+        }
+
+        @Override
+        public void send(BrokeredMessage message) {
+            byte[] body = MessageCodec.encode(message);
+            if (!(message instanceof ProcessToProcessMessage)) {
+                getConnection(brokerAddress).send(body);
+                return;
+            }
+
+            RoutableMessage routableMessage = new UnserializedMessage(message);
+            int destination = ((ProcessToProcessMessage) message).getDestination();
+            if (destination != BROADCAST_DESTINATION) {
+                sendToProcess(body, routableMessage, destination);
+                return;
+            }
+            for (int i = 1; i <= processAddresses.length; i++) {
+                if (i != processId) { //don't send to self
+                    sendToProcess(body, routableMessage, i);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (mailbox != null) {
+                mailbox.unbind();
+            }
+            closeAcceptor(acceptor);
+        }
+    }
+
+    private void closeAcceptor(final Acceptor acceptor) {
+        if (acceptor == null) {
+            return;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptor.close();
+            }
+        });
+    }
+}
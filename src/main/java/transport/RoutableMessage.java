@@ -0,0 +1,143 @@
+package transport;
+
+import message.internal.BrokeredMessage;
+
+/**
+ * A message as seen by the broker: routing headers (kind, source and destination) and a body that is opaque
+ * to the broker. The broker routes messages on their headers alone and forwards their bodies untouched, so that
+ * its cost per message is independent of the message's size and type.
+ * <p/>
+ * Each {@link Transport} has its own representation of the body. Transports that need to do expensive work for every
+ * message (such as serialization) do it once, when the message is sent by a process (or prepared by the broker,
+ * see {@link BrokerEndpoint#prepare(message.internal.ProcessMessage)}).
+ * <p/>
+ * Routable messages are immutable.
+ */
+public abstract class RoutableMessage {
+
+    /**
+     * Kinds of messages, as far as the broker is concerned.
+     */
+    public enum Kind {
+        /**
+         * {@link message.internal.ReadyMessage}, source is the process that is ready.
+         */
+        READY,
+        /**
+         * {@link message.ProcessToProcessMessage}, source and destination are the communicating processes.
+         */
+        PROCESS_TO_PROCESS,
+        /**
+         * {@link message.HeartbeatMessage}, a process-to-process message routed like any other, but which the broker
+         * may treat differently (e.g. shed it first when overloaded).
+         */
+        HEARTBEAT,
+        /**
+         * {@link message.internal.FailMessage}, destination is the process to kill.
+         */
+        FAIL,
+        /**
+         * {@link message.internal.ResurrectMessage}, destination is the process to resurrect.
+         */
+        RESURRECT,
+        /**
+         * {@link message.internal.CutLinkMessage}, source and destination are the ends of the link to cut,
+         * or {@link message.internal.LinkMessage#ALL}.
+         */
+        CUT_LINK,
+        /**
+         * {@link message.internal.HealLinkMessage}, source and destination are the ends of the link to heal,
+         * or {@link message.internal.LinkMessage#ALL}.
+         */
+        HEAL_LINK,
+        /**
+         * {@link message.internal.LinkFaultsMessage}, source and destination are the ends of the link,
+         * or {@link message.internal.LinkMessage#ALL}.
+         * The fault parameters are in the body (see {@link RoutableMessage#decode()}).
+         */
+        LINK_FAULTS,
+        /**
+         * {@link message.internal.PartitionMessage}, no source and destination. The groups are in the body (see
+         * {@link RoutableMessage#decode()}).
+         */
+        PARTITION,
+        /**
+         * Any other message, ignored by the broker.
+         */
+        OTHER
+    }
+
+    private final Kind kind;
+    private final int source;
+    private final int destination;
+
+    /**
+     * Construct a new message from its headers, either received, or derived from the message it carries when sent
+     * (see {@link MessageClassifier}).
+     *
+     * @param kind        kind of the message.
+     * @param source      ID of the source process, 0 if none.
+     * @param destination ID of the destination process, 0 if none.
+     */
+    protected RoutableMessage(Kind kind, int source, int destination) {
+        this.kind = kind;
+        this.source = source;
+        this.destination = destination;
+    }
+
+    /**
+     * Get the kind of the message.
+     *
+     * @return kind.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Get the ID of the source process.
+     *
+     * @return source, 0 if none.
+     */
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * Get the ID of the destination process, or {@link broker.ActiveMqBroker#BROADCAST_DESTINATION}.
+     *
+     * @return destination, 0 if none.
+     */
+    public int getDestination() {
+        return destination;
+    }
+
+    /**
+     * Get the message carried, deserializing the body if necessary. The broker only does this for the rare control
+     * messages whose parameters don't fit into the headers.
+     *
+     * @return message, null if the body could not be deserialized.
+     */
+    public abstract BrokeredMessage decode();
+
+    /**
+     * Get the type of the message carried, without deserializing the body.
+     *
+     * @return class of the message, null if unknown without deserializing the body.
+     */
+    public abstract Class<?> getType();
+
+    /**
+     * Get the timestamp of the message carried (see {@link message.TimestampedMessage}), without deserializing the body.
+     *
+     * @return timestamp, -1 if none.
+     */
+    public abstract long getTimestamp();
+
+    /**
+     * Get the size of the message carried, as sent over the wire.
+     *
+     * @return serialized size in bytes.
+     */
+    public abstract int getSize();
+}
@@ -0,0 +1,219 @@
+package transport;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A single-producer, single-consumer ring buffer of encoded messages in a memory-mapped file, so that the producer
+ * and the consumer can live in different JVMs on the same host.
+ * <p/>
+ * The file consists of a header, with the producer's position (tail) and the consumer's position (head) on separate
+ * cache lines, followed by the ring. Positions only ever grow; their remainder modulo the capacity is the index into
+ * the ring. A record is a 4-byte length followed by the encoded message, padded to a multiple of 4 bytes. A record
+ * that doesn't fit before the end of the ring is preceded by a padding marker and wraps around to the start.
+ * <p/>
+ * The producer publishes records by advancing the tail after writing them, the consumer frees them by advancing
+ * the head after reading them. Positions are written with release semantics and read with acquire semantics
+ * ({@link sun.misc.Unsafe#putOrderedLong(Object, long, long)} and {@link sun.misc.Unsafe#getLongVolatile(Object, long)}
+ * on the address of the mapping), so that records are visible to the consumer no earlier than the tail that covers
+ * them, and are not overwritten by the producer before the head has moved past them, on any hardware. The header also
+ * holds a flag through which the consumer tells the producer that it is no longer receiving.
+ * <p/>
+ * The file must not exist (or be empty) when the ring is first opened. Once created, it is opened by both sides.
+ * <p/>
+ * This class is not thread-safe: there must be a single producer thread (or producers holding a common lock) and
+ * a single consumer thread.
+ */
+class SharedMemoryRing {
+
+    /**
+     * The consumer of records.
+     */
+    interface Handler {
+
+        /**
+         * Handle a record.
+         *
+         * @param record encoded message, from the buffer's position to its limit. Only valid during the call.
+         */
+        void handle(ByteBuffer record);
+    }
+
+    private static final int TAIL = 0;
+    private static final int HEAD = 64;
+    private static final int CLOSED = HEAD + 8;
+    static final int HEADER_SIZE = 128;
+
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int PADDING = -1;
+
+    /**
+     * Ordered access to the mapping, null if not supported by this JVM.
+     */
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        Unsafe unsafe = null;
+        long addressOffset = -1;
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Exception e) {
+            unsafe = null;
+        }
+        UNSAFE = unsafe;
+        ADDRESS_OFFSET = addressOffset;
+    }
+
+    private final int capacity;
+    private final MappedByteBuffer mapping;
+    private final long address;
+
+    /**
+     * Views of the mapping, for bulk access at arbitrary positions, one per side.
+     */
+    private final ByteBuffer writer;
+    private final ByteBuffer reader;
+
+    private SharedMemoryRing(int capacity, MappedByteBuffer mapping) {
+        this.capacity = capacity;
+        this.mapping = mapping;
+        this.address = UNSAFE.getLong(mapping, ADDRESS_OFFSET);
+        this.writer = mapping.duplicate();
+        this.reader = mapping.duplicate();
+    }
+
+    /**
+     * Open a ring, creating its file if necessary.
+     *
+     * @param file     of the ring.
+     * @param capacity of the ring in bytes, a multiple of 4. Must be the same on both sides.
+     * @return ring.
+     * @throws IOException if the file can't be mapped, or this JVM doesn't support ordered access to the mapping.
+     */
+    static SharedMemoryRing open(File file, int capacity) throws IOException {
+        if (capacity <= 0 || capacity % RECORD_HEADER_SIZE != 0) {
+            throw new IllegalArgumentException("Capacity must be a positive multiple of " + RECORD_HEADER_SIZE + "!");
+        }
+        if (UNSAFE == null) {
+            throw new IOException("Ordered access to shared memory not supported by this JVM!");
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() < HEADER_SIZE + capacity) {
+                randomAccessFile.setLength(HEADER_SIZE + capacity); //zero-filled, i.e. empty
+            }
+            MappedByteBuffer mapping = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+            return new SharedMemoryRing(capacity, mapping);
+        } finally {
+            randomAccessFile.close(); //mapping stays valid
+        }
+    }
+
+    /**
+     * Can a record ever fit into this ring?
+     *
+     * @param length of the encoded message.
+     * @return true iff the record fits into an empty ring.
+     */
+    boolean fits(int length) {
+        return align(RECORD_HEADER_SIZE + length) <= capacity;
+    }
+
+    /**
+     * Append a record, if there is enough space. Called by the producer only.
+     *
+     * @param body encoded message.
+     * @return true iff appended, false if the ring is full.
+     */
+    boolean offer(byte[] body) {
+        int size = align(RECORD_HEADER_SIZE + body.length);
+        long tail = UNSAFE.getLong(address + TAIL); //only ever written by the producer
+        long head = UNSAFE.getLongVolatile(null, address + HEAD); //acquire, records up to the head are free
+
+        int index = (int) (tail % capacity);
+        int untilEnd = capacity - index;
+        int padding = size <= untilEnd ? 0 : untilEnd;
+        if (tail + padding + size - head > capacity) {
+            return false;
+        }
+
+        if (padding > 0) {
+            mapping.putInt(HEADER_SIZE + index, PADDING);
+            index = 0;
+        }
+        mapping.putInt(HEADER_SIZE + index, body.length);
+        writer.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+        writer.put(body);
+
+        UNSAFE.putOrderedLong(null, address + TAIL, tail + padding + size); //release, publish the record
+        return true;
+    }
+
+    /**
+     * Hand all records available to a handler and free them. Called by the consumer only.
+     *
+     * @param handler of records.
+     * @return number of records handled.
+     */
+    int drain(Handler handler) {
+        long head = UNSAFE.getLong(address + HEAD); //only ever written by the consumer
+        long tail = UNSAFE.getLongVolatile(null, address + TAIL); //acquire, records up to the tail are published
+        if (head == tail) {
+            return 0;
+        }
+
+        int records = 0;
+        while (head < tail) {
+            int index = (int) (head % capacity);
+            int length = mapping.getInt(HEADER_SIZE + index);
+            if (length == PADDING) {
+                head += capacity - index;
+                continue;
+            }
+
+            reader.limit(reader.capacity());
+            reader.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+            reader.limit(reader.position() + length);
+            handler.handle(reader);
+            head += align(RECORD_HEADER_SIZE + length);
+            records++;
+        }
+
+        UNSAFE.putOrderedLong(null, address + HEAD, head); //release, free the records
+        return records;
+    }
+
+    /**
+     * Tell the producer whether the consumer is receiving. Called by the consumer only.
+     *
+     * @param closed true once the consumer no longer receives, false when it (re)starts.
+     */
+    void setClosed(boolean closed) {
+        UNSAFE.putIntVolatile(null, address + CLOSED, closed ? 1 : 0);
+    }
+
+    /**
+     * Has the consumer stopped receiving? A ring whose consumer has never started is not closed.
+     *
+     * @return true iff closed.
+     */
+    boolean isClosed() {
+        return UNSAFE.getIntVolatile(null, address + CLOSED) != 0;
+    }
+
+    private static int align(int size) {
+        return (size + RECORD_HEADER_SIZE - 1) / RECORD_HEADER_SIZE * RECORD_HEADER_SIZE;
+    }
+}
@@ -0,0 +1,489 @@
+package transport;
+
+import clock.Clocks;
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.MessageCodec;
+import message.MessageExpiry;
+import message.ProcessToProcessMessage;
+import message.internal.BrokeredMessage;
+import message.internal.ProcessMessage;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static broker.ActiveMqBroker.BROADCAST_DESTINATION;
+
+/**
+ * A {@link Transport} over memory-mapped files, for processes running in separate JVMs on the same host. Messages
+ * never touch the network stack or the kernel: the sender writes them into shared memory and the receiver, polling
+ * that memory, reads them from there.
+ * <p/>
+ * Every pair of sender and receiver has its own {@link SharedMemoryRing} in a file named after the pair, in a directory
+ * shared by the whole ensemble. The broker has ID 0, processes their own IDs and clients (e.g. failure injectors)
+ * share the ID after the last process. As with {@link NioTransport}, {@link ProcessToProcessMessage}s go straight to
+ * their destinations (broadcasts to all other processes), all other messages go to the broker.
+ * <p/>
+ * Messages are encoded with {@link MessageCodec} once per message. Each receiving endpoint has a thread that polls all
+ * its rings and hands messages over to the listener's own thread (see {@link Mailbox}), so that a slow listener
+ * doesn't leave the rings full and processes replying to each other can't wait for each other. When there is nothing
+ * to receive, the polling thread either keeps spinning (lowest latency, at the cost of a core per endpoint) or, after
+ * spinning for a while, parks for {@link #PARK_NS} nanoseconds at a time. Messages to an endpoint that isn't receiving
+ * yet stay in its rings until it is.
+ * <p/>
+ * Senders never wait for a full ring. {@link HeartbeatMessage}s that don't fit are dropped at once, other messages
+ * queue up in this JVM behind the ring (so that a slow receiver doesn't hold up the others) and are written, in order,
+ * by the scheduler once the ring drains. They are only dropped once the receiving endpoint (or this transport) has
+ * been closed, since consensus doesn't tolerate losing them.
+ * <p/>
+ * Since the broker no longer sees process-to-process messages, it can't delay or drop them. Instead, an optional
+ * {@link Interceptor} (see {@link #setInterceptor(Interceptor)}) is consulted by the sender for every destination.
+ * <p/>
+ * The directory must be empty when the ensemble starts, and every process must be connected by a single transport
+ * (i.e. in a single JVM). Clients in any JVM may send through the same ring, they take turns by locking a file.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class SharedMemoryTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger(SharedMemoryTransport.class);
+
+    public static final int DEFAULT_RING_CAPACITY = 256 * 1024;
+
+    static final long PARK_NS = 50 * 1000;
+    private static final int SPINS_BEFORE_PARKING = 10000;
+
+    private static final String CLIENT_LOCK_FILE = "clients.lock";
+
+    /**
+     * Serializes clients in this JVM, which can't all hold the lock on the same file at once.
+     */
+    private static final Object CLIENT_LOCK = new Object();
+
+    private final File directory;
+    private final int numberOfProcesses;
+    private final int ringCapacity;
+    private final boolean busySpin;
+
+    /**
+     * Rings opened by this transport, keyed by source * (number of processes + 2) + destination.
+     */
+    private final ConcurrentMap<Integer, SharedMemoryRing> rings = new ConcurrentHashMap<Integer, SharedMemoryRing>();
+
+    /**
+     * Messages waiting for space in rings written by this transport, keyed like the rings.
+     */
+    private final ConcurrentMap<Integer, Outbox> outboxes = new ConcurrentHashMap<Integer, Outbox>();
+
+    /**
+     * Schedules delayed messages and writes messages waiting for space, never waits for a ring itself.
+     */
+    private final ScheduledExecutorService scheduler = Clocks.getDefault().newScheduledExecutor(1);
+
+    private volatile Interceptor interceptor;
+    private volatile boolean running = true;
+
+    /**
+     * Construct a new transport with rings of {@link #DEFAULT_RING_CAPACITY} bytes and receivers that park when idle.
+     *
+     * @param directory         shared by the ensemble, created if necessary.
+     * @param numberOfProcesses total number of processes in the ensemble.
+     */
+    public SharedMemoryTransport(File directory, int numberOfProcesses) {
+        this(directory, numberOfProcesses, DEFAULT_RING_CAPACITY, false);
+    }
+
+    /**
+     * Construct a new transport.
+     *
+     * @param directory         shared by the ensemble, created if necessary.
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param ringCapacity      capacity of each ring in bytes, a multiple of 4. Must be the same in all JVMs.
+     * @param busySpin          true for receivers to never park, false for them to park when idle.
+     */
+    public SharedMemoryTransport(File directory, int numberOfProcesses, int ringCapacity, boolean busySpin) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Failed to create directory " + directory + "!");
+        }
+        this.directory = directory;
+        this.numberOfProcesses = numberOfProcesses;
+        this.ringCapacity = ringCapacity;
+        this.busySpin = busySpin;
+    }
+
+    /**
+     * Set the interceptor consulted by senders for every process-to-process message and destination.
+     *
+     * @param interceptor new interceptor, null for none.
+     */
+    public void setInterceptor(Interceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    /**
+     * Stop all receivers. Messages not yet received stay in their rings, messages not yet sent are discarded.
+     */
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BrokerEndpoint bindBroker(int numberOfProcesses, final BrokerListener listener) {
+        Receiver receiver = new Receiver(0, "broker", new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                listener.onMessage(new UnserializedMessage(message));
+            }
+        });
+        return new SharedMemoryBrokerEndpoint(receiver);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectProcess(int processId, TransportListener listener) {
+        if (processId < 1 || processId > numberOfProcesses) {
+            throw new IllegalArgumentException("No rings for process " + processId + "!");
+        }
+        return new SharedMemoryEndpoint(processId, new Receiver(processId, "process " + processId, listener));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Endpoint connectClient() {
+        return new SharedMemoryEndpoint(clientId(), null);
+    }
+
+    private int clientId() {
+        return numberOfProcesses + 1;
+    }
+
+    private SharedMemoryRing getRing(int source, int destination) {
+        Integer key = key(source, destination);
+        SharedMemoryRing ring = rings.get(key);
+        if (ring == null) {
+            try {
+                SharedMemoryRing newRing = SharedMemoryRing.open(new File(directory, "ring-" + source + "-" + destination), ringCapacity);
+                ring = rings.putIfAbsent(key, newRing);
+                if (ring == null) {
+                    ring = newRing;
+                }
+            } catch (IOException e) {
+                LOG.fatal("Failed to map ring from " + source + " to " + destination + ".", e);
+                return null;
+            }
+        }
+        return ring;
+    }
+
+    private Integer key(int source, int destination) {
+        return source * (numberOfProcesses + 2) + destination;
+    }
+
+    private void write(int source, int destination, byte[] body) {
+        Integer key = key(source, destination);
+        Outbox outbox = outboxes.get(key);
+        if (outbox == null) {
+            SharedMemoryRing ring = getRing(source, destination);
+            if (ring == null) {
+                return;
+            }
+            Outbox newOutbox = new Outbox(ring, destination, source == clientId());
+            outbox = outboxes.putIfAbsent(key, newOutbox);
+            if (outbox == null) {
+                outbox = newOutbox;
+            }
+        }
+        outbox.write(body);
+    }
+
+    //sends the same encoded body to each destination, after the interceptor's delay.
+    private void sendToProcess(int source, byte[] body, RoutableMessage message, int destination) {
+        Interceptor currentInterceptor = interceptor;
+        long delay = currentInterceptor == null ? 0 : currentInterceptor.intercept(message, destination);
+        if (delay < 0) {
+            return; //dropped
+        }
+        sendLater(source, body, destination, delay);
+    }
+
+    private void sendLater(final int source, final byte[] body, final int destination, long delay) {
+        if (delay == 0) {
+            write(source, destination, body);
+            return;
+        }
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    write(source, destination, body);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //shutting down, messages no longer delivered
+        }
+    }
+
+    /**
+     * Messages from this JVM waiting for space in a ring, written in order. Senders in this JVM take turns on the ring,
+     * clients in all JVMs additionally by locking a file.
+     */
+    private class Outbox implements Runnable {
+
+        private final SharedMemoryRing ring;
+        private final int destination;
+        private final boolean client;
+
+        //guarded by this
+        private final Queue<byte[]> waiting = new ArrayDeque<byte[]>();
+        private boolean retryScheduled;
+
+        private Outbox(SharedMemoryRing ring, int destination, boolean client) {
+            this.ring = ring;
+            this.destination = destination;
+            this.client = client;
+        }
+
+        private synchronized void write(byte[] body) {
+            if (waiting.isEmpty() && offer(body)) {
+                return;
+            }
+            if (!ring.fits(body.length)) {
+                LOG.error("Message to " + destination + " larger than ring, message dropped!");
+                return;
+            }
+            if (MessageCodec.peekType(ByteBuffer.wrap(body)) == HeartbeatMessage.class) {
+                LOG.warn("Ring to " + destination + " full, heartbeat dropped.");
+                return;
+            }
+            waiting.offer(body);
+            scheduleRetry();
+        }
+
+        //on the scheduler's thread.
+        @Override
+        public synchronized void run() {
+            retryScheduled = false;
+            if (!running || ring.isClosed()) {
+                LOG.warn("Ring to " + destination + " closed, " + waiting.size() + " messages dropped.");
+                waiting.clear();
+                return;
+            }
+            while (!waiting.isEmpty() && offer(waiting.peek())) {
+                waiting.poll();
+            }
+            if (!waiting.isEmpty()) {
+                scheduleRetry();
+            }
+        }
+
+        private void scheduleRetry() {
+            if (retryScheduled) {
+                return;
+            }
+            try {
+                scheduler.schedule(this, PARK_NS, TimeUnit.NANOSECONDS);
+                retryScheduled = true;
+            } catch (RejectedExecutionException e) {
+                waiting.clear(); //shutting down, messages no longer delivered
+            }
+        }
+
+        private boolean offer(byte[] body) {
+            if (!client) {
+                return ring.offer(body);
+            }
+            synchronized (CLIENT_LOCK) {
+                try {
+                    RandomAccessFile lockFile = new RandomAccessFile(new File(directory, CLIENT_LOCK_FILE), "rw");
+                    try {
+                        FileLock lock = lockFile.getChannel().lock();
+                        try {
+                            return ring.offer(body);
+                        } finally {
+                            lock.release();
+                        }
+                    } finally {
+                        lockFile.close();
+                    }
+                } catch (IOException e) {
+                    LOG.error("Failed to lock ring to " + destination + ", message dropped!", e);
+                    return true; //not to be retried
+                }
+            }
+        }
+    }
+
+    /**
+     * Polls all rings to an endpoint on its own thread, handing messages over to the endpoint's {@link Mailbox}.
+     */
+    private class Receiver implements Runnable, SharedMemoryRing.Handler {
+
+        private final Mailbox mailbox;
+        private final SharedMemoryRing[] incoming;
+        private final Thread thread;
+        private volatile boolean open = true;
+
+        private Receiver(int id, String name, TransportListener listener) {
+            mailbox = new Mailbox(name, true);
+            mailbox.bind(listener);
+            incoming = new SharedMemoryRing[numberOfProcesses + 1];
+            int i = 0;
+            for (int source = 0; source <= clientId(); source++) {
+                if (source != id && (id == 0 || source != clientId())) { //only the broker hears from clients
+                    incoming[i] = getRing(source, id);
+                    if (incoming[i] != null) {
+                        incoming[i].setClosed(false);
+                    }
+                    i++;
+                }
+            }
+            thread = new Thread(this, "shm-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running && open) {
+                int received = 0;
+                for (SharedMemoryRing ring : incoming) {
+                    if (ring != null) {
+                        received += ring.drain(this);
+                    }
+                }
+                if (received > 0) {
+                    idle = 0;
+                } else if (!busySpin && ++idle >= SPINS_BEFORE_PARKING) {
+                    LockSupport.parkNanos(PARK_NS);
+                }
+            }
+        }
+
+        @Override
+        public void handle(ByteBuffer record) {
+            if (MessageExpiry.getDefault().isExpired(MessageCodec.peekType(record), MessageCodec.peekTimestamp(record))) {
+                return; //stale, not worth decoding
+            }
+            BrokeredMessage message = MessageCodec.decode(record);
+            if (message != null) {
+                mailbox.offer(message);
+            }
+        }
+
+        private void close() {
+            open = false;
+            for (SharedMemoryRing ring : incoming) {
+                if (ring != null) {
+                    ring.setClosed(true); //messages waiting for space are dropped
+                }
+            }
+            mailbox.unbind();
+            mailbox.clear();
+        }
+    }
+
+    /**
+     * The broker's endpoint, writing to the rings to processes.
+     */
+    private class SharedMemoryBrokerEndpoint implements BrokerEndpoint {
+
+        private final Receiver receiver;
+
+        private SharedMemoryBrokerEndpoint(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public RoutableMessage prepare(ProcessMessage message) {
+            return new UnserializedMessage(message);
+        }
+
+        @Override
+        public void send(RoutableMessage message, int destination) {
+            write(0, destination, MessageCodec.encode(message.decode()));
+        }
+
+        @Override
+        public void broadcast(RoutableMessage message, long[] delays) {
+            byte[] body = MessageCodec.encode(message.decode());
+            for (int i = 0; i < delays.length; i++) {
+                if (delays[i] >= 0) {
+                    sendLater(0, body, i + 1, delays[i]);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            receiver.close();
+        }
+    }
+
+    /**
+     * A process' (or client's) endpoint, writing process-to-process messages to the rings to their destinations and
+     * all other messages to the ring to the broker.
+     */
+    private class SharedMemoryEndpoint implements Endpoint {
+
+        private final int id;
+
+        /**
+         * Receiver of the process, null for clients that don't receive messages.
+         */
+        private final Receiver receiver;
+
+        private SharedMemoryEndpoint(int id, Receiver receiver) {
+            this.id = id;
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void send(BrokeredMessage message) {
+            byte[] body = MessageCodec.encode(message);
+            if (!(message instanceof ProcessToProcessMessage)) {
+                write(id, 0, body);
+                return;
+            }
+
+            RoutableMessage routableMessage = new UnserializedMessage(message);
+            int destination = ((ProcessToProcessMessage) message).getDestination();
+            if (destination != BROADCAST_DESTINATION) {
+                sendToProcess(id, body, routableMessage, destination);
+                return;
+            }
+            for (int i = 1; i <= numberOfProcesses; i++) {
+                if (i != id) { //don't send to self
+                    sendToProcess(id, body, routableMessage, i);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (receiver != null) {
+                receiver.close();
+            }
+        }
+    }
+}
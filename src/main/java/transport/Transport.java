@@ -0,0 +1,40 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+
+/**
+ * The means by which messages are carried between processes and the broker.
+ * <p/>
+ * The topology is a star by default: processes (and other clients) only talk to the broker, which relays the messages
+ * to their destinations. Some transports (e.g. {@link NioTransport}) carry process-to-process messages between
+ * processes directly instead, and have the broker delay and drop them through an {@link Interceptor}. Messages sent
+ * to an endpoint before it is bound are buffered until it is.
+ */
+public interface Transport {
+
+    /**
+     * Bind the broker to this transport.
+     *
+     * @param numberOfProcesses total number of processes in the ensemble.
+     * @param listener          to be notified about all messages sent to the broker.
+     * @return endpoint through which the broker can send messages to processes.
+     */
+    BrokerEndpoint bindBroker(int numberOfProcesses, BrokerListener listener);
+
+    /**
+     * Connect a process to the broker.
+     *
+     * @param processId ID of the process.
+     * @param listener  to be notified about all messages sent to the process.
+     * @return endpoint through which the process can send messages to the broker.
+     */
+    Endpoint connectProcess(int processId, TransportListener listener);
+
+    /**
+     * Connect a client that only sends messages to the broker and never receives any.
+     *
+     * @return endpoint through which the client can send messages to the broker.
+     */
+    Endpoint connectClient();
+}
@@ -0,0 +1,33 @@
+package transport;
+
+/**
+ * Holder of the default {@link Transport}, used by brokers, processes and failure injectors that are not given a
+ * transport explicitly. This is {@link ActiveMqTransport} unless configured otherwise.
+ * <p/>
+ * This class is thread-safe.
+ */
+public final class Transports {
+
+    private static volatile Transport defaultTransport = new ActiveMqTransport();
+
+    private Transports() {
+    }
+
+    /**
+     * Get the default transport.
+     *
+     * @return default transport.
+     */
+    public static Transport getDefault() {
+        return defaultTransport;
+    }
+
+    /**
+     * Set the default transport. Only affects brokers, processes and failure injectors created afterwards.
+     *
+     * @param transport new default transport.
+     */
+    public static void setDefault(Transport transport) {
+        defaultTransport = transport;
+    }
+}
@@ -0,0 +1,72 @@
+package transport;
+
+import message.MessageCodec;
+import message.TimestampedMessage;
+import message.internal.BrokeredMessage;
+
+/**
+ * A {@link RoutableMessage} whose body is the very message instance that has been sent, for transports that never
+ * serialize messages.
+ */
+public class UnserializedMessage extends RoutableMessage {
+
+    private final BrokeredMessage message;
+    private volatile int size = -1; //computed on demand, messages are never serialized otherwise
+
+    /**
+     * Construct a new message.
+     *
+     * @param message carried.
+     */
+    public UnserializedMessage(BrokeredMessage message) {
+        super(MessageClassifier.kindOf(message), MessageClassifier.sourceOf(message), MessageClassifier.destinationOf(message));
+        this.message = message;
+    }
+
+    /**
+     * Get the carried message.
+     *
+     * @return message.
+     */
+    public BrokeredMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BrokeredMessage decode() {
+        return message;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Class<?> getType() {
+        return message.getClass();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTimestamp() {
+        return message instanceof TimestampedMessage ? ((TimestampedMessage) message).getTimestamp() : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The message is encoded (see {@link MessageCodec}) to find out, the first time only.
+     */
+    @Override
+    public int getSize() {
+        if (size < 0) {
+            byte[] body = MessageCodec.encode(message);
+            size = body == null ? 0 : body.length;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,75 @@
+package broker;
+
+import message.internal.LinkMessage;
+import org.junit.Before;
+import org.junit.Test;
+import simulation.Simulator;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link Bandwidth}.
+ */
+public class BandwidthTest {
+
+    private Simulator simulator;
+    private Bandwidth bandwidth;
+
+    @Before
+    public void setUp() {
+        simulator = new Simulator();
+        bandwidth = new Bandwidth(3, simulator);
+    }
+
+    @Test
+    public void unlimitedLinksShouldNotDelayMessages() {
+        assertFalse(bandwidth.isLimited());
+        assertEquals(0, bandwidth.getQueueingDelay(1, 2, 1000000));
+    }
+
+    @Test
+    public void messagesShouldQueueUpOnSaturatedLink() {
+        bandwidth.setLinkLimit(1, 2, 1000, 100);
+
+        assertTrue(bandwidth.isLimited());
+        assertEquals(0, bandwidth.getQueueingDelay(1, 2, 100)); //burst
+        assertEquals(100, bandwidth.getQueueingDelay(1, 2, 100));
+        assertEquals(200, bandwidth.getQueueingDelay(1, 2, 100));
+        assertEquals(0, bandwidth.getQueueingDelay(2, 1, 100)); //other direction unlimited
+
+        simulator.runFor(200); //debt paid off, bucket empty
+
+        assertEquals(100, bandwidth.getQueueingDelay(1, 2, 100));
+
+        simulator.runFor(1000); //refilled up to the burst only
+
+        assertEquals(0, bandwidth.getQueueingDelay(1, 2, 100));
+        assertEquals(100, bandwidth.getQueueingDelay(1, 2, 100));
+    }
+
+    @Test
+    public void processLimitShouldApplyToAllItsLinks() {
+        bandwidth.setProcessLimit(2, 1000, 0);
+
+        assertEquals(100, bandwidth.getQueueingDelay(1, 2, 100));
+        assertEquals(200, bandwidth.getQueueingDelay(3, 2, 100)); //incoming shared
+        assertEquals(100, bandwidth.getQueueingDelay(2, 1, 100)); //outgoing separate
+        assertEquals(0, bandwidth.getQueueingDelay(1, 3, 100));
+    }
+
+    @Test
+    public void messageShouldWaitForBottleneck() {
+        bandwidth.setProcessLimit(LinkMessage.ALL, 10000, 0);
+        bandwidth.setLinkLimit(LinkMessage.ALL, 3, 1000, 0);
+
+        assertEquals(10, bandwidth.getQueueingDelay(1, 2, 100));
+        assertEquals(100, bandwidth.getQueueingDelay(2, 3, 100));
+
+        bandwidth.setLinkLimit(LinkMessage.ALL, LinkMessage.ALL, 0, 0);
+        bandwidth.setProcessLimit(LinkMessage.ALL, 0, 0);
+
+        assertFalse(bandwidth.isLimited());
+    }
+}
@@ -0,0 +1,21 @@
+package broker;
+
+import transport.ActiveMqTransport;
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the {@link ActiveMqTransport} with batching.
+ */
+public class BatchingBrokerIntegrationTest extends BrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Transport createTransport() {
+        ActiveMqTransport transport = new ActiveMqTransport();
+        transport.setBatching(10, 5);
+        return transport;
+    }
+}
@@ -0,0 +1,20 @@
+package broker;
+
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the default transport, with the broadcast channel enabled.
+ */
+public class BroadcastChannelBrokerIntegrationTest extends BrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected FixedDelayBroker createBroker(int numberOfProcesses, Transport transport) {
+        FixedDelayBroker broker = super.createBroker(numberOfProcesses, transport);
+        broker.setBroadcastChannelEnabled(true);
+        return broker;
+    }
+}
@@ -2,6 +2,8 @@ package broker;
 
 import listener.MessageListener;
 import message.HeartbeatMessage;
+import message.MessageCodec;
+import message.MessageExpiry;
 import message.TimestampedProcessToProcessMessage;
 import message.ValueMessage;
 import message.internal.BrokeredMessage;
@@ -9,15 +11,23 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import process.base.ActiveMqProcess;
+import transport.RoutableMessage;
+import transport.Transport;
+import transport.Transports;
+import transport.UnserializedMessage;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static broker.ActiveMqBroker.DELAY;
 import static org.junit.Assert.*;
 
 /**
- * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link ActiveMqProcess}es.
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link ActiveMqProcess}es
+ * over the default transport.
  */
 public class BrokerIntegrationTest {
 
+    private Transport transport;
     private FixedDelayBroker broker;
     private FailureInjector failureInjector;
 
@@ -27,13 +37,23 @@ public class BrokerIntegrationTest {
     }
 
     private void setUp(int numberOfProcesses) {
-        broker = new FixedDelayBroker(numberOfProcesses);
-        failureInjector = new FailureInjector();
+        transport = createTransport();
+        broker = createBroker(numberOfProcesses, transport);
+        failureInjector = new FailureInjector(transport);
+    }
+
+    protected FixedDelayBroker createBroker(int numberOfProcesses, Transport transport) {
+        return new FixedDelayBroker(numberOfProcesses, transport);
+    }
+
+    protected Transport createTransport() {
+        return Transports.getDefault();
     }
 
     @After
     public void tearDown() {
         broker.shutdown();
+        MessageExpiry.setDefault(new MessageExpiry());
     }
 
     @Test
@@ -301,13 +321,266 @@ public class BrokerIntegrationTest {
         assertNotNull(dummy2.getMessage());
     }
 
+    @Test
+    public void shouldNotUnicastMessageOverCutLink() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        failureInjector.cutLink(1, 2);
+
+        Thread.sleep(50);
+
+        dummy1.send(new ValueMessage(1, 2, 0, "test"));
+        dummy2.send(new ValueMessage(2, 1, 0, "test"));
+
+        Thread.sleep(DELAY + 50);
+
+        assertNull(dummy2.getMessage());
+        assertNotNull(dummy1.getMessage()); //the opposite direction is still up
+    }
+
+    @Test
+    public void shouldNotBroadcastMessageAcrossPartition() throws InterruptedException {
+        tearDown();
+        setUp(3);
+
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 3);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 3);
+        DummyProcess dummy3 = new DummyProcess("Dummy 3", 3, 3);
+
+        dummy1.start();
+        dummy2.start();
+        dummy3.start();
+
+        failureInjector.partition(new int[]{1, 2}, new int[]{3});
+
+        Thread.sleep(50);
+
+        dummy1.send(new HeartbeatMessage(1));
+        dummy3.send(new HeartbeatMessage(3));
+
+        Thread.sleep(DELAY + 50);
+
+        assertNull(dummy1.getMessage());
+        assertNotNull(dummy2.getMessage());
+        assertEquals(1, ((HeartbeatMessage) dummy2.getMessage()).getSource());
+        assertNull(dummy3.getMessage());
+    }
+
+    @Test
+    public void shouldUnicastMessageOverHealedLink() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        failureInjector.isolate(2);
+        Thread.sleep(50);
+        failureInjector.heal();
+        Thread.sleep(50);
+
+        dummy1.send(new ValueMessage(1, 2, 0, "test"));
+
+        Thread.sleep(DELAY + 50);
+
+        assertNotNull(dummy2.getMessage());
+    }
+
+    @Test
+    public void shouldNotUnicastMessageOverLossyLink() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        failureInjector.setLinkFaults(1, 2, 1.0, 0, 0);
+
+        Thread.sleep(50);
+
+        dummy1.send(new ValueMessage(1, 2, 0, "test"));
+        dummy2.send(new ValueMessage(2, 1, 0, "test"));
+
+        Thread.sleep(DELAY + 50);
+
+        assertNull(dummy2.getMessage());
+        assertNotNull(dummy1.getMessage());
+    }
+
+    @Test
+    public void shouldDeliverDuplicatedMessageTwice() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        failureInjector.setLinkFaults(1, 2, 0, 1.0, 0);
+
+        Thread.sleep(50);
+
+        dummy1.send(new HeartbeatMessage(1));
+
+        Thread.sleep(DELAY + 50);
+
+        assertEquals(2, dummy2.getNumberOfMessages());
+    }
+
+    @Test
+    public void shouldDropExpiredMessages() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        MessageExpiry expiry = new MessageExpiry();
+        expiry.setTimeToLive(HeartbeatMessage.class, DELAY / 2);
+        MessageExpiry.setDefault(expiry);
+
+        Thread.sleep(50);
+
+        dummy1.send(new HeartbeatMessage(1));
+        dummy1.send(new ValueMessage(1, 2, 0, "test"));
+
+        Thread.sleep(DELAY + 50);
+
+        assertEquals(1, dummy2.getNumberOfMessages());
+        assertTrue(dummy2.getMessage() instanceof ValueMessage);
+        assertEquals(1, expiry.getNumberOfExpiredMessages(HeartbeatMessage.class));
+        assertEquals(0, expiry.getNumberOfExpiredMessages(ValueMessage.class));
+    }
+
+    @Test
+    public void shouldQueueMessagesOnSaturatedLink() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        int size = MessageCodec.encode(new ValueMessage(1, 2, 0, "test")).length;
+        broker.setLinkBandwidth(1, 2, size * 1000L / DELAY, size); //one message per DELAY
+
+        Thread.sleep(50);
+
+        for (int i = 0; i < 3; i++) {
+            dummy1.send(new ValueMessage(1, 2, i, "test"));
+        }
+
+        Thread.sleep(DELAY + 50);
+
+        assertEquals(1, dummy2.getNumberOfMessages());
+
+        Thread.sleep(2 * DELAY);
+
+        assertEquals(3, dummy2.getNumberOfMessages());
+    }
+
+    @Test
+    public void shouldAccountForMessagesInFlight() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        Thread.sleep(50);
+
+        dummy1.send(new ValueMessage(1, 2, 0, "test"));
+
+        Thread.sleep(DELAY / 2);
+
+        assertEquals(1, broker.getQueueDepth());
+        assertEquals(1, broker.getQueueDepth(2));
+
+        Thread.sleep(DELAY / 2 + 50);
+
+        assertNotNull(dummy2.getMessage());
+        assertEquals(0, broker.getQueueDepth());
+        assertTrue(broker.getAverageTimeInQueue() >= DELAY);
+    }
+
+    @Test
+    public void shouldDropMessagesBeyondInFlightLimit() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        broker.setInFlightLimits(1, 10, BackpressurePolicy.DROP);
+
+        Thread.sleep(50);
+
+        dummy1.send(new ValueMessage(1, 2, 0, "test"));
+        dummy1.send(new ValueMessage(1, 2, 1, "test"));
+
+        Thread.sleep(DELAY + 50);
+
+        assertEquals(1, dummy2.getNumberOfMessages());
+        assertEquals(1, broker.getNumberOfDroppedMessages());
+    }
+
+    @Test
+    public void shouldDropBroadcastsBeyondInFlightLimit() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        broker.setInFlightLimits(1, 10, BackpressurePolicy.DROP);
+
+        Thread.sleep(50);
+
+        dummy1.send(new HeartbeatMessage(1));
+        dummy1.send(new HeartbeatMessage(1));
+
+        Thread.sleep(DELAY + 50);
+
+        assertEquals(1, dummy2.getNumberOfMessages());
+        assertEquals(1, broker.getNumberOfDroppedMessages());
+    }
+
+    @Test
+    public void interceptedMessagesShouldNotOvertakeEachOtherOverFifoLinks() throws InterruptedException {
+        DummyProcess dummy1 = new DummyProcess("Dummy 1", 1, 2);
+        DummyProcess dummy2 = new DummyProcess("Dummy 2", 2, 2);
+
+        dummy1.start();
+        dummy2.start();
+
+        broker.setFifoLinksEnabled(true);
+        failureInjector.setLinkFaults(1, 2, 0, 0, DELAY); //reorder window
+
+        Thread.sleep(50);
+
+        RoutableMessage message = new UnserializedMessage(new ValueMessage(1, 2, 0, "test"));
+        long previousEarliestDue = Long.MIN_VALUE;
+        for (int i = 0; i < 50; i++) {
+            long before = System.currentTimeMillis();
+            long delay = broker.intercept(message, 2);
+            long after = System.currentTimeMillis();
+
+            assertTrue(delay > 0);
+            assertTrue(after + delay > previousEarliestDue);
+            previousEarliestDue = before + delay;
+        }
+    }
+
     private class DummyProcess extends ActiveMqProcess {
 
         private volatile boolean everybodyReady = false;
         private volatile BrokeredMessage message;
+        private final AtomicInteger numberOfMessages = new AtomicInteger();
 
         private DummyProcess(String name, int processId, int numberOfProcesses) {
-            super(name, processId, numberOfProcesses);
+            super(name, processId, numberOfProcesses, transport);
         }
 
         @Override
@@ -322,12 +595,17 @@ public class BrokerIntegrationTest {
         @Override
         public void deliver(TimestampedProcessToProcessMessage message) {
             this.message = message;
+            numberOfMessages.incrementAndGet();
         }
 
         private BrokeredMessage getMessage() {
             return message;
         }
 
+        private int getNumberOfMessages() {
+            return numberOfMessages.get();
+        }
+
         @Override
         public void addMessageListener(MessageListener messageListener) {
         }
@@ -0,0 +1,98 @@
+package broker;
+
+import org.junit.After;
+import org.junit.Test;
+import simulation.Simulator;
+import transport.Transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static broker.ActiveMqBroker.DELAY;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LogNormalDelayBroker}, {@link ParetoDelayBroker} and {@link MarkovModulatedDelayBroker}.
+ */
+public class DelayDistributionTest {
+
+    private static final int SAMPLES = 100000;
+    private static final long SEED = 42;
+
+    private final Transport transport = new Simulator().getTransport();
+    private final List<ActiveMqBroker> brokers = new ArrayList<ActiveMqBroker>();
+
+    @After
+    public void tearDown() {
+        for (ActiveMqBroker broker : brokers) {
+            broker.shutdown();
+        }
+    }
+
+    @Test
+    public void logNormalDelaysShouldBeReproducibleAndRightSkewed() {
+        long[] delays = sample(new LogNormalDelayBroker(2, transport, SEED));
+
+        assertTrue(Arrays.equals(delays, sample(new LogNormalDelayBroker(2, transport, SEED))));
+        assertEquals(DELAY, mean(delays), DELAY * 0.05);
+        assertTrue(median(delays) < mean(delays));
+    }
+
+    @Test
+    public void paretoDelaysShouldBeReproducibleAndHeavyTailed() {
+        long[] delays = sample(new ParetoDelayBroker(2, transport, SEED));
+
+        assertTrue(Arrays.equals(delays, sample(new ParetoDelayBroker(2, transport, SEED))));
+        assertEquals(DELAY, mean(delays), DELAY * 0.05);
+
+        long[] sorted = delays.clone();
+        Arrays.sort(sorted);
+        assertTrue(sorted[0] >= 60); //scale of the distribution
+        assertTrue(sorted[SAMPLES - 1] > 10 * DELAY);
+    }
+
+    @Test
+    public void markovModulatedDelaysShouldBeReproducibleAndBursty() {
+        long[] delays = sample(new MarkovModulatedDelayBroker(2, transport, SEED));
+
+        assertTrue(Arrays.equals(delays, sample(new MarkovModulatedDelayBroker(2, transport, SEED))));
+
+        int bad = 0;
+        int bursts = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (delays[i] > 2 * DELAY) {
+                bad++;
+                if (i == 0 || delays[i - 1] <= 2 * DELAY) {
+                    bursts++;
+                }
+            }
+        }
+        assertEquals(1.0 / 6.0, (double) bad / SAMPLES, 0.03); //stationary probability of the bad state
+        assertTrue((double) bad / bursts > 5); //bursts last 20 messages on average
+    }
+
+    private long[] sample(ActiveMqBroker broker) {
+        brokers.add(broker);
+        long[] delays = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            delays[i] = broker.getDelay(1, 2);
+        }
+        return delays;
+    }
+
+    private double mean(long[] delays) {
+        double sum = 0;
+        for (long delay : delays) {
+            sum += delay;
+        }
+        return sum / delays.length;
+    }
+
+    private long median(long[] delays) {
+        long[] sorted = delays.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
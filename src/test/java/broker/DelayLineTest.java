@@ -0,0 +1,76 @@
+package broker;
+
+import message.HeartbeatMessage;
+import org.junit.Before;
+import org.junit.Test;
+import simulation.Simulator;
+import transport.RoutableMessage;
+import transport.UnserializedMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit test for {@link DelayLine}, in virtual time.
+ */
+public class DelayLineTest {
+
+    private Simulator simulator;
+    private DelayLine delayLine;
+    private final List<String> sent = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        simulator = new Simulator();
+        delayLine = new DelayLine(simulator, simulator.newScheduledExecutor(1), new DelayLine.Sender() {
+            @Override
+            public void send(RoutableMessage message, int destination) {
+                sent.add(simulator.currentTimeMillis() + ":" + destination);
+            }
+        });
+    }
+
+    @Test
+    public void messagesShouldBeSentWhenDue() {
+        RoutableMessage message = new UnserializedMessage(new HeartbeatMessage(1));
+
+        delayLine.add(message, 2, 100);
+        delayLine.add(message, 3, 50);
+        delayLine.add(message, 4, 0);
+
+        simulator.runFor(99);
+        assertEquals("[0:4, 50:3]", sent.toString());
+
+        simulator.runFor(1);
+        assertEquals("[0:4, 50:3, 100:2]", sent.toString());
+    }
+
+    @Test
+    public void messagesDueInTheSameMillisecondShouldBeSentInOneBatch() {
+        RoutableMessage message = new UnserializedMessage(new HeartbeatMessage(1));
+
+        for (int destination = 2; destination <= 100; destination++) {
+            delayLine.add(message, destination, 100);
+        }
+        simulator.runFor(100);
+
+        assertEquals(99, sent.size());
+        assertEquals(1, simulator.getExecutedEvents());
+    }
+
+    @Test
+    public void messagesDelayedByMoreThanOneRotationShouldNotBeSentEarly() {
+        RoutableMessage message = new UnserializedMessage(new HeartbeatMessage(1));
+
+        delayLine.add(message, 2, DelayLine.WHEEL_SIZE + 10);
+        delayLine.add(message, 3, 10);
+
+        simulator.runFor(DelayLine.WHEEL_SIZE);
+        assertEquals("[10:3]", sent.toString());
+
+        simulator.runFor(10);
+        assertEquals("[10:3, " + (DelayLine.WHEEL_SIZE + 10) + ":2]", sent.toString());
+    }
+}
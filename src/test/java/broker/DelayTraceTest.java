@@ -0,0 +1,80 @@
+package broker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simulation.Simulator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit test for {@link DelayTrace} and {@link TraceDrivenDelayBroker}.
+ */
+public class DelayTraceTest {
+
+    private static final int[][][] SAMPLES = {
+            {{0, 0, 0}, {10, 11, 12}},
+            {{20, 21, 22}, {0, 0, 0}}
+    };
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("delay", ".trace");
+        DelayTrace.write(file, 100, SAMPLES);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void delaysShouldBeReplayedPerLinkAndTimeAligned() throws IOException {
+        DelayTrace trace = DelayTrace.open(file);
+
+        assertEquals(2, trace.getNumberOfProcesses());
+        assertEquals(10, trace.getDelay(1, 2, 0));
+        assertEquals(10, trace.getDelay(1, 2, 99));
+        assertEquals(11, trace.getDelay(1, 2, 100));
+        assertEquals(22, trace.getDelay(2, 1, 250));
+        assertEquals(20, trace.getDelay(2, 1, 300)); //replayed in a loop
+    }
+
+    @Test
+    public void invalidTraceShouldNotBeOpened() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        out.close();
+
+        try {
+            DelayTrace.open(file);
+            fail();
+        } catch (IOException e) {
+            //ok
+        }
+    }
+
+    @Test
+    public void brokerShouldReplayTraceFromItsStart() throws IOException {
+        Simulator simulator = new Simulator(1000);
+        simulator.install();
+        TraceDrivenDelayBroker broker = new TraceDrivenDelayBroker(3, simulator.getTransport(), DelayTrace.open(file));
+        try {
+            assertEquals(10, broker.getDelay(1, 2));
+            simulator.runFor(100);
+            assertEquals(11, broker.getDelay(1, 2));
+            assertEquals(21, broker.getDelay(2, 1));
+            assertEquals(11, broker.getDelay(3, 2)); //process 3 wraps around to 1
+        } finally {
+            broker.shutdown();
+            simulator.uninstall();
+        }
+    }
+}
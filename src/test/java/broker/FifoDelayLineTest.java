@@ -0,0 +1,69 @@
+package broker;
+
+import message.ValueMessage;
+import org.junit.Before;
+import org.junit.Test;
+import simulation.Simulator;
+import transport.RoutableMessage;
+import transport.UnserializedMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit test for {@link FifoDelayLine}, in virtual time.
+ */
+public class FifoDelayLineTest {
+
+    private Simulator simulator;
+    private FifoDelayLine delayLine;
+    private final List<String> sent = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        simulator = new Simulator();
+        delayLine = new FifoDelayLine(3, simulator, simulator.newScheduledExecutor(1), new DelayLine.Sender() {
+            @Override
+            public void send(RoutableMessage message, int destination) {
+                sent.add(simulator.currentTimeMillis() + ":" + ((ValueMessage) ((UnserializedMessage) message).getMessage()).getValue());
+            }
+        });
+    }
+
+    @Test
+    public void messageShouldNotOvertakeEarlierMessageOnSameLink() {
+        delayLine.add(message(1, 2, "first"), 2, 100);
+        delayLine.add(message(1, 2, "second"), 2, 10);
+
+        simulator.runFor(100);
+
+        assertEquals("[100:first, 100:second]", sent.toString());
+    }
+
+    @Test
+    public void messagesOnDifferentLinksShouldNotWaitForEachOther() {
+        delayLine.add(message(1, 2, "1->2"), 2, 100);
+        delayLine.add(message(2, 1, "2->1"), 1, 10);
+        delayLine.add(message(1, 3, "1->3"), 3, 20);
+
+        simulator.runFor(100);
+
+        assertEquals("[10:2->1, 20:1->3, 100:1->2]", sent.toString());
+    }
+
+    @Test
+    public void messageShouldBeDelayedFromTimeItIsAdded() {
+        delayLine.add(message(1, 2, "first"), 2, 50);
+        simulator.runFor(50);
+        delayLine.add(message(1, 2, "second"), 2, 10);
+        simulator.runFor(10);
+
+        assertEquals("[50:first, 60:second]", sent.toString());
+    }
+
+    private RoutableMessage message(int source, int destination, String value) {
+        return new UnserializedMessage(new ValueMessage(source, destination, 0, value));
+    }
+}
@@ -0,0 +1,89 @@
+package broker;
+
+import clock.Clock;
+import clock.Clocks;
+import message.ValueMessage;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+import transport.RoutableMessage;
+import transport.UnserializedMessage;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static broker.ActiveMqBroker.DELAY;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of the broker's delayed delivery with Gaussian delays: the reorder-prone {@link DelayLine} vs.
+ * the {@link FifoDelayLine}. Reports throughput (messages delivered per second, from the first message added
+ * to the last one delivered) and the number of messages that overtook an earlier one on their link.
+ */
+@Ignore("only for benchmarking purposes")
+public class FifoLinksBenchmark {
+    private static final Logger LOG = Logger.getLogger(FifoLinksBenchmark.class);
+
+    private static final int NUMBER_OF_PROCESSES = 10;
+    private static final int SENDING_THREADS = 10;
+    private static final int WARMUP_MESSAGES = 200000;
+    private static final int MEASURED_MESSAGES = 1000000;
+
+    private static final double MEAN = (double) DELAY;
+    private static final double STDV = MEAN / 2.0;
+
+    @Test
+    public void compareFifoWithReorderProneDelivery() throws InterruptedException {
+        measure("warmup, reorder-prone", WARMUP_MESSAGES, false);
+        measure("warmup, FIFO", WARMUP_MESSAGES, true);
+
+        measure("reorder-prone", MEASURED_MESSAGES, false);
+        measure("FIFO", MEASURED_MESSAGES, true);
+    }
+
+    private void measure(String name, int messages, boolean fifo) throws InterruptedException {
+        Clock clock = Clocks.getDefault();
+        ScheduledExecutorService executor = clock.newScheduledExecutor(SENDING_THREADS);
+        final CountDownLatch delivered = new CountDownLatch(messages);
+        final AtomicInteger reordered = new AtomicInteger();
+        final int[][] lastRound = new int[NUMBER_OF_PROCESSES + 1][NUMBER_OF_PROCESSES + 1];
+
+        DelayLine.Sender sender = new DelayLine.Sender() {
+            @Override
+            public void send(RoutableMessage message, int destination) {
+                int round = ((ValueMessage) ((UnserializedMessage) message).getMessage()).getRound();
+                synchronized (lastRound) {
+                    if (round < lastRound[message.getSource()][destination]) {
+                        reordered.incrementAndGet();
+                    }
+                    lastRound[message.getSource()][destination] = round;
+                }
+                delivered.countDown();
+            }
+        };
+        DelayLine delayLine = new DelayLine(clock, executor, sender);
+        FifoDelayLine fifoDelayLine = new FifoDelayLine(NUMBER_OF_PROCESSES, clock, executor, sender);
+
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            int source = i % NUMBER_OF_PROCESSES + 1;
+            int destination = (i / NUMBER_OF_PROCESSES) % NUMBER_OF_PROCESSES + 1;
+            RoutableMessage message = new UnserializedMessage(new ValueMessage(source, destination, i, null));
+            long delay = Math.max(0, Math.round(random.nextGaussian() * STDV + MEAN));
+            if (fifo) {
+                fifoDelayLine.add(message, destination, delay);
+            } else {
+                delayLine.add(message, destination, delay);
+            }
+        }
+        assertTrue(delivered.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        executor.shutdownNow();
+
+        LOG.info(name + ": " + (messages * 1000000000L / elapsed) + " messages/s, " + reordered.get() + " of " + messages + " messages reordered");
+    }
+}
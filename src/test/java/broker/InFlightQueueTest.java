@@ -0,0 +1,118 @@
+package broker;
+
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import org.junit.Before;
+import org.junit.Test;
+import simulation.Simulator;
+import transport.RoutableMessage;
+import transport.UnserializedMessage;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link InFlightQueue}.
+ */
+public class InFlightQueueTest {
+
+    private static final RoutableMessage HEARTBEAT = new UnserializedMessage(new HeartbeatMessage(1));
+    private static final RoutableMessage VALUE = new UnserializedMessage(new ValueMessage(1, 2, 0, "value"));
+
+    private Simulator simulator;
+    private InFlightQueue queue;
+
+    @Before
+    public void setUp() {
+        simulator = new Simulator();
+        queue = new InFlightQueue(3, simulator);
+    }
+
+    @Test
+    public void messagesShouldBeAccountedForPerDestinationAndInTotal() {
+        InFlightQueue.InFlightMessage first = queue.admit(VALUE, 2);
+        queue.admit(HEARTBEAT, 3);
+
+        assertEquals(2, queue.getDepth());
+        assertEquals(1, queue.getDepth(2));
+        assertEquals(1, queue.getDepth(3));
+
+        simulator.runFor(100);
+        assertTrue(queue.release(first, 2));
+
+        assertEquals(1, queue.getDepth());
+        assertEquals(0, queue.getDepth(2));
+        assertEquals(100.0, queue.getAverageTimeInQueue());
+        assertEquals(100, queue.getMaxTimeInQueue());
+    }
+
+    @Test
+    public void messagesShouldBeDroppedWhenLimitReached() {
+        queue.setLimits(1, 2, BackpressurePolicy.DROP);
+
+        assertNotNull(queue.admit(HEARTBEAT, 2));
+        assertNull(queue.admit(VALUE, 2)); //destination limit
+        assertNotNull(queue.admit(VALUE, 3));
+        assertNull(queue.admit(VALUE, 1)); //global limit
+
+        assertEquals(2, queue.getDropped());
+        assertEquals(0, queue.getShed());
+    }
+
+    @Test
+    public void oldestHeartbeatShouldBeShedWhenLimitReached() {
+        queue.setLimits(2, 10, BackpressurePolicy.SHED_OLDEST_HEARTBEATS);
+
+        InFlightQueue.InFlightMessage oldest = queue.admit(HEARTBEAT, 2);
+        InFlightQueue.InFlightMessage newest = queue.admit(HEARTBEAT, 2);
+        InFlightQueue.InFlightMessage value = queue.admit(VALUE, 2);
+
+        assertNotNull(value);
+        assertEquals(1, queue.getShed());
+        assertEquals(2, queue.getDepth(2));
+        assertFalse(queue.release(oldest, 2));
+        assertTrue(queue.release(newest, 2));
+        assertTrue(queue.release(value, 2));
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void messageShouldBeDroppedWhenNoHeartbeatToShed() {
+        queue.setLimits(1, 10, BackpressurePolicy.SHED_OLDEST_HEARTBEATS);
+
+        assertNotNull(queue.admit(VALUE, 2));
+        assertNull(queue.admit(HEARTBEAT, 2));
+
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void ingressShouldBeBlockedUntilMessageReleased() throws InterruptedException {
+        queue.setLimits(1, 10, BackpressurePolicy.BLOCK);
+        InFlightQueue.InFlightMessage first = queue.admit(VALUE, 2);
+
+        final AtomicReference<InFlightQueue.InFlightMessage> second = new AtomicReference<InFlightQueue.InFlightMessage>();
+        Thread ingress = new Thread() {
+            @Override
+            public void run() {
+                second.set(queue.admit(VALUE, 2));
+            }
+        };
+        ingress.start();
+
+        Thread.sleep(100);
+        assertTrue(ingress.isAlive());
+
+        queue.release(first, 2);
+        ingress.join(1000);
+
+        assertFalse(ingress.isAlive());
+        assertNotNull(second.get());
+        assertEquals(1, queue.getDepth(2));
+    }
+}
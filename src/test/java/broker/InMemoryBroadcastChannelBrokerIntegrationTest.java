@@ -0,0 +1,21 @@
+package broker;
+
+import transport.InMemoryTransport;
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the {@link InMemoryTransport}, with the broadcast channel enabled.
+ */
+public class InMemoryBroadcastChannelBrokerIntegrationTest extends InMemoryBrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected FixedDelayBroker createBroker(int numberOfProcesses, Transport transport) {
+        FixedDelayBroker broker = super.createBroker(numberOfProcesses, transport);
+        broker.setBroadcastChannelEnabled(true);
+        return broker;
+    }
+}
@@ -0,0 +1,19 @@
+package broker;
+
+import transport.InMemoryTransport;
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the {@link InMemoryTransport}.
+ */
+public class InMemoryBrokerIntegrationTest extends BrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Transport createTransport() {
+        return new InMemoryTransport();
+    }
+}
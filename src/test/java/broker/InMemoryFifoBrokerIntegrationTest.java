@@ -0,0 +1,21 @@
+package broker;
+
+import transport.InMemoryTransport;
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the {@link InMemoryTransport}, with FIFO links enabled.
+ */
+public class InMemoryFifoBrokerIntegrationTest extends InMemoryBrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected FixedDelayBroker createBroker(int numberOfProcesses, Transport transport) {
+        FixedDelayBroker broker = super.createBroker(numberOfProcesses, transport);
+        broker.setFifoLinksEnabled(true);
+        return broker;
+    }
+}
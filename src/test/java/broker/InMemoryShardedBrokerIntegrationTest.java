@@ -0,0 +1,19 @@
+package broker;
+
+import transport.InMemoryTransport;
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the {@link InMemoryTransport} with sharded broker ingress.
+ */
+public class InMemoryShardedBrokerIntegrationTest extends BrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Transport createTransport() {
+        return new InMemoryTransport(4);
+    }
+}
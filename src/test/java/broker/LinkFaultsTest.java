@@ -0,0 +1,78 @@
+package broker;
+
+import message.internal.LinkMessage;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LinkFaults}.
+ */
+public class LinkFaultsTest {
+
+    private static final int MESSAGES = 10000;
+
+    @Test
+    public void perfectLinksShouldHaveNoFaults() {
+        LinkFaults faults = new LinkFaults(2, 42);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            assertFalse(faults.isLost(1, 2));
+            assertFalse(faults.isDuplicated(1, 2));
+            assertEquals(0, faults.getReorderDelay(1, 2));
+        }
+    }
+
+    @Test
+    public void faultsShouldHaveConfiguredProbabilities() {
+        LinkFaults faults = new LinkFaults(3, 42);
+        faults.set(1, LinkMessage.ALL, 0.2, 0.1, 50);
+
+        int lost = 0;
+        int duplicated = 0;
+        long maxReorderDelay = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            if (faults.isLost(1, 3)) {
+                lost++;
+            }
+            if (faults.isDuplicated(1, 3)) {
+                duplicated++;
+            }
+            maxReorderDelay = Math.max(maxReorderDelay, faults.getReorderDelay(1, 3));
+            assertFalse(faults.isLost(3, 1));
+        }
+
+        assertEquals(0.2, (double) lost / MESSAGES, 0.02);
+        assertEquals(0.1, (double) duplicated / MESSAGES, 0.02);
+        assertEquals(50, maxReorderDelay);
+    }
+
+    @Test
+    public void faultsShouldBeReproducible() {
+        LinkFaults faults1 = new LinkFaults(2, 42);
+        LinkFaults faults2 = new LinkFaults(2, 7);
+        faults2.setSeed(42);
+        faults1.set(LinkMessage.ALL, LinkMessage.ALL, 0.5, 0.5, 100);
+        faults2.set(LinkMessage.ALL, LinkMessage.ALL, 0.5, 0.5, 100);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            assertEquals(faults1.isLost(1, 2), faults2.isLost(1, 2));
+            assertEquals(faults1.isDuplicated(2, 1), faults2.isDuplicated(2, 1));
+            assertEquals(faults1.getReorderDelay(1, 2), faults2.getReorderDelay(1, 2));
+        }
+    }
+
+    @Test
+    public void faultsShouldBeCleared() {
+        LinkFaults faults = new LinkFaults(2, 42);
+        faults.set(1, 2, 1.0, 0, 0);
+
+        assertTrue(faults.isLost(1, 2));
+
+        faults.set(LinkMessage.ALL, LinkMessage.ALL, 0, 0, 0);
+
+        assertFalse(faults.isLost(1, 2));
+    }
+}
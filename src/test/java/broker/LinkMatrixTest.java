@@ -0,0 +1,68 @@
+package broker;
+
+import message.internal.LinkMessage;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LinkMatrix}.
+ */
+public class LinkMatrixTest {
+
+    @Test
+    public void linksShouldBeCutInOneDirectionOnly() {
+        LinkMatrix links = new LinkMatrix(3);
+
+        links.set(1, 2, true);
+
+        assertTrue(links.isCut(1, 2));
+        assertFalse(links.isCut(2, 1));
+        assertFalse(links.isCut(1, 3));
+
+        links.set(1, 2, false);
+
+        assertFalse(links.isCut(1, 2));
+    }
+
+    @Test
+    public void allLinksOfProcessShouldBeCut() {
+        LinkMatrix links = new LinkMatrix(100); //more than 64 links
+
+        links.set(LinkMessage.ALL, 70, true);
+
+        assertTrue(links.isCut(1, 70));
+        assertTrue(links.isCut(100, 70));
+        assertFalse(links.isCut(70, 1));
+
+        links.set(LinkMessage.ALL, LinkMessage.ALL, false);
+
+        assertFalse(links.isCut(100, 70));
+    }
+
+    @Test
+    public void linksOfUnknownProcessesShouldNeverBeCut() {
+        LinkMatrix links = new LinkMatrix(2);
+
+        links.set(LinkMessage.ALL, LinkMessage.ALL, true);
+
+        assertTrue(links.isCut(2, 1));
+        assertFalse(links.isCut(0, 1));
+        assertFalse(links.isCut(1, 3));
+    }
+
+    @Test
+    public void linksBetweenGroupsShouldBeCutInBothDirections() {
+        LinkMatrix links = new LinkMatrix(100);
+
+        links.partition(new int[][]{{1, 2}, {3, 70}});
+
+        assertTrue(links.isCut(1, 3));
+        assertTrue(links.isCut(70, 2));
+        assertFalse(links.isCut(1, 2));
+        assertFalse(links.isCut(3, 70));
+        assertFalse(links.isCut(1, 4)); //not in any group
+        assertFalse(links.isCut(4, 70));
+    }
+}
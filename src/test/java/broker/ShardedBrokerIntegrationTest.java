@@ -0,0 +1,19 @@
+package broker;
+
+import transport.ActiveMqTransport;
+import transport.Transport;
+
+/**
+ * Integration test for {@link broker.FixedDelayBroker}, {@link FailureInjector}, and {@link process.base.ActiveMqProcess}es
+ * over the {@link ActiveMqTransport} with sharded broker ingress.
+ */
+public class ShardedBrokerIntegrationTest extends BrokerIntegrationTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Transport createTransport() {
+        return new ActiveMqTransport(4);
+    }
+}
@@ -0,0 +1,70 @@
+package broker;
+
+import org.junit.Test;
+import simulation.Simulator;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit test for {@link Topology} and {@link TopologyDelayBroker}.
+ */
+public class TopologyTest {
+
+    @Test
+    public void latenciesShouldBeLookedUpPerLink() {
+        Topology topology = new Topology(new int[]{0, 0, 1},
+                new double[][]{{10, 50}, {60, 20}},
+                new double[][]{{1, 5}, {6, 2}});
+
+        assertEquals(3, topology.getNumberOfProcesses());
+        assertEquals(10.0, topology.getMean(1, 2));
+        assertEquals(1.0, topology.getStdv(2, 1));
+        assertEquals(50.0, topology.getMean(1, 3));
+        assertEquals(60.0, topology.getMean(3, 2)); //asymmetric
+        assertEquals(6.0, topology.getStdv(3, 1));
+        assertEquals(20.0, topology.getMean(3, 3));
+        assertEquals(50.0, topology.getMean(4, 3)); //process 4 wraps around to 1
+    }
+
+    @Test
+    public void zonesShouldHaveUniformInterZoneLatency() {
+        Topology topology = Topology.zones(new int[]{0, 1, 2, 1}, 5, 100, 0.1);
+
+        assertEquals(5.0, topology.getMean(2, 4));
+        assertEquals(0.5, topology.getStdv(2, 4));
+        assertEquals(100.0, topology.getMean(1, 3));
+        assertEquals(10.0, topology.getStdv(3, 4));
+    }
+
+    @Test
+    public void processInZoneWithoutLatenciesShouldBeRejected() {
+        try {
+            new Topology(new int[]{0, 1}, new double[][]{{10}}, new double[][]{{1}});
+            fail();
+        } catch (IllegalArgumentException e) {
+            //ok
+        }
+    }
+
+    @Test
+    public void brokerShouldDelayMessagesPerLink() {
+        Topology topology = Topology.zones(new int[]{0, 0, 1}, 10, 200, 0.1);
+        TopologyDelayBroker broker = new TopologyDelayBroker(3, new Simulator().getTransport(), topology, 42);
+        try {
+            assertEquals(10.0, averageDelay(broker, 1, 2), 1.0);
+            assertEquals(200.0, averageDelay(broker, 3, 1), 2.0);
+            assertEquals(200.0, averageDelay(broker, 2, 3), 2.0);
+        } finally {
+            broker.shutdown();
+        }
+    }
+
+    private double averageDelay(TopologyDelayBroker broker, int source, int destination) {
+        double sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            sum += broker.getDelay(source, destination);
+        }
+        return sum / 1000;
+    }
+}
@@ -133,6 +133,16 @@ public class StrongFailureDetectorTest {
         assertTrue(detector.getSuspects().contains(3));
     }
 
+    @Test
+    public void heartbeatsReceivedBeforeStartShouldBeIgnored() {
+        when(mockProcess.getNumberOfProcesses()).thenReturn(3);
+        when(mockProcess.getProcessId()).thenReturn(1);
+
+        detector.receive(new HeartbeatMessage(2)); //must not fail
+
+        assertTrue(detector.getSuspects().isEmpty());
+    }
+
     @Test
     public void suspectedProcessShouldNeverBecomeCorrect() throws InterruptedException {
         when(mockProcess.getNumberOfProcesses()).thenReturn(2);
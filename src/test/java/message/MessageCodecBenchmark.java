@@ -0,0 +1,74 @@
+package message;
+
+import message.internal.BrokeredMessage;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Benchmark of {@link MessageCodec} vs. Java serialization: encoded size and encode/decode throughput
+ * of every message type that travels between processes.
+ */
+@Ignore("only for benchmarking purposes")
+public class MessageCodecBenchmark {
+    private static final Logger LOG = Logger.getLogger(MessageCodecBenchmark.class);
+
+    private static final int WARMUP_ROUND_TRIPS = 100000;
+    private static final int MEASURED_ROUND_TRIPS = 200000;
+
+    @Test
+    public void compareCodecWithJavaSerialization() throws IOException, ClassNotFoundException {
+        BrokeredMessage[] messages = {
+                new HeartbeatMessage(1),
+                new ValueMessage(1, 2, 3, "value1"),
+                new OutcomeMessage(1, -1, 3, "value1", true)
+        };
+
+        for (BrokeredMessage message : messages) {
+            String name = message.getClass().getSimpleName();
+
+            measureCodec(message, WARMUP_ROUND_TRIPS);
+            measureJavaSerialization(message, WARMUP_ROUND_TRIPS);
+
+            LOG.info(name + " size: codec " + MessageCodec.encode(message).length + " bytes, Java serialization " + serialize(message).length + " bytes");
+            LOG.info(name + " round trips/s: codec " + measureCodec(message, MEASURED_ROUND_TRIPS)
+                    + ", Java serialization " + measureJavaSerialization(message, MEASURED_ROUND_TRIPS));
+        }
+    }
+
+    private long measureCodec(BrokeredMessage message, int roundTrips) {
+        long start = System.nanoTime();
+        for (int i = 0; i < roundTrips; i++) {
+            assertNotNull(MessageCodec.decode(MessageCodec.encode(message)));
+        }
+        return roundTrips * 1000000000L / (System.nanoTime() - start);
+    }
+
+    private long measureJavaSerialization(BrokeredMessage message, int roundTrips) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        for (int i = 0; i < roundTrips; i++) {
+            assertNotNull(deserialize(serialize(message)));
+        }
+        return roundTrips * 1000000000L / (System.nanoTime() - start);
+    }
+
+    private byte[] serialize(BrokeredMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(byte[] body) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(body)).readObject();
+    }
+}
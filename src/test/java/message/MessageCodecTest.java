@@ -0,0 +1,176 @@
+package message;
+
+import message.internal.BrokeredMessage;
+import message.internal.CutLinkMessage;
+import message.internal.FailMessage;
+import message.internal.HealLinkMessage;
+import message.internal.LinkFaultsMessage;
+import message.internal.LinkMessage;
+import message.internal.PartitionMessage;
+import message.internal.ReadyMessage;
+import message.internal.ResurrectMessage;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MessageCodec}.
+ */
+public class MessageCodecTest {
+
+    @Test
+    public void heartbeatShouldSurviveRoundTrip() {
+        HeartbeatMessage heartbeat = new HeartbeatMessage(7, 1234567890123L);
+
+        byte[] body = MessageCodec.encode(heartbeat);
+        HeartbeatMessage decoded = (HeartbeatMessage) MessageCodec.decode(body);
+
+        assertEquals(11, body.length);
+        assertEquals(7, decoded.getSource());
+        assertEquals(-1, decoded.getDestination());
+        assertEquals(1234567890123L, decoded.getTimestamp());
+    }
+
+    @Test
+    public void timestampedMessageShouldSurviveRoundTrip() {
+        TimestampedProcessToProcessMessage decoded = (TimestampedProcessToProcessMessage)
+                roundTrip(new TimestampedProcessToProcessMessage(3, 100000, 42L));
+
+        assertEquals(TimestampedProcessToProcessMessage.class, decoded.getClass());
+        assertEquals(3, decoded.getSource());
+        assertEquals(100000, decoded.getDestination());
+        assertEquals(42L, decoded.getTimestamp());
+    }
+
+    @Test
+    public void valueMessageShouldSurviveRoundTrip() {
+        ValueMessage decoded = (ValueMessage) roundTrip(new ValueMessage(2, 5, 300, "value\u00e9\u4e2d", 42L));
+
+        assertEquals(ValueMessage.class, decoded.getClass());
+        assertEquals(2, decoded.getSource());
+        assertEquals(5, decoded.getDestination());
+        assertEquals(300, decoded.getRound());
+        assertEquals("value\u00e9\u4e2d", decoded.getValue());
+        assertEquals(42L, decoded.getTimestamp());
+    }
+
+    @Test
+    public void nullValueShouldSurviveRoundTrip() {
+        ValueMessage decoded = (ValueMessage) roundTrip(new ValueMessage(2, 5, 3, null));
+
+        assertNull(decoded.getValue());
+    }
+
+    @Test
+    public void outcomeMessageShouldSurviveRoundTrip() {
+        OutcomeMessage decoded = (OutcomeMessage) roundTrip(new OutcomeMessage(1, -1, 4, "value1", true, 42L));
+
+        assertEquals(1, decoded.getSource());
+        assertEquals(-1, decoded.getDestination());
+        assertEquals(4, decoded.getRound());
+        assertEquals("value1", decoded.getValue());
+        assertTrue(decoded.isUnanimous());
+        assertEquals(42L, decoded.getTimestamp());
+    }
+
+    @Test
+    public void internalMessagesShouldSurviveRoundTrip() {
+        assertEquals(4, ((ReadyMessage) roundTrip(new ReadyMessage(4))).getSource());
+        assertEquals(5, ((FailMessage) roundTrip(new FailMessage(5))).getProcessId());
+        assertEquals(6, ((ResurrectMessage) roundTrip(new ResurrectMessage(6))).getProcessId());
+
+        CutLinkMessage cut = (CutLinkMessage) roundTrip(new CutLinkMessage(1, 2));
+        assertEquals(1, cut.getSource());
+        assertEquals(2, cut.getDestination());
+        HealLinkMessage heal = (HealLinkMessage) roundTrip(new HealLinkMessage(LinkMessage.ALL, 3));
+        assertEquals(LinkMessage.ALL, heal.getSource());
+        assertEquals(3, heal.getDestination());
+        LinkFaultsMessage faults = (LinkFaultsMessage) roundTrip(new LinkFaultsMessage(1, LinkMessage.ALL, 0.25, 0.5, 300));
+        assertEquals(1, faults.getSource());
+        assertEquals(LinkMessage.ALL, faults.getDestination());
+        assertEquals(0.25, faults.getLossProbability());
+        assertEquals(0.5, faults.getDuplicationProbability());
+        assertEquals(300, faults.getReorderWindow());
+    }
+
+    @Test
+    public void partitionShouldSurviveRoundTrip() {
+        PartitionMessage partition = (PartitionMessage) roundTrip(new PartitionMessage(new int[][]{{1, 200}, {3}, {}}));
+
+        assertEquals(3, partition.getGroups().length);
+        assertTrue(Arrays.equals(new int[]{1, 200}, partition.getGroups()[0]));
+        assertTrue(Arrays.equals(new int[]{3}, partition.getGroups()[1]));
+        assertEquals(0, partition.getGroups()[2].length);
+    }
+
+    @Test
+    public void otherMessagesShouldBeJavaSerialized() {
+        CustomMessage decoded = (CustomMessage) roundTrip(new CustomMessage(8, 9));
+
+        assertEquals(8, decoded.getSource());
+        assertEquals(9, decoded.getDestination());
+    }
+
+    @Test
+    public void unsupportedVersionShouldNotBeDecoded() {
+        byte[] body = MessageCodec.encode(new HeartbeatMessage(1));
+        body[0] = MessageCodec.VERSION + 1;
+
+        assertNull(MessageCodec.decode(body));
+    }
+
+    @Test
+    public void truncatedMessageShouldNotBeDecoded() {
+        byte[] body = MessageCodec.encode(new ValueMessage(2, 5, 3, "value"));
+
+        assertNull(MessageCodec.decode(Arrays.copyOf(body, body.length - 1)));
+    }
+
+    @Test
+    public void messageWithOversizedLengthShouldNotBeDecoded() {
+        byte[] body = MessageCodec.encode(new ValueMessage(2, 5, 3, "value"));
+        byte[] malformed = Arrays.copyOf(body, body.length);
+        ByteBuffer.wrap(malformed, body.length - 6, 5).put(new byte[]{(byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}); //length 2^31-1
+
+        assertNull(MessageCodec.decode(malformed));
+    }
+
+    @Test
+    public void typeAndTimestampShouldBePeekedWithoutDecoding() {
+        ByteBuffer heartbeat = ByteBuffer.wrap(MessageCodec.encode(new HeartbeatMessage(300, 42L)));
+        ByteBuffer value = ByteBuffer.wrap(MessageCodec.encode(new ValueMessage(2, 100000, 3, "value", 43L)));
+
+        assertEquals(HeartbeatMessage.class, MessageCodec.peekType(heartbeat));
+        assertEquals(42L, MessageCodec.peekTimestamp(heartbeat));
+        assertEquals(ValueMessage.class, MessageCodec.peekType(value));
+        assertEquals(43L, MessageCodec.peekTimestamp(value));
+        assertEquals(0, value.position());
+    }
+
+    @Test
+    public void messagesWithoutTimestampShouldNotBePeeked() {
+        ByteBuffer ready = ByteBuffer.wrap(MessageCodec.encode(new ReadyMessage(4)));
+        ByteBuffer custom = ByteBuffer.wrap(MessageCodec.encode(new CustomMessage(8, 9)));
+
+        assertEquals(ReadyMessage.class, MessageCodec.peekType(ready));
+        assertEquals(-1, MessageCodec.peekTimestamp(ready));
+        assertNull(MessageCodec.peekType(custom));
+        assertEquals(-1, MessageCodec.peekTimestamp(custom));
+    }
+
+    private BrokeredMessage roundTrip(BrokeredMessage message) {
+        return MessageCodec.decode(MessageCodec.encode(message));
+    }
+
+    private static class CustomMessage extends TimestampedProcessToProcessMessage {
+
+        private CustomMessage(int source, int destination) {
+            super(source, destination);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package message;
+
+import clock.Clocks;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MessageExpiry}.
+ */
+public class MessageExpiryTest {
+
+    private MessageExpiry expiry;
+    private long now;
+
+    @Before
+    public void setUp() {
+        expiry = new MessageExpiry();
+        now = Clocks.getDefault().currentTimeMillis();
+    }
+
+    @Test
+    public void messagesShouldNeverExpireByDefault() {
+        assertFalse(expiry.isExpired(HeartbeatMessage.class, 0));
+        assertTrue(expiry.getNumberOfExpiredMessages().isEmpty());
+    }
+
+    @Test
+    public void messagesShouldExpireAfterTheirTimeToLive() {
+        expiry.setTimeToLive(HeartbeatMessage.class, 1000);
+
+        assertFalse(expiry.isExpired(HeartbeatMessage.class, now));
+        assertFalse(expiry.isExpired(HeartbeatMessage.class, now - 500));
+        assertTrue(expiry.isExpired(HeartbeatMessage.class, now - 2000));
+        assertEquals(1, expiry.getNumberOfExpiredMessages(HeartbeatMessage.class));
+    }
+
+    @Test
+    public void timeToLiveShouldApplyToExactTypeOnly() {
+        expiry.setTimeToLive(ValueMessage.class, 1000);
+
+        assertTrue(expiry.isExpired(ValueMessage.class, now - 2000));
+        assertFalse(expiry.isExpired(OutcomeMessage.class, now - 2000));
+        assertFalse(expiry.isExpired(null, now - 2000));
+        assertEquals(1, expiry.getNumberOfExpiredMessages().size());
+        assertEquals(Long.valueOf(1), expiry.getNumberOfExpiredMessages().get(ValueMessage.class));
+        assertEquals(0, expiry.getNumberOfExpiredMessages(OutcomeMessage.class));
+    }
+
+    @Test
+    public void negativeTimeToLiveShouldDisableExpiry() {
+        expiry.setTimeToLive(HeartbeatMessage.class, 1000);
+        expiry.setTimeToLive(HeartbeatMessage.class, -1);
+
+        assertFalse(expiry.isExpired(HeartbeatMessage.class, now - 2000));
+    }
+}
@@ -0,0 +1,19 @@
+package process;
+
+import transport.InMemoryTransport;
+import transport.Transport;
+
+/**
+ * Integration smoke-test for {@link process.ConsensusCapableStrongFailureDetectorProcess} over the {@link InMemoryTransport}.
+ * Fixed delay is used.
+ */
+public class ConsensusWithStrongFailureDetectorInMemorySmokeTest extends ConsensusWithStrongFailureDetectorSmokeTest {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Transport createTransport() {
+        return new InMemoryTransport();
+    }
+}
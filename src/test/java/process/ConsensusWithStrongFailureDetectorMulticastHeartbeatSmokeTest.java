@@ -0,0 +1,36 @@
+package process;
+
+import broker.ActiveMqBroker;
+import broker.Broker;
+import transport.MulticastHeartbeatChannel;
+
+/**
+ * Integration smoke-test for {@link process.ConsensusCapableStrongFailureDetectorProcess} over the
+ * {@link transport.InMemoryTransport}, with heartbeats on the {@link MulticastHeartbeatChannel} and the broker
+ * as its interceptor. Fixed delay is used.
+ */
+public class ConsensusWithStrongFailureDetectorMulticastHeartbeatSmokeTest extends ConsensusWithStrongFailureDetectorInMemorySmokeTest {
+
+    private static final int PORT = 47301;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Broker createBroker() {
+        ActiveMqBroker broker = (ActiveMqBroker) super.createBroker();
+        MulticastHeartbeatChannel channel = new MulticastHeartbeatChannel(PORT);
+        channel.setInterceptor(broker);
+        MulticastHeartbeatChannel.setDefault(channel);
+        return broker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        MulticastHeartbeatChannel.setDefault(null);
+    }
+}
@@ -0,0 +1,64 @@
+package process;
+
+import broker.ActiveMqBroker;
+import broker.Broker;
+import transport.NioTransport;
+import transport.Transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+/**
+ * Integration smoke-test for {@link process.ConsensusCapableStrongFailureDetectorProcess} over the {@link NioTransport},
+ * with the broker as the interceptor. Fixed delay is used.
+ */
+public class ConsensusWithStrongFailureDetectorNioSmokeTest extends ConsensusWithStrongFailureDetectorSmokeTest {
+
+    private NioTransport transport;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Transport createTransport() {
+        try {
+            InetSocketAddress[] addresses = new InetSocketAddress[10];
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = freeAddress();
+            }
+            transport = new NioTransport(freeAddress(), addresses);
+            return transport;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Broker createBroker() {
+        ActiveMqBroker broker = (ActiveMqBroker) super.createBroker();
+        transport.setInterceptor(broker);
+        return broker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        transport.close();
+    }
+
+    private InetSocketAddress freeAddress() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        } finally {
+            socket.close();
+        }
+    }
+}
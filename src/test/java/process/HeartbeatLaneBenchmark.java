@@ -0,0 +1,114 @@
+package process;
+
+import broker.FixedDelayBroker;
+import listener.MessageListener;
+import listener.SuspectListener;
+import message.TimestampedProcessToProcessMessage;
+import message.ValueMessage;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+import transport.InMemoryTransport;
+import transport.Transport;
+import transport.Transports;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of the false-suspicion rate of {@link EventuallyPerfectFailureDetectorProcess}es under application load
+ * over the {@link InMemoryTransport}, with and without the heartbeat lane (in both the broker and the transport).
+ * <p/>
+ * Every {@link #BURST_PERIOD_MS}, each process sends a burst of {@link ValueMessage}s to the next one, each of which
+ * takes {@link #PROCESSING_TIME_MS} to process. No process ever fails, so every suspicion is a false one.
+ */
+@Ignore("only for benchmarking purposes")
+public class HeartbeatLaneBenchmark {
+    private static final Logger LOG = Logger.getLogger(HeartbeatLaneBenchmark.class);
+
+    private static final int NUMBER_OF_PROCESSES = 3;
+    private static final int DURATION_MS = 30000;
+    private static final int BURST_PERIOD_MS = 3000;
+    private static final int BURST_SIZE = 600;
+    private static final long PROCESSING_TIME_MS = 2;
+
+    @Test
+    public void compareFalseSuspicionsWithAndWithoutHeartbeatLane() throws InterruptedException {
+        measure("without heartbeat lane", false);
+        measure("with heartbeat lane", true);
+    }
+
+    private void measure(String name, boolean heartbeatLane) throws InterruptedException {
+        Transport originalTransport = Transports.getDefault();
+        Transports.setDefault(new InMemoryTransport(1, heartbeatLane));
+        FixedDelayBroker broker = new FixedDelayBroker(NUMBER_OF_PROCESSES);
+        broker.setHeartbeatLaneEnabled(heartbeatLane);
+
+        AtomicInteger suspicions = new AtomicInteger();
+        List<LoadedProcess> processes = new ArrayList<LoadedProcess>();
+        for (int i = 1; i <= NUMBER_OF_PROCESSES; i++) {
+            processes.add(new LoadedProcess(i, suspicions));
+        }
+        for (LoadedProcess process : processes) {
+            process.start();
+        }
+
+        try {
+            long end = System.currentTimeMillis() + DURATION_MS;
+            while (System.currentTimeMillis() < end) {
+                Thread.sleep(BURST_PERIOD_MS);
+                for (LoadedProcess process : processes) {
+                    int destination = process.getProcessId() % NUMBER_OF_PROCESSES + 1;
+                    for (int i = 0; i < BURST_SIZE; i++) {
+                        process.send(new ValueMessage(process.getProcessId(), destination, i, "load"));
+                    }
+                }
+            }
+
+            LOG.info(name + ": " + suspicions.get() + " false suspicions in " + (DURATION_MS / 1000) + "s, "
+                    + (suspicions.get() * 60000.0 / DURATION_MS / (NUMBER_OF_PROCESSES * (NUMBER_OF_PROCESSES - 1))) + " per minute per pair of processes");
+        } finally {
+            for (LoadedProcess process : processes) {
+                process.stop();
+            }
+            broker.shutdown();
+            Transports.setDefault(originalTransport);
+        }
+    }
+
+    /**
+     * A process spending {@link #PROCESSING_TIME_MS} on every value message, counting suspicions.
+     */
+    private static class LoadedProcess extends EventuallyPerfectFailureDetectorProcess implements MessageListener, SuspectListener {
+
+        private final AtomicInteger suspicions;
+        private int numberOfSuspects = 0;
+
+        private LoadedProcess(int processId, AtomicInteger suspicions) {
+            super("Process " + processId, processId, NUMBER_OF_PROCESSES);
+            this.suspicions = suspicions;
+            addMessageListener(this);
+            detector.addSuspectListener(this);
+        }
+
+        @Override
+        public void receive(TimestampedProcessToProcessMessage message) {
+            if (message instanceof ValueMessage) {
+                long end = System.nanoTime() + PROCESSING_TIME_MS * 1000000;
+                while (System.nanoTime() < end) {
+                    //busy processing
+                }
+            }
+        }
+
+        @Override
+        public synchronized void suspectsUpdated(Set<Integer> suspects) {
+            if (suspects.size() > numberOfSuspects) {
+                suspicions.addAndGet(suspects.size() - numberOfSuspects);
+            }
+            numberOfSuspects = suspects.size();
+        }
+    }
+}
@@ -9,6 +9,8 @@ import org.junit.After;
 import org.junit.Before;
 import process.base.*;
 import process.base.Process;
+import transport.Transport;
+import transport.Transports;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -23,24 +25,32 @@ import java.util.concurrent.atomic.AtomicInteger;
 public abstract class ProcessSmokeTest<T extends process.base.Process> {
     private static final Logger LOG = Logger.getLogger(ProcessSmokeTest.class);
 
+    private Transport defaultTransport;
     private Broker broker;
     private FailureInjector failureInjector;
     protected final List<T> processes = new ArrayList<T>();
 
     @Before
     public void setUp() {
+        defaultTransport = Transports.getDefault();
+        Transports.setDefault(createTransport());
         broker = createBroker();
         failureInjector = new FailureInjector();
     }
 
     protected abstract Broker createBroker();
 
+    protected Transport createTransport() {
+        return Transports.getDefault();
+    }
+
     @After
     public void tearDown() {
         for (Process process : processes) {
             process.stop();
         }
         broker.shutdown();
+        Transports.setDefault(defaultTransport);
     }
 
     protected void launchProcess(int processId, int numberOfProcesses) {
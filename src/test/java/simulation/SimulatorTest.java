@@ -0,0 +1,146 @@
+package simulation;
+
+import broker.Broker;
+import broker.FailureInjector;
+import broker.GaussianDelayBroker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import process.ConsensusCapableEventuallyStrongFailureDetectorProcess;
+import process.LeaderElectingEventuallyPerfectFailureDetectorProcess;
+import process.base.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Integration test for {@link Simulator}, running whole ensembles in virtual time.
+ */
+public class SimulatorTest {
+
+    private static final long SEED = 42;
+
+    private Simulator simulator;
+    private final List<Broker> brokers = new ArrayList<Broker>();
+    private final List<Process> processes = new ArrayList<Process>();
+
+    @Before
+    public void setUp() {
+        simulator = new Simulator();
+        simulator.install();
+    }
+
+    @After
+    public void tearDown() {
+        for (Process process : processes) {
+            process.stop();
+        }
+        for (Broker broker : brokers) {
+            broker.shutdown();
+        }
+        simulator.uninstall();
+    }
+
+    @Test
+    public void tasksShouldRunInVirtualTimeOrder() {
+        final List<Long> executionTimes = new ArrayList<Long>();
+        Runnable recordTime = new Runnable() {
+            @Override
+            public void run() {
+                executionTimes.add(simulator.currentTimeMillis());
+            }
+        };
+
+        ScheduledExecutorService executor = simulator.newScheduledExecutor(1);
+        executor.schedule(recordTime, 300, MILLISECONDS);
+        executor.scheduleAtFixedRate(recordTime, 100, 1000, MILLISECONDS);
+        executor.schedule(recordTime, 200, MILLISECONDS);
+
+        simulator.runFor(2500);
+
+        assertEquals("[100, 200, 300, 1100, 2100]", executionTimes.toString());
+        assertEquals(2500, simulator.currentTimeMillis());
+    }
+
+    @Test
+    public void consensusShouldBeReachedInVirtualTime() throws ExecutionException, InterruptedException {
+        List<ConsensusCapableEventuallyStrongFailureDetectorProcess> ensemble = launchConsensusEnsemble(10);
+        simulator.runFor(0); //everybody gets ready
+
+        FailureInjector failureInjector = new FailureInjector();
+        failureInjector.killProcess(1);
+        failureInjector.killProcess(2);
+
+        Future<String> decision = ensemble.get(4).getDecision();
+
+        assertTrue(simulator.runUntilDone(decision, 60 * 1000));
+        assertTrue(decision.get().startsWith("value"));
+        assertFalse("value1".equals(decision.get()));
+        assertFalse("value2".equals(decision.get()));
+    }
+
+    @Test
+    public void hourOfLeaderElectionShouldBeReproducible() {
+        List<Integer> firstRun = runLeaderElection();
+
+        tearDown();
+        brokers.clear();
+        processes.clear();
+        setUp();
+
+        List<Integer> secondRun = runLeaderElection();
+
+        assertEquals(firstRun, secondRun);
+    }
+
+    /**
+     * Run an hour of leader election with processes failing and recovering, sampling the leader every minute.
+     *
+     * @return leaders elected by the first process, one per minute, followed by the total number of executed events.
+     */
+    private List<Integer> runLeaderElection() {
+        List<LeaderElectingEventuallyPerfectFailureDetectorProcess> ensemble = new ArrayList<LeaderElectingEventuallyPerfectFailureDetectorProcess>();
+        brokers.add(new GaussianDelayBroker(5, simulator.getTransport(), SEED));
+        for (int pid = 1; pid <= 5; pid++) {
+            LeaderElectingEventuallyPerfectFailureDetectorProcess process = new LeaderElectingEventuallyPerfectFailureDetectorProcess("Process" + pid, pid, 5);
+            ensemble.add(process);
+            processes.add(process);
+            process.start();
+        }
+        FailureInjector failureInjector = new FailureInjector();
+
+        List<Integer> leaders = new ArrayList<Integer>();
+        for (int minute = 1; minute <= 60; minute++) {
+            if (minute % 10 == 3) {
+                failureInjector.killProcess(5);
+            } else if (minute % 10 == 7) {
+                failureInjector.restoreProcess(5);
+            }
+            simulator.runFor(60 * 1000);
+            leaders.add(ensemble.get(0).getLeader());
+        }
+        leaders.add((int) simulator.getExecutedEvents());
+        return leaders;
+    }
+
+    private List<ConsensusCapableEventuallyStrongFailureDetectorProcess> launchConsensusEnsemble(int numberOfProcesses) {
+        List<ConsensusCapableEventuallyStrongFailureDetectorProcess> ensemble = new ArrayList<ConsensusCapableEventuallyStrongFailureDetectorProcess>();
+        brokers.add(new GaussianDelayBroker(numberOfProcesses, simulator.getTransport(), SEED));
+        for (int pid = 1; pid <= numberOfProcesses; pid++) {
+            ConsensusCapableEventuallyStrongFailureDetectorProcess process =
+                    new ConsensusCapableEventuallyStrongFailureDetectorProcess("Process" + pid, pid, numberOfProcesses, "value" + pid);
+            ensemble.add(process);
+            processes.add(process);
+            process.start();
+        }
+        return ensemble;
+    }
+}
@@ -0,0 +1,74 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.internal.BrokeredMessage;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of the cost of connecting {@link #NUMBER_OF_PROCESSES} co-located processes over the
+ * {@link ActiveMqTransport}, with one connection per endpoint (a pool as large as the ensemble) and with small pools:
+ * startup time, live threads and open sockets (counted in /proc, i.e. on Linux only) of this JVM, which also hosts the
+ * ActiveMQ broker.
+ */
+@Ignore("only for benchmarking purposes")
+public class ActiveMqConnectionPoolBenchmark {
+    private static final Logger LOG = Logger.getLogger(ActiveMqConnectionPoolBenchmark.class);
+
+    private static final int NUMBER_OF_PROCESSES = 200;
+
+    @Test
+    public void compareConnectionPoolSizes() throws IOException {
+        measure(NUMBER_OF_PROCESSES + 1);
+        measure(ActiveMqTransport.DEFAULT_CONNECTION_POOL_SIZE);
+        measure(1);
+    }
+
+    private void measure(int connectionPoolSize) throws IOException {
+        ActiveMqTransport transport = new ActiveMqTransport(1, true, connectionPoolSize);
+        int threadsBefore = Thread.activeCount();
+        int socketsBefore = countSockets();
+
+        long start = System.nanoTime();
+        BrokerEndpoint brokerEndpoint = transport.bindBroker(NUMBER_OF_PROCESSES, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+            }
+        });
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (int i = 1; i <= NUMBER_OF_PROCESSES; i++) {
+            endpoints.add(transport.connectProcess(i, new TransportListener() {
+                @Override
+                public void onMessage(BrokeredMessage message) {
+                }
+            }));
+        }
+        long startupMs = (System.nanoTime() - start) / 1000000;
+
+        LOG.info("pool of " + connectionPoolSize + " connections: startup " + startupMs + "ms, "
+                + (Thread.activeCount() - threadsBefore) + " threads, " + (countSockets() - socketsBefore) + " sockets");
+
+        for (Endpoint endpoint : endpoints) {
+            endpoint.close();
+        }
+        brokerEndpoint.close();
+    }
+
+    private int countSockets() throws IOException {
+        File[] descriptors = new File("/proc/self/fd").listFiles();
+        int sockets = 0;
+        for (File descriptor : descriptors == null ? new File[0] : descriptors) {
+            if (descriptor.getCanonicalPath().contains("socket:")) {
+                sockets++;
+            }
+        }
+        return sockets;
+    }
+}
@@ -0,0 +1,75 @@
+package transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit test for {@link ActiveMqConnectionPool}, against an embedded in-VM broker.
+ */
+public class ActiveMqConnectionPoolTest {
+
+    private static final String BROKER_URL = "vm://pool-test?broker.persistent=false&broker.useJmx=false";
+
+    private ActiveMqConnectionPool pool;
+    private Connection keepAlive;
+
+    @Before
+    public void setUp() throws JMSException {
+        keepAlive = new ActiveMqConnectionPool(BROKER_URL, 1).acquire(); //keeps the in-VM broker up
+        pool = new ActiveMqConnectionPool(BROKER_URL, 2);
+    }
+
+    @After
+    public void tearDown() throws JMSException {
+        keepAlive.close();
+    }
+
+    @Test
+    public void connectionsShouldBeSharedRoundRobin() throws JMSException {
+        Connection first = pool.acquire();
+        Connection second = pool.acquire();
+        Connection third = pool.acquire();
+
+        assertNotSame(first, second);
+        assertSame(first, third);
+    }
+
+    @Test
+    public void connectionShouldBeClosedWhenReleasedByLastUser() throws JMSException {
+        ActiveMqConnectionPool singleConnectionPool = new ActiveMqConnectionPool(BROKER_URL, 1);
+        Connection connection = singleConnectionPool.acquire();
+        assertSame(connection, singleConnectionPool.acquire());
+
+        singleConnectionPool.release(connection);
+        assertNotNull(connection.createSession(false, Session.AUTO_ACKNOWLEDGE)); //still used
+
+        singleConnectionPool.release(connection);
+        try {
+            connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            fail();
+        } catch (JMSException e) {
+            //closed
+        }
+
+        assertNotSame(connection, singleConnectionPool.acquire());
+    }
+
+    @Test
+    public void clearedConnectionsShouldNotBeHandedOutAgain() throws JMSException {
+        Connection connection = pool.acquire();
+        pool.clear();
+
+        assertNotSame(connection, pool.acquire());
+        pool.release(connection); //closed, no longer pooled
+    }
+}
@@ -0,0 +1,72 @@
+package transport;
+
+import listener.BrokerListener;
+import message.ValueMessage;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmark of the send-side latency of a process' endpoint of the {@link ActiveMqTransport}, with one and with
+ * several threads sending concurrently (as the heartbeat timer, consensus and listeners do).
+ */
+@Ignore("only for benchmarking purposes")
+public class ActiveMqSendBenchmark {
+    private static final Logger LOG = Logger.getLogger(ActiveMqSendBenchmark.class);
+
+    private static final int NUMBER_OF_PROCESSES = 2;
+    private static final int MESSAGES_PER_THREAD = 10000;
+
+    @Test
+    public void measureSendLatency() throws InterruptedException {
+        ActiveMqTransport transport = new ActiveMqTransport();
+        BrokerEndpoint brokerEndpoint = transport.bindBroker(NUMBER_OF_PROCESSES, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+            }
+        });
+        Endpoint endpoint = transport.connectClient();
+        try {
+            measure(endpoint, 1); //warm-up
+            measure(endpoint, 1);
+            measure(endpoint, 4);
+            measure(endpoint, 16);
+        } finally {
+            endpoint.close();
+            brokerEndpoint.close();
+        }
+    }
+
+    private void measure(final Endpoint endpoint, int numberOfThreads) throws InterruptedException {
+        final long[][] latencies = new long[numberOfThreads][MESSAGES_PER_THREAD];
+        final CountDownLatch done = new CountDownLatch(numberOfThreads);
+        long start = System.nanoTime();
+        for (int t = 0; t < numberOfThreads; t++) {
+            final long[] threadLatencies = latencies[t];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                        long sendStart = System.nanoTime();
+                        endpoint.send(new ValueMessage(1, 2, i, "value"));
+                        threadLatencies[i] = System.nanoTime() - sendStart;
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long elapsedNs = System.nanoTime() - start;
+
+        long[] all = new long[numberOfThreads * MESSAGES_PER_THREAD];
+        for (int t = 0; t < numberOfThreads; t++) {
+            System.arraycopy(latencies[t], 0, all, t * MESSAGES_PER_THREAD, MESSAGES_PER_THREAD);
+        }
+        Arrays.sort(all);
+        LOG.info(numberOfThreads + " sending threads: p50 " + all[all.length / 2] / 1000 + "us, p99 " + all[all.length * 99 / 100] / 1000
+                + "us, " + (long) (all.length * 1e9 / elapsedNs) + " msgs/s");
+    }
+}
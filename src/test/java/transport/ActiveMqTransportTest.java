@@ -0,0 +1,77 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import message.internal.BrokeredMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static broker.ActiveMqBroker.BROADCAST_DESTINATION;
+import static junit.framework.Assert.assertNotNull;
+
+/**
+ * Unit test for {@link ActiveMqTransport}, against the embedded broker.
+ */
+public class ActiveMqTransportTest {
+
+    private static final int NUMBER_OF_PROCESSES = 2;
+    private static final long TIMEOUT_MS = 2000;
+
+    private ActiveMqTransport transport;
+    private BrokerEndpoint brokerEndpoint;
+    private Endpoint endpoint;
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        transport = new ActiveMqTransport();
+        transport.setMailboxCapacity(1);
+        brokerEndpoint = transport.bindBroker(NUMBER_OF_PROCESSES, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        stalled.countDown();
+        endpoint.close();
+        brokerEndpoint.close();
+    }
+
+    @Test
+    public void delayedHeartbeatsShouldNotWaitForFullMailbox() throws InterruptedException {
+        final BlockingQueue<BrokeredMessage> heartbeats = new LinkedBlockingQueue<BrokeredMessage>();
+        endpoint = transport.connectProcess(2, new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                if (message instanceof HeartbeatMessage) {
+                    heartbeats.add(message);
+                    return;
+                }
+                try {
+                    stalled.await(); //never drains the mailbox
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        long[] delays = new long[]{-1, 10}; //to process 2 only
+        for (int i = 0; i < 5; i++) { //one being handed over, one in the mailbox, the rest holding up their scheduler
+            brokerEndpoint.broadcast(brokerEndpoint.prepare(new ValueMessage(1, BROADCAST_DESTINATION, i, "value")), delays);
+        }
+        brokerEndpoint.broadcast(brokerEndpoint.prepare(new HeartbeatMessage(1)), delays);
+
+        assertNotNull(heartbeats.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,131 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.internal.BrokeredMessage;
+import message.internal.ProcessMessage;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of broadcasting a heartbeat to all processes through the broker's endpoint of the
+ * {@link ActiveMqTransport} (prepared, i.e. encoded, once and sent to every destination, as the broker does now) vs.
+ * creating and Java-serializing an {@link ActiveMQObjectMessage} for every destination (as the broker used to), both
+ * sent to consuming queues of the same embedded ActiveMQ broker.
+ * Reports wall-clock time, CPU time and allocated bytes of the broadcasting thread per broadcast.
+ */
+@Ignore("only for benchmarking purposes")
+public class BroadcastSerializationBenchmark {
+    private static final Logger LOG = Logger.getLogger(BroadcastSerializationBenchmark.class);
+
+    private static final int NUMBER_OF_PROCESSES = 100;
+    private static final int WARMUP_BROADCASTS = 2000;
+    private static final int MEASURED_BROADCASTS = 5000;
+
+    private static final String BASELINE_QUEUE = "benchmark.to.process.";
+
+    @Test
+    public void compareSerializationPerDestinationWithSerializationPerBroadcast() throws JMSException {
+        ActiveMqTransport transport = new ActiveMqTransport();
+        BrokerEndpoint brokerEndpoint = transport.bindBroker(NUMBER_OF_PROCESSES, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+            }
+        });
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (int pid = 1; pid <= NUMBER_OF_PROCESSES; pid++) {
+            endpoints.add(transport.connectProcess(pid, new TransportListener() {
+                @Override
+                public void onMessage(BrokeredMessage message) {
+                }
+            }));
+        }
+
+        Connection connection = new ActiveMQConnectionFactory(ActiveMqTransport.BROKER_URL).createConnection();
+        connection.start();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(null);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            Queue[] baselineQueues = new Queue[NUMBER_OF_PROCESSES];
+            for (int i = 1; i <= NUMBER_OF_PROCESSES; i++) {
+                baselineQueues[i - 1] = session.createQueue(BASELINE_QUEUE + i);
+                connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(baselineQueues[i - 1]).setMessageListener(new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                    }
+                });
+            }
+
+            ProcessMessage heartbeat = new HeartbeatMessage(1);
+
+            measure("warmup, per destination", heartbeat, WARMUP_BROADCASTS, brokerEndpoint, producer, baselineQueues);
+            measure("warmup, per broadcast", heartbeat, WARMUP_BROADCASTS, brokerEndpoint, null, null);
+
+            measure("serialized per destination", heartbeat, MEASURED_BROADCASTS, brokerEndpoint, producer, baselineQueues);
+            measure("serialized per broadcast", heartbeat, MEASURED_BROADCASTS, brokerEndpoint, null, null);
+        } finally {
+            connection.close();
+            for (Endpoint endpoint : endpoints) {
+                endpoint.close();
+            }
+            brokerEndpoint.close();
+        }
+    }
+
+    /**
+     * Broadcast a message repeatedly, through the broker's endpoint unless a producer for the baseline is given.
+     */
+    private void measure(String name, ProcessMessage message, int broadcasts, BrokerEndpoint brokerEndpoint,
+                         MessageProducer baselineProducer, Queue[] baselineQueues) throws JMSException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long start = System.nanoTime();
+        long cpuBefore = threadMXBean.getCurrentThreadCpuTime();
+        long bytesBefore = allocatedBytes(threadMXBean);
+
+        for (int i = 0; i < broadcasts; i++) {
+            if (baselineProducer == null) {
+                RoutableMessage prepared = brokerEndpoint.prepare(message);
+                for (int destination = 2; destination <= NUMBER_OF_PROCESSES; destination++) {
+                    brokerEndpoint.send(prepared, destination);
+                }
+            } else {
+                for (int destination = 2; destination <= NUMBER_OF_PROCESSES; destination++) {
+                    ActiveMQObjectMessage objectMessage = new ActiveMQObjectMessage();
+                    objectMessage.setObject(message);
+                    baselineProducer.send(baselineQueues[destination - 1], objectMessage);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long cpu = threadMXBean.getCurrentThreadCpuTime() - cpuBefore;
+        long bytes = allocatedBytes(threadMXBean) - bytesBefore;
+        LOG.info(name + ": " + (elapsed / broadcasts / 1000) + " us elapsed, " + (cpu / broadcasts / 1000) + " us CPU and "
+                + (bytes / broadcasts) + " bytes allocated per broadcast to " + (NUMBER_OF_PROCESSES - 1) + " processes");
+    }
+
+    private long allocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0; //not supported by this JVM
+    }
+}
@@ -0,0 +1,76 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import message.internal.BrokeredMessage;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link InMemoryTransport}.
+ */
+public class InMemoryTransportTest {
+
+    @Test
+    public void heartbeatsShouldOvertakeWaitingMessages() throws InterruptedException {
+        assertEquals("[value 0, heartbeat, value 1, value 2]", receiveBacklog(new InMemoryTransport(1, true)).toString());
+    }
+
+    @Test
+    public void heartbeatsShouldWaitInLineWithoutHeartbeatLane() throws InterruptedException {
+        assertEquals("[value 0, value 1, value 2, heartbeat]", receiveBacklog(new InMemoryTransport(1, false)).toString());
+    }
+
+    /**
+     * Send three value messages and a heartbeat to a process busy with the first value message.
+     */
+    private List<String> receiveBacklog(InMemoryTransport transport) throws InterruptedException {
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch backlog = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        final List<String> received = new CopyOnWriteArrayList<String>();
+
+        BrokerEndpoint broker = transport.bindBroker(1, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+            }
+        });
+        Endpoint process = transport.connectProcess(1, new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                received.add(message instanceof HeartbeatMessage ? "heartbeat" : ((ValueMessage) message).getValue());
+                busy.countDown();
+                try {
+                    backlog.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+
+        try {
+            broker.send(broker.prepare(new ValueMessage(2, 1, 0, "value 0")), 1);
+            assertTrue(busy.await(1, TimeUnit.SECONDS));
+            broker.send(broker.prepare(new ValueMessage(2, 1, 1, "value 1")), 1);
+            broker.send(broker.prepare(new ValueMessage(2, 1, 2, "value 2")), 1);
+            broker.send(broker.prepare(new HeartbeatMessage(2)), 1);
+            backlog.countDown();
+
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            return received;
+        } finally {
+            process.close();
+            broker.close();
+        }
+    }
+}
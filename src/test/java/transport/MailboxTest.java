@@ -0,0 +1,116 @@
+package transport;
+
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import message.internal.BrokeredMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link Mailbox}.
+ */
+public class MailboxTest {
+
+    private static final long TIMEOUT_MS = 2000;
+
+    private Mailbox mailbox;
+
+    @After
+    public void tearDown() {
+        mailbox.unbind();
+    }
+
+    @Test
+    public void producersShouldWaitForSpaceInBoundedMailbox() throws InterruptedException {
+        mailbox = new Mailbox("test", true, 2);
+        mailbox.offer(new ValueMessage(1, 2, 0, "value"));
+        mailbox.offer(new ValueMessage(1, 2, 1, "value"));
+        mailbox.offer(new HeartbeatMessage(1)); //exempt
+
+        final CountDownLatch offered = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mailbox.offer(new ValueMessage(1, 2, 2, "value"));
+                offered.countDown();
+            }
+        }).start();
+        assertFalse(offered.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(3, mailbox.getDepth());
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        mailbox.bind(collect(received));
+
+        assertTrue(offered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS) instanceof HeartbeatMessage);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, ((ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)).getRound());
+        }
+        assertEquals(0, mailbox.getDepth());
+        assertEquals(3, mailbox.getMaxDepth());
+    }
+
+    @Test
+    public void producersShouldStopWaitingWhenUnbound() throws InterruptedException {
+        mailbox = new Mailbox("test", false, 1);
+        mailbox.bind(new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                try {
+                    Thread.sleep(TIMEOUT_MS); //slow listener
+                } catch (InterruptedException e) {
+                    //stop
+                }
+            }
+        });
+        mailbox.offer(new ValueMessage(1, 2, 0, "value")); //handed over
+        Thread.sleep(50);
+        mailbox.offer(new ValueMessage(1, 2, 1, "value")); //fills the mailbox
+
+        final CountDownLatch offered = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mailbox.offer(new ValueMessage(1, 2, 2, "value"));
+                offered.countDown();
+            }
+        }).start();
+        assertFalse(offered.await(200, TimeUnit.MILLISECONDS));
+
+        mailbox.unbind();
+        assertTrue(offered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timeInMailboxShouldBeMeasured() throws InterruptedException {
+        mailbox = new Mailbox("test", false);
+        mailbox.offer(new ValueMessage(1, 2, 0, "value"));
+        Thread.sleep(100);
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        mailbox.bind(collect(received));
+
+        assertNotNull(received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(mailbox.getMeanTimeInMailboxNs() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    private TransportListener collect(final BlockingQueue<BrokeredMessage> messages) {
+        return new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                messages.add(message);
+            }
+        };
+    }
+}
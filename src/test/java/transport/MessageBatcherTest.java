@@ -0,0 +1,200 @@
+package transport;
+
+import message.HeartbeatMessage;
+import message.MessageCodec;
+import message.ValueMessage;
+import message.internal.BrokeredMessage;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit test for {@link MessageBatcher}.
+ */
+public class MessageBatcherTest {
+
+    private ScheduledExecutorService scheduler;
+    private BlockingQueue<byte[]> envelopes;
+    private MessageBatcher batcher;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        envelopes = new LinkedBlockingQueue<byte[]>();
+        batcher = new MessageBatcher(3, 100, scheduler, new MessageBatcher.Flusher() {
+            @Override
+            public void flush(byte[] envelope) {
+                envelopes.add(envelope);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void fullEnvelopeShouldBeFlushedImmediately() {
+        add(new ValueMessage(1, 2, 0, "zero"));
+        add(new ValueMessage(1, 3, 1, "one"));
+        assertNull(envelopes.poll());
+
+        add(new HeartbeatMessage(1));
+
+        final List<BrokeredMessage> messages = new ArrayList<BrokeredMessage>();
+        final List<RoutableMessage.Kind> kinds = new ArrayList<RoutableMessage.Kind>();
+        final List<Integer> destinations = new ArrayList<Integer>();
+        MessageBatcher.unpack(new ByteSequence(envelopes.poll()), new MessageBatcher.Handler() {
+            @Override
+            public void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body) {
+                kinds.add(kind);
+                destinations.add(destination);
+                messages.add(decode(body));
+            }
+        });
+
+        assertEquals(3, messages.size());
+        assertEquals("zero", ((ValueMessage) messages.get(0)).getValue());
+        assertEquals("one", ((ValueMessage) messages.get(1)).getValue());
+        assertEquals(3, (int) destinations.get(1));
+        assertEquals(RoutableMessage.Kind.HEARTBEAT, kinds.get(2));
+        assertEquals(HeartbeatMessage.class, messages.get(2).getClass());
+    }
+
+    @Test
+    public void envelopeShouldBeFlushedAfterDelay() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        add(new ValueMessage(1, 2, 0, "zero"));
+
+        assertNotNull(envelopes.poll(1000, TimeUnit.MILLISECONDS));
+        assertEquals(100, System.currentTimeMillis() - start, 50);
+        assertNull(envelopes.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void emptyEnvelopeShouldNotBeFlushed() {
+        batcher.flush();
+        assertNull(envelopes.poll());
+
+        add(new ValueMessage(1, 2, 0, "zero"));
+        batcher.flush();
+        assertNotNull(envelopes.poll());
+        batcher.flush();
+        assertNull(envelopes.poll());
+    }
+
+    @Test
+    public void largeMessagesShouldGrowEnvelope() {
+        char[] chars = new char[10000];
+        String value = new String(chars);
+        add(new ValueMessage(1, 2, 0, value));
+        add(new ValueMessage(1, 2, 1, value));
+        batcher.flush();
+
+        final List<BrokeredMessage> messages = new ArrayList<BrokeredMessage>();
+        MessageBatcher.unpack(new ByteSequence(envelopes.poll()), new MessageBatcher.Handler() {
+            @Override
+            public void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body) {
+                messages.add(decode(body));
+            }
+        });
+        assertEquals(2, messages.size());
+        assertEquals(value, ((ValueMessage) messages.get(1)).getValue());
+    }
+
+    @Test
+    public void truncatedEnvelopeShouldBeRejected() {
+        add(new ValueMessage(1, 2, 0, "zero"));
+        batcher.flush();
+        byte[] envelope = envelopes.poll();
+
+        try {
+            MessageBatcher.unpack(new ByteSequence(envelope, 0, envelope.length - 1), new MessageBatcher.Handler() {
+                @Override
+                public void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body) {
+                }
+            });
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void messagesShouldBeAddedWhileEnvelopeIsBeingSent() throws InterruptedException {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch sent = new CountDownLatch(1);
+        batcher = new MessageBatcher(2, 100, scheduler, new MessageBatcher.Flusher() {
+            @Override
+            public void flush(byte[] envelope) {
+                sending.countDown();
+                try {
+                    sent.await(); //slow send
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                envelopes.add(envelope);
+            }
+        });
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                add(new ValueMessage(1, 2, 0, "zero"));
+                add(new ValueMessage(1, 2, 1, "one")); //full, being sent
+            }
+        }).start();
+        assertTrue(sending.await(1000, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch added = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                add(new ValueMessage(1, 2, 2, "two"));
+                added.countDown();
+            }
+        }).start();
+        assertTrue(added.await(50, TimeUnit.MILLISECONDS)); //didn't wait for the send
+
+        sent.countDown();
+        assertEquals("zero", ((ValueMessage) unpackFirst(envelopes.poll(1000, TimeUnit.MILLISECONDS))).getValue());
+        assertEquals("two", ((ValueMessage) unpackFirst(envelopes.poll(1000, TimeUnit.MILLISECONDS))).getValue());
+    }
+
+    private BrokeredMessage unpackFirst(byte[] envelope) {
+        final List<BrokeredMessage> messages = new ArrayList<BrokeredMessage>();
+        MessageBatcher.unpack(new ByteSequence(envelope), new MessageBatcher.Handler() {
+            @Override
+            public void handle(RoutableMessage.Kind kind, int source, int destination, ByteSequence body) {
+                messages.add(decode(body));
+            }
+        });
+        return messages.get(0);
+    }
+
+    private void add(BrokeredMessage message) {
+        batcher.add(new UnserializedMessage(message), new ByteSequence(MessageCodec.encode(message)));
+    }
+
+    private static BrokeredMessage decode(ByteSequence body) {
+        return MessageCodec.decode(ByteBuffer.wrap(body.getData(), body.getOffset(), body.getLength()));
+    }
+}
@@ -0,0 +1,90 @@
+package transport;
+
+import listener.MessageListener;
+import message.HeartbeatMessage;
+import message.TimestampedProcessToProcessMessage;
+import message.ValueMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Unit test for {@link MulticastHeartbeatChannel}, over loopback.
+ */
+public class MulticastHeartbeatChannelTest {
+
+    private static final int PORT = 47300;
+    private static final long TIMEOUT_MS = 2000;
+
+    private MulticastHeartbeatChannel channel;
+    private BlockingQueue<TimestampedProcessToProcessMessage> received1;
+    private BlockingQueue<TimestampedProcessToProcessMessage> received2;
+    private Endpoint endpoint1;
+    private Endpoint endpoint2;
+
+    @Before
+    public void setUp() {
+        channel = new MulticastHeartbeatChannel(PORT);
+        received1 = new LinkedBlockingQueue<TimestampedProcessToProcessMessage>();
+        received2 = new LinkedBlockingQueue<TimestampedProcessToProcessMessage>();
+        endpoint1 = channel.join(1, 2, collect(received1));
+        endpoint2 = channel.join(2, 2, collect(received2));
+    }
+
+    @After
+    public void tearDown() {
+        endpoint1.close();
+        endpoint2.close();
+    }
+
+    @Test
+    public void heartbeatShouldReachOtherMembersOnly() throws InterruptedException {
+        endpoint1.send(new HeartbeatMessage(1));
+
+        TimestampedProcessToProcessMessage heartbeat = received2.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(heartbeat);
+        assertEquals(1, heartbeat.getSource());
+        assertNull(received1.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void heartbeatsFromOutsideEnsembleShouldBeIgnored() throws InterruptedException {
+        endpoint1.send(new HeartbeatMessage(3));
+        endpoint1.send(new ValueMessage(1, 2, 0, "value"));
+
+        assertNull(received2.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void interceptorShouldDropHeartbeats() throws InterruptedException {
+        channel.setInterceptor(new Interceptor() {
+            @Override
+            public long intercept(RoutableMessage message, int destination) {
+                return message.getSource() == 1 ? -1 : 0;
+            }
+        });
+
+        endpoint1.send(new HeartbeatMessage(1));
+        endpoint2.send(new HeartbeatMessage(2));
+
+        assertNotNull(received1.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNull(received2.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private MessageListener collect(final BlockingQueue<TimestampedProcessToProcessMessage> messages) {
+        return new MessageListener() {
+            @Override
+            public void receive(TimestampedProcessToProcessMessage message) {
+                messages.add(message);
+            }
+        };
+    }
+}
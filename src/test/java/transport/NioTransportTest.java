@@ -0,0 +1,198 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import message.internal.BrokeredMessage;
+import message.internal.ReadyMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link NioTransport}, over loopback.
+ */
+public class NioTransportTest {
+
+    private static final int NUMBER_OF_PROCESSES = 3;
+    private static final long TIMEOUT_MS = 2000;
+
+    private InetSocketAddress[] addresses;
+    private NioTransport transport;
+    private BlockingQueue<RoutableMessage> brokerMessages;
+    private BrokerEndpoint brokerEndpoint;
+
+    @Before
+    public void setUp() throws IOException {
+        addresses = new InetSocketAddress[NUMBER_OF_PROCESSES];
+        for (int i = 0; i < NUMBER_OF_PROCESSES; i++) {
+            addresses[i] = freeAddress();
+        }
+        transport = new NioTransport(freeAddress(), addresses);
+
+        brokerMessages = new LinkedBlockingQueue<RoutableMessage>();
+        brokerEndpoint = transport.bindBroker(NUMBER_OF_PROCESSES, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+                brokerMessages.add(message);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        brokerEndpoint.close();
+        transport.close();
+    }
+
+    @Test
+    public void processToProcessMessagesShouldBypassBroker() throws InterruptedException {
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, collect(received));
+
+        endpoint1.send(new ValueMessage(1, 2, 3, "value"));
+        endpoint1.send(new ReadyMessage(1));
+
+        ValueMessage message = (ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(message);
+        assertEquals("value", message.getValue());
+        assertEquals(RoutableMessage.Kind.READY, brokerMessages.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS).getKind());
+        assertNull(brokerMessages.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void broadcastShouldReachAllOtherProcesses() throws InterruptedException {
+        BlockingQueue<BrokeredMessage> received1 = new LinkedBlockingQueue<BrokeredMessage>();
+        BlockingQueue<BrokeredMessage> received2 = new LinkedBlockingQueue<BrokeredMessage>();
+        BlockingQueue<BrokeredMessage> received3 = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(received1));
+        transport.connectProcess(2, collect(received2));
+        transport.connectProcess(3, collect(received3));
+
+        endpoint1.send(new HeartbeatMessage(1));
+
+        assertNotNull(received2.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNotNull(received3.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNull(received1.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void interceptorShouldDelayAndDropMessages() throws InterruptedException {
+        transport.setInterceptor(new Interceptor() {
+            @Override
+            public long intercept(RoutableMessage message, int destination) {
+                return destination == 2 ? 200 : -1;
+            }
+        });
+        BlockingQueue<BrokeredMessage> received2 = new LinkedBlockingQueue<BrokeredMessage>();
+        BlockingQueue<BrokeredMessage> received3 = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, collect(received2));
+        transport.connectProcess(3, collect(received3));
+
+        long start = System.currentTimeMillis();
+        endpoint1.send(new HeartbeatMessage(1));
+
+        assertNotNull(received2.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertNull(received3.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void messagesShouldBeBufferedUntilDestinationListens() throws InterruptedException {
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        for (int i = 0; i < 10; i++) {
+            endpoint1.send(new ValueMessage(1, 2, i, "value"));
+        }
+
+        Thread.sleep(300); //a few failed connection attempts
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        transport.connectProcess(2, collect(received));
+
+        for (int i = 0; i < 10; i++) {
+            ValueMessage message = (ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(message);
+            assertEquals(i, message.getRound());
+        }
+    }
+
+    @Test
+    public void messagesLargerThanBufferShouldBeFramed() throws InterruptedException {
+        char[] chars = new char[3 * NioTransport.BUFFER_SIZE];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, collect(received));
+
+        endpoint1.send(new ValueMessage(1, 2, 0, value));
+        endpoint1.send(new ValueMessage(1, 2, 1, "small"));
+
+        assertEquals(value, ((ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)).getValue());
+        assertEquals("small", ((ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)).getValue());
+    }
+
+    @Test
+    public void framesNotFullyWrittenShouldBeResentAfterReconnecting() throws Exception {
+        char[] chars = new char[16 * 1024 * 1024]; //more than the socket buffers hold
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+
+        //a destination that never reads and then resets the connection, with the large frame partially written
+        ServerSocket server = new ServerSocket();
+        server.setReceiveBufferSize(4096);
+        server.bind(addresses[1]);
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        endpoint1.send(new ValueMessage(1, 2, 0, value));
+        endpoint1.send(new ValueMessage(1, 2, 1, "small"));
+        Socket socket = server.accept();
+        Thread.sleep(200);
+        socket.setSoLinger(true, 0);
+        socket.close();
+        server.close();
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        transport.connectProcess(2, collect(received));
+
+        ValueMessage message = (ValueMessage) received.poll(5 * TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(message);
+        assertEquals(0, message.getRound());
+        assertEquals(value, message.getValue());
+        assertEquals("small", ((ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)).getValue());
+    }
+
+    private TransportListener collect(final BlockingQueue<BrokeredMessage> messages) {
+        return new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                messages.add(message);
+            }
+        };
+    }
+
+    private InetSocketAddress freeAddress() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        } finally {
+            socket.close();
+        }
+    }
+}
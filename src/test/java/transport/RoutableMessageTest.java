@@ -0,0 +1,37 @@
+package transport;
+
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import message.internal.FailMessage;
+import message.internal.ReadyMessage;
+import message.internal.ResurrectMessage;
+import org.junit.Test;
+
+import static broker.ActiveMqBroker.BROADCAST_DESTINATION;
+import static junit.framework.Assert.assertEquals;
+import static transport.RoutableMessage.Kind.*;
+
+/**
+ * Unit test for {@link RoutableMessage}.
+ */
+public class RoutableMessageTest {
+
+    @Test
+    public void headersShouldBeDerivedFromProcessToProcessMessages() {
+        assertHeaders(new UnserializedMessage(new HeartbeatMessage(3)), HEARTBEAT, 3, BROADCAST_DESTINATION);
+        assertHeaders(new UnserializedMessage(new ValueMessage(3, 5, 1, "value")), PROCESS_TO_PROCESS, 3, 5);
+    }
+
+    @Test
+    public void headersShouldBeDerivedFromInternalMessages() {
+        assertHeaders(new UnserializedMessage(new ReadyMessage(4)), READY, 4, 0);
+        assertHeaders(new UnserializedMessage(new FailMessage(6)), FAIL, 0, 6);
+        assertHeaders(new UnserializedMessage(new ResurrectMessage(7)), RESURRECT, 0, 7);
+    }
+
+    private void assertHeaders(RoutableMessage message, RoutableMessage.Kind kind, int source, int destination) {
+        assertEquals(kind, message.getKind());
+        assertEquals(source, message.getSource());
+        assertEquals(destination, message.getDestination());
+    }
+}
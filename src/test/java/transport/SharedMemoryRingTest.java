@@ -0,0 +1,91 @@
+package transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link SharedMemoryRing}.
+ */
+public class SharedMemoryRingTest {
+
+    private static final int CAPACITY = 64;
+
+    private File file;
+    private SharedMemoryRing producer;
+    private SharedMemoryRing consumer;
+    private List<String> records;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ring", null);
+        assertTrue(file.delete());
+        producer = SharedMemoryRing.open(file, CAPACITY);
+        consumer = SharedMemoryRing.open(file, CAPACITY); //separate mapping, as in another JVM
+        records = new ArrayList<String>();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void recordsShouldBeReceivedInOrder() {
+        assertTrue(producer.offer("one".getBytes()));
+        assertTrue(producer.offer("two".getBytes()));
+
+        assertEquals(2, consumer.drain(collect()));
+        assertEquals(0, consumer.drain(collect()));
+
+        assertEquals(2, records.size());
+        assertEquals("one", records.get(0));
+        assertEquals("two", records.get(1));
+    }
+
+    @Test
+    public void fullRingShouldRejectRecordsUntilDrained() {
+        byte[] body = new byte[28]; //record of 32 bytes
+        assertTrue(producer.offer(body));
+        assertTrue(producer.offer(body));
+        assertFalse(producer.offer(new byte[0]));
+
+        assertEquals(2, consumer.drain(collect()));
+        assertTrue(producer.offer(body));
+    }
+
+    @Test
+    public void recordsShouldWrapAround() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(producer.offer(("record " + i).getBytes())); //doesn't divide the capacity
+            assertEquals(1, consumer.drain(collect()));
+            assertEquals("record " + i, records.get(i));
+        }
+    }
+
+    @Test
+    public void recordsLargerThanRingShouldBeRejected() {
+        assertFalse(producer.offer(new byte[CAPACITY]));
+    }
+
+    private SharedMemoryRing.Handler collect() {
+        return new SharedMemoryRing.Handler() {
+            @Override
+            public void handle(ByteBuffer record) {
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                records.add(new String(bytes));
+            }
+        };
+    }
+}
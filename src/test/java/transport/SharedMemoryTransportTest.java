@@ -0,0 +1,235 @@
+package transport;
+
+import listener.BrokerListener;
+import listener.TransportListener;
+import message.HeartbeatMessage;
+import message.ValueMessage;
+import message.internal.BrokeredMessage;
+import message.internal.FailMessage;
+import message.internal.ReadyMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit test for {@link SharedMemoryTransport}.
+ */
+public class SharedMemoryTransportTest {
+
+    private static final int NUMBER_OF_PROCESSES = 3;
+    private static final int RING_CAPACITY = 4 * 1024;
+    private static final long TIMEOUT_MS = 2000;
+
+    private File directory;
+    private SharedMemoryTransport transport;
+    private BlockingQueue<RoutableMessage> brokerMessages;
+    private BrokerEndpoint brokerEndpoint;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("rings", null);
+        assertTrue(directory.delete());
+        transport = new SharedMemoryTransport(directory, NUMBER_OF_PROCESSES, RING_CAPACITY, false);
+
+        brokerMessages = new LinkedBlockingQueue<RoutableMessage>();
+        brokerEndpoint = transport.bindBroker(NUMBER_OF_PROCESSES, new BrokerListener() {
+            @Override
+            public void onMessage(RoutableMessage message) {
+                brokerMessages.add(message);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        brokerEndpoint.close();
+        transport.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void processToProcessMessagesShouldBypassBroker() throws InterruptedException {
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, collect(received));
+
+        endpoint1.send(new ValueMessage(1, 2, 3, "value"));
+        endpoint1.send(new ReadyMessage(1));
+
+        ValueMessage message = (ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(message);
+        assertEquals("value", message.getValue());
+        assertEquals(RoutableMessage.Kind.READY, brokerMessages.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS).getKind());
+        assertNull(brokerMessages.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void broadcastShouldReachAllOtherProcesses() throws InterruptedException {
+        BlockingQueue<BrokeredMessage> received1 = new LinkedBlockingQueue<BrokeredMessage>();
+        BlockingQueue<BrokeredMessage> received2 = new LinkedBlockingQueue<BrokeredMessage>();
+        BlockingQueue<BrokeredMessage> received3 = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(received1));
+        transport.connectProcess(2, collect(received2));
+        transport.connectProcess(3, collect(received3));
+
+        endpoint1.send(new HeartbeatMessage(1));
+
+        assertNotNull(received2.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNotNull(received3.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNull(received1.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void clientMessagesShouldReachBroker() throws InterruptedException {
+        transport.connectClient().send(new FailMessage(2));
+
+        RoutableMessage message = brokerMessages.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(RoutableMessage.Kind.FAIL, message.getKind());
+        assertEquals(2, message.getDestination());
+    }
+
+    @Test
+    public void interceptorShouldDelayAndDropMessages() throws InterruptedException {
+        transport.setInterceptor(new Interceptor() {
+            @Override
+            public long intercept(RoutableMessage message, int destination) {
+                return destination == 2 ? 200 : -1;
+            }
+        });
+        BlockingQueue<BrokeredMessage> received2 = new LinkedBlockingQueue<BrokeredMessage>();
+        BlockingQueue<BrokeredMessage> received3 = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, collect(received2));
+        transport.connectProcess(3, collect(received3));
+
+        long start = System.currentTimeMillis();
+        endpoint1.send(new HeartbeatMessage(1));
+
+        assertNotNull(received2.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertNull(received3.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void messagesShouldStayInRingsUntilDestinationListens() throws InterruptedException {
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        for (int i = 0; i < 10; i++) {
+            endpoint1.send(new ValueMessage(1, 2, i, "value"));
+        }
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        transport.connectProcess(2, collect(received));
+
+        for (int i = 0; i < 10; i++) {
+            ValueMessage message = (ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(message);
+            assertEquals(i, message.getRound());
+        }
+    }
+
+    @Test
+    public void messagesToFullRingsShouldBeWrittenOnceDrained() throws InterruptedException {
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, collect(received));
+
+        int numberOfMessages = 10 * RING_CAPACITY / 32;
+        for (int i = 0; i < numberOfMessages; i++) {
+            endpoint1.send(new ValueMessage(1, 2, i, "value"));
+        }
+
+        for (int i = 0; i < numberOfMessages; i++) {
+            ValueMessage message = (ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(message);
+            assertEquals(i, message.getRound());
+        }
+    }
+
+    @Test
+    public void sendersShouldNotWaitForFullRings() throws InterruptedException {
+        final Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        final int numberOfMessages = 10 * RING_CAPACITY / 32;
+
+        final CountDownLatch sent = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < numberOfMessages; i++) {
+                    endpoint1.send(new ValueMessage(1, 2, i, "value")); //nobody receiving yet
+                }
+                sent.countDown();
+            }
+        }).start();
+
+        assertTrue(sent.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        transport.connectProcess(2, collect(received));
+
+        for (int i = 0; i < numberOfMessages; i++) {
+            ValueMessage message = (ValueMessage) received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(message);
+            assertEquals(i, message.getRound());
+        }
+    }
+
+    @Test
+    public void heartbeatsToFullRingsShouldBeDropped() throws InterruptedException {
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        for (int i = 0; i < RING_CAPACITY / 16 + 10; i++) {
+            endpoint1.send(new HeartbeatMessage(1)); //records of 16 bytes, more than the ring to 2 holds
+        }
+        endpoint1.send(new ValueMessage(1, 2, 0, "value"));
+
+        BlockingQueue<BrokeredMessage> received = new LinkedBlockingQueue<BrokeredMessage>();
+        transport.connectProcess(2, collect(received));
+
+        int heartbeats = 0;
+        BrokeredMessage message;
+        while ((message = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)) instanceof HeartbeatMessage) {
+            heartbeats++;
+        }
+        assertTrue(message instanceof ValueMessage);
+        assertTrue(heartbeats <= RING_CAPACITY / 16);
+    }
+
+    @Test
+    public void listenersShouldNotBeCalledByPollingThread() throws InterruptedException {
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<String>();
+        Endpoint endpoint1 = transport.connectProcess(1, collect(new LinkedBlockingQueue<BrokeredMessage>()));
+        transport.connectProcess(2, new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                threads.add(Thread.currentThread().getName());
+            }
+        });
+
+        endpoint1.send(new ValueMessage(1, 2, 0, "value"));
+
+        assertEquals("mailbox-process 2", threads.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private TransportListener collect(final BlockingQueue<BrokeredMessage> messages) {
+        return new TransportListener() {
+            @Override
+            public void onMessage(BrokeredMessage message) {
+                messages.add(message);
+            }
+        };
+    }
+}